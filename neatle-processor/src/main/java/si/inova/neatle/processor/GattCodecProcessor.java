@@ -0,0 +1,290 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code <ClassName>Codec} for every class annotated with
+ * {@code si.inova.neatle.codec.GattStruct}.
+ *
+ * <p>The annotations are matched by name, so that this processor doesn't depend on the Android
+ * library that declares them.
+ */
+@SupportedAnnotationTypes(GattCodecProcessor.GATT_STRUCT)
+public class GattCodecProcessor extends AbstractProcessor {
+
+    static final String GATT_STRUCT = "si.inova.neatle.codec.GattStruct";
+    static final String GATT_FIELD = "si.inova.neatle.codec.GattField";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "@GattStruct can only be applied to classes");
+                    continue;
+                }
+                processStruct((TypeElement) element);
+            }
+        }
+        return true;
+    }
+
+    private void processStruct(TypeElement struct) {
+        if (!checkStruct(struct)) {
+            return;
+        }
+
+        List<GattFieldModel> fields = new ArrayList<>();
+        for (Element member : struct.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.FIELD) {
+                continue;
+            }
+            AnnotationMirror mirror = findAnnotation(member, GATT_FIELD);
+            if (mirror != null) {
+                GattFieldModel field = parseField((VariableElement) member, mirror);
+                if (field == null) {
+                    return;
+                }
+                fields.add(field);
+            }
+        }
+        if (fields.isEmpty()) {
+            error(struct, "@GattStruct " + struct.getSimpleName() + " has no @GattField fields");
+            return;
+        }
+
+        Collections.sort(fields);
+        for (int i = 1; i < fields.size(); i++) {
+            if (fields.get(i).order == fields.get(i - 1).order) {
+                error(fields.get(i).element, "Duplicate @GattField order " + fields.get(i).order);
+                return;
+            }
+        }
+
+        int size = layout(fields);
+
+        String packageName = getPackage(struct).getQualifiedName().toString();
+        String codecName = getCodecName(struct);
+        String source = new GattCodecWriter(packageName, codecName, struct.getQualifiedName().toString(), fields, size).write();
+        String qualifiedName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, struct);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(struct, "Failed to write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    private boolean checkStruct(TypeElement struct) {
+        if (struct.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(struct, "@GattStruct " + struct.getSimpleName() + " must not be abstract");
+            return false;
+        }
+        for (Element element = struct; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                error(struct, "@GattStruct " + struct.getSimpleName() + " must not be private");
+                return false;
+            }
+            if (element.getEnclosingElement() instanceof TypeElement && !element.getModifiers().contains(Modifier.STATIC)) {
+                error(struct, "@GattStruct " + struct.getSimpleName() + " must be a static class");
+                return false;
+            }
+        }
+
+        boolean hasConstructors = false;
+        for (Element member : struct.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.CONSTRUCTOR) {
+                hasConstructors = true;
+                ExecutableElement constructor = (ExecutableElement) member;
+                if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                    return true;
+                }
+            }
+        }
+        if (hasConstructors) {
+            error(struct, "@GattStruct " + struct.getSimpleName() + " needs a non-private constructor without arguments");
+            return false;
+        }
+        return true;
+    }
+
+    private GattFieldModel parseField(VariableElement element, AnnotationMirror mirror) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+            error(element, "@GattField " + element.getSimpleName() + " must not be private, static or final");
+            return null;
+        }
+
+        int order = 0;
+        int format = 0;
+        int bits = 0;
+        boolean bigEndian = false;
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            String name = entry.getKey().getSimpleName().toString();
+            Object value = entry.getValue().getValue();
+            if (!(value instanceof Integer) && !(value instanceof Boolean)) {
+                // unresolved constant, javac reports the error itself
+                return null;
+            }
+            if ("order".equals(name)) {
+                order = (Integer) value;
+            } else if ("format".equals(name)) {
+                format = (Integer) value;
+            } else if ("bits".equals(name)) {
+                bits = (Integer) value;
+            } else if ("bigEndian".equals(name)) {
+                bigEndian = (Boolean) value;
+            }
+        }
+
+        GattFieldModel field = new GattFieldModel(element, order, format, bits, bigEndian);
+        if (field.formatName() == null) {
+            error(element, "Unknown format 0x" + Integer.toHexString(format) + " on " + field.name);
+            return null;
+        }
+
+        TypeKind type = field.type;
+        if (field.isFloatFormat()) {
+            if (type != TypeKind.FLOAT && type != TypeKind.DOUBLE) {
+                error(element, field.formatName() + " needs a float or double field, " + field.name + " is " + type);
+                return null;
+            }
+            if (bits != 0) {
+                error(element, "Bitfield " + field.name + " must have an integer format");
+                return null;
+            }
+        } else if (type != TypeKind.BOOLEAN && type != TypeKind.BYTE && type != TypeKind.SHORT
+                && type != TypeKind.CHAR && type != TypeKind.INT && type != TypeKind.LONG) {
+            error(element, field.formatName() + " needs an integer or boolean field, " + field.name + " is " + type);
+            return null;
+        }
+
+        if (bits < 0 || bits > field.size() * 8) {
+            error(element, "Bitfield " + field.name + " must be between 1 and " + field.size() * 8 + " bits wide");
+            return null;
+        }
+        return field;
+    }
+
+    /**
+     * Assigns offsets to the sorted fields, packing consecutive bitfields of the same format.
+     *
+     * @return the size of the structure in bytes
+     */
+    private static int layout(List<GattFieldModel> fields) {
+        int offset = 0;
+        GattFieldModel group = null;
+        int groupBits = 0;
+        for (GattFieldModel field : fields) {
+            if (!field.isBitfield()) {
+                group = null;
+                field.offset = offset;
+                offset += field.size();
+                continue;
+            }
+
+            if (group != null && group.format == field.format && group.bigEndian == field.bigEndian
+                    && groupBits + field.bits <= field.size() * 8) {
+                field.offset = group.offset;
+                field.shift = groupBits;
+            } else {
+                group = field;
+                groupBits = 0;
+                field.groupStart = true;
+                field.offset = offset;
+                field.shift = 0;
+                offset += field.size();
+            }
+            groupBits += field.bits;
+        }
+        return offset;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static PackageElement getPackage(Element element) {
+        while (!(element instanceof PackageElement)) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    private static String getCodecName(TypeElement struct) {
+        String name = struct.getSimpleName().toString();
+        for (Element element = struct.getEnclosingElement(); element instanceof TypeElement; element = element.getEnclosingElement()) {
+            name = element.getSimpleName() + "_" + name;
+        }
+        return name + "Codec";
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.processor;
+
+import java.util.List;
+
+/**
+ * Writes the source of a generated codec.
+ */
+final class GattCodecWriter {
+
+    private static final String COMMAND_RESULT = "si.inova.neatle.operation.CommandResult";
+
+    private final String packageName;
+    private final String codecName;
+    private final String structName;
+    private final List<GattFieldModel> fields;
+    private final int size;
+
+    GattCodecWriter(String packageName, String codecName, String structName, List<GattFieldModel> fields, int size) {
+        this.packageName = packageName;
+        this.codecName = codecName;
+        this.structName = structName;
+        this.fields = fields;
+        this.size = size;
+    }
+
+    String write() {
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("/**\n")
+                .append(" * Codec for {@link ").append(structName).append("}, generated by the NeatLE codec processor.\n")
+                .append(" */\n")
+                .append("public final class ").append(codecName)
+                .append(" extends si.inova.neatle.codec.AbstractGattCodec<").append(structName).append("> {\n\n")
+                .append("    public static final int SIZE = ").append(size).append(";\n\n")
+                .append("    public ").append(codecName).append("() {\n")
+                .append("        super(SIZE);\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public ").append(structName).append(" newInstance() {\n")
+                .append("        return new ").append(structName).append("();\n")
+                .append("    }\n\n");
+        writeDecode(out);
+        out.append("\n");
+        writeEncode(out);
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private void writeDecode(StringBuilder out) {
+        out.append("    @Override\n")
+                .append("    public void decode(byte[] data, int offset, ").append(structName).append(" target) {\n")
+                .append("        checkRange(data, offset);\n");
+        for (GattFieldModel field : fields) {
+            String target = "target." + field.name;
+            if (field.isFloatFormat()) {
+                String read = "readFloat(data, " + at(field) + ", " + format(field) + ", " + field.bigEndian + ")";
+                out.append("        ").append(target).append(" = ").append(cast(field, read)).append(";\n");
+            } else if (field.isBitfield()) {
+                String group = "bits" + field.offset;
+                if (field.groupStart) {
+                    out.append("        long ").append(group).append(" = readInt(data, ").append(at(field)).append(", ")
+                            .append(field.size()).append(", false, ").append(field.bigEndian).append(");\n");
+                }
+                String value;
+                if (field.isSigned()) {
+                    value = "(" + group + " << " + (64 - field.shift - field.bits) + ") >> " + (64 - field.bits);
+                } else {
+                    value = "(" + group + " >>> " + field.shift + ") & " + mask(field.bits);
+                }
+                out.append("        ").append(target).append(" = ").append(cast(field, "(" + value + ")")).append(";\n");
+            } else {
+                String read = "readInt(data, " + at(field) + ", " + field.size() + ", " + field.isSigned() + ", " + field.bigEndian + ")";
+                out.append("        ").append(target).append(" = ").append(cast(field, read)).append(";\n");
+            }
+        }
+        out.append("    }\n");
+    }
+
+    private void writeEncode(StringBuilder out) {
+        out.append("    @Override\n")
+                .append("    public void encode(").append(structName).append(" value, byte[] target, int offset) {\n")
+                .append("        checkRange(target, offset);\n");
+        for (int i = 0; i < fields.size(); i++) {
+            GattFieldModel field = fields.get(i);
+            String value = field.type == javax.lang.model.type.TypeKind.BOOLEAN
+                    ? "(value." + field.name + " ? 1L : 0L)"
+                    : "value." + field.name;
+            if (field.isFloatFormat()) {
+                out.append("        writeFloat(target, ").append(at(field)).append(", ").append(format(field)).append(", ")
+                        .append(value).append(", ").append(field.bigEndian).append(");\n");
+            } else if (field.isBitfield()) {
+                String group = "bits" + field.offset;
+                if (field.groupStart) {
+                    out.append("        long ").append(group).append(" = 0;\n");
+                }
+                out.append("        ").append(group).append(" |= (").append(value).append(" & ").append(mask(field.bits))
+                        .append(") << ").append(field.shift).append(";\n");
+                boolean groupEnd = i == fields.size() - 1 || fields.get(i + 1).groupStart || !fields.get(i + 1).isBitfield();
+                if (groupEnd) {
+                    out.append("        writeInt(target, ").append(at(field)).append(", ").append(field.size()).append(", ")
+                            .append(group).append(", ").append(field.bigEndian).append(");\n");
+                }
+            } else {
+                out.append("        writeInt(target, ").append(at(field)).append(", ").append(field.size()).append(", ")
+                        .append(value).append(", ").append(field.bigEndian).append(");\n");
+            }
+        }
+        out.append("    }\n");
+    }
+
+    private static String at(GattFieldModel field) {
+        return field.offset == 0 ? "offset" : "offset + " + field.offset;
+    }
+
+    private static String format(GattFieldModel field) {
+        return COMMAND_RESULT + "." + field.formatName();
+    }
+
+    private static String mask(int bits) {
+        return bits >= 64 ? "-1L" : "0x" + Long.toHexString((1L << bits) - 1).toUpperCase() + "L";
+    }
+
+    private static String cast(GattFieldModel field, String expression) {
+        switch (field.type) {
+            case BOOLEAN:
+                return expression + " != 0";
+            case BYTE:
+                return "(byte) " + expression;
+            case SHORT:
+                return "(short) " + expression;
+            case CHAR:
+                return "(char) " + expression;
+            case INT:
+                return "(int) " + expression;
+            case FLOAT:
+                return "(float) " + expression;
+            default:
+                return expression;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.processor;
+
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+
+/**
+ * A single {@code @GattField} and its place in the encoded structure.
+ */
+final class GattFieldModel implements Comparable<GattFieldModel> {
+
+    // Must match the FORMAT_* constants in si.inova.neatle.operation.CommandResult
+    static final int FORMAT_UINT8 = 0x11;
+    static final int FORMAT_UINT16 = 0x12;
+    static final int FORMAT_UINT24 = 0x13;
+    static final int FORMAT_UINT32 = 0x14;
+    static final int FORMAT_UINT48 = 0x16;
+    static final int FORMAT_UINT64 = 0x18;
+    static final int FORMAT_SINT8 = 0x21;
+    static final int FORMAT_SINT16 = 0x22;
+    static final int FORMAT_SINT24 = 0x23;
+    static final int FORMAT_SINT32 = 0x24;
+    static final int FORMAT_SINT48 = 0x26;
+    static final int FORMAT_SINT64 = 0x28;
+    static final int FORMAT_SFLOAT = 0x32;
+    static final int FORMAT_FLOAT = 0x34;
+    // NeatLE-specific IEEE-754 formats, see CommandResult
+    static final int FORMAT_FLOAT32 = 0x44;
+    static final int FORMAT_FLOAT64 = 0x48;
+
+    final VariableElement element;
+    final String name;
+    final TypeKind type;
+    final int order;
+    final int format;
+    final int bits;
+    final boolean bigEndian;
+
+    /**
+     * Offset of the field, or of its bitfield group, in bytes.
+     */
+    int offset;
+
+    /**
+     * Position of the bitfield in its group, in bits.
+     */
+    int shift;
+
+    /**
+     * True if this is the first bitfield of a group.
+     */
+    boolean groupStart;
+
+    GattFieldModel(VariableElement element, int order, int format, int bits, boolean bigEndian) {
+        this.element = element;
+        this.name = element.getSimpleName().toString();
+        this.type = element.asType().getKind();
+        this.order = order;
+        this.format = format;
+        this.bits = bits;
+        this.bigEndian = bigEndian;
+    }
+
+    int size() {
+        return format & 0xF;
+    }
+
+    boolean isBitfield() {
+        return bits > 0;
+    }
+
+    boolean isSigned() {
+        return (format & 0xF0) == 0x20;
+    }
+
+    boolean isFloatFormat() {
+        return format == FORMAT_SFLOAT || format == FORMAT_FLOAT || format == FORMAT_FLOAT32 || format == FORMAT_FLOAT64;
+    }
+
+    String formatName() {
+        switch (format) {
+            case FORMAT_UINT8:
+                return "FORMAT_UINT8";
+            case FORMAT_UINT16:
+                return "FORMAT_UINT16";
+            case FORMAT_UINT24:
+                return "FORMAT_UINT24";
+            case FORMAT_UINT32:
+                return "FORMAT_UINT32";
+            case FORMAT_UINT48:
+                return "FORMAT_UINT48";
+            case FORMAT_UINT64:
+                return "FORMAT_UINT64";
+            case FORMAT_SINT8:
+                return "FORMAT_SINT8";
+            case FORMAT_SINT16:
+                return "FORMAT_SINT16";
+            case FORMAT_SINT24:
+                return "FORMAT_SINT24";
+            case FORMAT_SINT32:
+                return "FORMAT_SINT32";
+            case FORMAT_SINT48:
+                return "FORMAT_SINT48";
+            case FORMAT_SINT64:
+                return "FORMAT_SINT64";
+            case FORMAT_SFLOAT:
+                return "FORMAT_SFLOAT";
+            case FORMAT_FLOAT:
+                return "FORMAT_FLOAT";
+            case FORMAT_FLOAT32:
+                return "FORMAT_FLOAT32";
+            case FORMAT_FLOAT64:
+                return "FORMAT_FLOAT64";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public int compareTo(GattFieldModel other) {
+        return order < other.order ? -1 : (order == other.order ? 0 : 1);
+    }
+}
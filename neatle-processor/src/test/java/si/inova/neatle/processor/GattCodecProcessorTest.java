@@ -0,0 +1,201 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class GattCodecProcessorTest {
+
+    private static final String GATT_STRUCT = "package si.inova.neatle.codec;\n"
+            + "public @interface GattStruct {}\n";
+
+    private static final String GATT_FIELD = "package si.inova.neatle.codec;\n"
+            + "public @interface GattField {\n"
+            + "    int order();\n"
+            + "    int format();\n"
+            + "    int bits() default 0;\n"
+            + "    boolean bigEndian() default false;\n"
+            + "}\n";
+
+    private static final String COMMAND_RESULT = "package si.inova.neatle.operation;\n"
+            + "public class CommandResult {\n"
+            + "    public static final int FORMAT_UINT8 = 0x11;\n"
+            + "    public static final int FORMAT_UINT16 = 0x12;\n"
+            + "    public static final int FORMAT_SINT16 = 0x22;\n"
+            + "    public static final int FORMAT_SFLOAT = 0x32;\n"
+            + "}\n";
+
+    private static final String ABSTRACT_CODEC = "package si.inova.neatle.codec;\n"
+            + "public abstract class AbstractGattCodec<T> {\n"
+            + "    protected AbstractGattCodec(int size) {}\n"
+            + "    public abstract T newInstance();\n"
+            + "    public abstract void decode(byte[] data, int offset, T target);\n"
+            + "    public abstract void encode(T value, byte[] target, int offset);\n"
+            + "    protected void checkRange(byte[] data, int offset) {}\n"
+            + "    protected static long readInt(byte[] d, int o, int s, boolean signed, boolean be) { return 0; }\n"
+            + "    protected static void writeInt(byte[] d, int o, int s, long v, boolean be) {}\n"
+            + "    protected static double readFloat(byte[] d, int o, int f, boolean be) { return 0; }\n"
+            + "    protected static void writeFloat(byte[] d, int o, int f, double v, boolean be) {}\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    @Test
+    public void testGeneratesCodec() throws Exception {
+        boolean success = compile("test.Sensor", "package test;\n"
+                + "import si.inova.neatle.codec.*;\n"
+                + "import si.inova.neatle.operation.CommandResult;\n"
+                + "@GattStruct public class Sensor {\n"
+                + "    @GattField(order = 0, format = CommandResult.FORMAT_UINT8, bits = 1) boolean on;\n"
+                + "    @GattField(order = 1, format = CommandResult.FORMAT_UINT8, bits = 7) int mode;\n"
+                + "    @GattField(order = 2, format = CommandResult.FORMAT_SINT16) short value;\n"
+                + "    @GattField(order = 3, format = CommandResult.FORMAT_SFLOAT) float temperature;\n"
+                + "    @GattStruct static class Nested {\n"
+                + "        @GattField(order = 0, format = CommandResult.FORMAT_UINT16) int id;\n"
+                + "    }\n"
+                + "}\n");
+
+        assertTrue(diagnostics.getDiagnostics().toString(), success);
+        assertTrue(new File(folder.getRoot(), "test/SensorCodec.class").exists());
+        assertTrue(new File(folder.getRoot(), "test/Sensor_NestedCodec.class").exists());
+    }
+
+    @Test
+    public void testPrivateField() throws Exception {
+        assertError("must not be private, static or final", "@GattStruct public class Sensor {\n"
+                + "    @GattField(order = 0, format = CommandResult.FORMAT_UINT8) private int value;\n"
+                + "}\n");
+    }
+
+    @Test
+    public void testDuplicateOrder() throws Exception {
+        assertError("Duplicate @GattField order 1", "@GattStruct public class Sensor {\n"
+                + "    @GattField(order = 1, format = CommandResult.FORMAT_UINT8) int a;\n"
+                + "    @GattField(order = 1, format = CommandResult.FORMAT_UINT8) int b;\n"
+                + "}\n");
+    }
+
+    @Test
+    public void testFloatFormatOnIntField() throws Exception {
+        assertError("FORMAT_SFLOAT needs a float or double field", "@GattStruct public class Sensor {\n"
+                + "    @GattField(order = 0, format = CommandResult.FORMAT_SFLOAT) int value;\n"
+                + "}\n");
+    }
+
+    @Test
+    public void testUnknownFormat() throws Exception {
+        assertError("Unknown format 0x99", "@GattStruct public class Sensor {\n"
+                + "    @GattField(order = 0, format = 0x99) int value;\n"
+                + "}\n");
+    }
+
+    @Test
+    public void testBitfieldTooWide() throws Exception {
+        assertError("must be between 1 and 8 bits wide", "@GattStruct public class Sensor {\n"
+                + "    @GattField(order = 0, format = CommandResult.FORMAT_UINT8, bits = 9) int value;\n"
+                + "}\n");
+    }
+
+    @Test
+    public void testMissingConstructor() throws Exception {
+        assertError("needs a non-private constructor without arguments", "@GattStruct public class Sensor {\n"
+                + "    @GattField(order = 0, format = CommandResult.FORMAT_UINT8) int value;\n"
+                + "    Sensor(int value) { this.value = value; }\n"
+                + "}\n");
+    }
+
+    private void assertError(String expected, String struct) throws Exception {
+        boolean success = compile("test.Sensor", "package test;\n"
+                + "import si.inova.neatle.codec.*;\n"
+                + "import si.inova.neatle.operation.CommandResult;\n"
+                + struct);
+        assertEquals(false, success);
+
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains(expected));
+    }
+
+    private boolean compile(String className, String source) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(folder.getRoot()));
+        fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(folder.getRoot()));
+
+        List<JavaFileObject> sources = Arrays.asList(
+                source("si.inova.neatle.codec.GattStruct", GATT_STRUCT),
+                source("si.inova.neatle.codec.GattField", GATT_FIELD),
+                source("si.inova.neatle.codec.AbstractGattCodec", ABSTRACT_CODEC),
+                source("si.inova.neatle.operation.CommandResult", COMMAND_RESULT),
+                source(className, source));
+
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, null, null, sources);
+        task.setProcessors(Collections.singletonList(new GattCodecProcessor()));
+        try {
+            return task.call();
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private static JavaFileObject source(String className, final String content) {
+        URI uri = URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension);
+        return new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return content;
+            }
+        };
+    }
+}
@@ -34,29 +34,39 @@ import android.bluetooth.BluetoothGattService;
 import android.content.Context;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.VisibleForTesting;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import si.inova.neatle.monitor.Connection;
 import si.inova.neatle.monitor.ConnectionHandler;
 import si.inova.neatle.monitor.ConnectionStateListener;
+import si.inova.neatle.operation.CharacteristicCache;
 import si.inova.neatle.operation.CharacteristicsChangedListener;
 import si.inova.neatle.operation.CommandResult;
+import si.inova.neatle.operation.ExpirableCallback;
+import si.inova.neatle.operation.Operation;
+import si.inova.neatle.operation.RawCharacteristicListener;
 import si.inova.neatle.util.NeatleLogger;
 
 @RestrictTo(RestrictTo.Scope.LIBRARY)
 public class Device implements Connection {
 
     private static final long DISCOVER_DEVICE_TIMEOUT = 60 * 1000;
+    private static final int MAX_CONSECUTIVE_TIMEOUTS = 3;
     private static BluetoothGattCallback DO_NOTHING_CALLBACK = new BluetoothGattCallback() {
     };
 
@@ -68,15 +78,27 @@ public class Device implements Connection {
     private int state;
     private Context context;
     private final BluetoothAdapter adapter;
+    // ordered by priority, FIFO within the same priority
     private final LinkedList<BluetoothGattCallback> queue = new LinkedList<>();
-    private BluetoothGattCallback currentCallback = DO_NOTHING_CALLBACK;
+    // every queued callback and the current one (unless DO_NOTHING_CALLBACK) has an entry: it's
+    // added by enqueue() and only removed when the callback leaves both, so lookups don't null-check
+    private final HashMap<BluetoothGattCallback, QueueEntry> queueEntries = new HashMap<>();
+    private final QueueStatistics queueStatistics = new QueueStatistics();
+    private volatile BluetoothGattCallback currentCallback = DO_NOTHING_CALLBACK;
     private boolean serviceDiscovered;
     private BluetoothGatt gatt;
+    private int mtu = DEFAULT_MTU;
+    private int txPhy = BluetoothDevice.PHY_LE_1M;
+    private int rxPhy = BluetoothDevice.PHY_LE_1M;
+    private volatile CharacteristicCache characteristicCache;
+    private volatile Executor notificationExecutor;
 
     private int transport = 0;
+    private int consecutiveTimeouts = 0;
 
     private final CopyOnWriteArrayList<ConnectionHandler> connectionHandlers = new CopyOnWriteArrayList<>();
-    private final HashMap<UUID, CopyOnWriteArrayList<CharacteristicsChangedListener>> changeListeners = new HashMap<>();
+    private final ConcurrentHashMap<UUID, CopyOnWriteArrayList<CharacteristicsChangedListener>> changeListeners = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, CopyOnWriteArrayList<RawCharacteristicListener>> rawListeners = new ConcurrentHashMap<>();
     private final CopyOnWriteArrayList<ConnectionStateListener> connectionStateListeners = new CopyOnWriteArrayList<>();
     private final CopyOnWriteArrayList<ServicesDiscoveredListener> servicesDiscoveredListeners = new CopyOnWriteArrayList<>();
 
@@ -138,6 +160,44 @@ public class Device implements Connection {
         }
     }
 
+    @Override
+    public int getMtu() {
+        synchronized (lock) {
+            return mtu;
+        }
+    }
+
+    @Override
+    public int getTxPhy() {
+        synchronized (lock) {
+            return txPhy;
+        }
+    }
+
+    @Override
+    public int getRxPhy() {
+        synchronized (lock) {
+            return rxPhy;
+        }
+    }
+
+    @Override
+    public void setCharacteristicCache(CharacteristicCache cache) {
+        this.characteristicCache = cache;
+    }
+
+    @Override
+    public CharacteristicCache getCharacteristicCache() {
+        return characteristicCache;
+    }
+
+    private void clearCharacteristicCache() {
+        CharacteristicCache cache = characteristicCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
     @Override
     public int getState() {
         synchronized (lock) {
@@ -163,8 +223,8 @@ public class Device implements Connection {
     public int getCharacteristicsChangedListenerCount(UUID characteristicsUUID) {
         synchronized (lock) {
             CopyOnWriteArrayList<CharacteristicsChangedListener> list = changeListeners.get(characteristicsUUID);
-            return list == null ? 0 : list.size();
-
+            CopyOnWriteArrayList<RawCharacteristicListener> rawList = rawListeners.get(characteristicsUUID);
+            return (list == null ? 0 : list.size()) + (rawList == null ? 0 : rawList.size());
         }
     }
 
@@ -180,21 +240,65 @@ public class Device implements Connection {
                     changeListeners.remove(characteristicsUUID);
                 }
             }
-            checkIdle = currentCallback == DO_NOTHING_CALLBACK && queue.isEmpty() && queue.isEmpty();
+            checkIdle = currentCallback == DO_NOTHING_CALLBACK && queue.isEmpty();
         }
         if (checkIdle) {
             disconnectOnIdle();
         }
     }
 
+    @Override
+    public void addRawCharacteristicListener(UUID characteristicsUUID, RawCharacteristicListener listener) {
+        synchronized (lock) {
+            CopyOnWriteArrayList<RawCharacteristicListener> list = rawListeners.get(characteristicsUUID);
+            if (list == null) {
+                list = new CopyOnWriteArrayList<>();
+                list.add(listener);
+                rawListeners.put(characteristicsUUID, list);
+            } else if (!list.contains(listener)) {
+                list.add(listener);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    public void removeRawCharacteristicListener(UUID characteristicsUUID, RawCharacteristicListener listener) {
+        boolean checkIdle;
+        synchronized (lock) {
+            CopyOnWriteArrayList<RawCharacteristicListener> list = rawListeners.get(characteristicsUUID);
+            if (list != null) {
+                list.remove(listener);
+                if (list.isEmpty()) {
+                    rawListeners.remove(characteristicsUUID);
+                }
+            }
+            checkIdle = currentCallback == DO_NOTHING_CALLBACK && queue.isEmpty();
+        }
+        if (checkIdle) {
+            disconnectOnIdle();
+        }
+    }
+
+    @Override
+    public void setNotificationExecutor(Executor executor) {
+        this.notificationExecutor = executor;
+    }
+
+    @Override
+    public void setNotificationLooper(Looper looper) {
+        this.notificationExecutor = looper == null ? null : new HandlerExecutor(new Handler(looper));
+    }
+
+    private boolean hasChangeListeners() {
+        return !changeListeners.isEmpty() || !rawListeners.isEmpty();
+    }
+
     private void notifyCharacteristicChange(final CommandResult change) {
-        handler.post(new Runnable() {
+        Runnable dispatch = new Runnable() {
             @Override
             public void run() {
-                CopyOnWriteArrayList<CharacteristicsChangedListener> list;
-                synchronized (lock) {
-                    list = changeListeners.get(change.getUUID());
-                }
+                CopyOnWriteArrayList<CharacteristicsChangedListener> list = changeListeners.get(change.getUUID());
                 if (list == null) {
                     //a command could have enable a notification by it's own
                     return;
@@ -203,12 +307,28 @@ public class Device implements Connection {
                     listener.onCharacteristicChanged(change);
                 }
             }
-        });
+        };
+        Executor executor = notificationExecutor;
+        if (executor != null) {
+            executor.execute(dispatch);
+        } else {
+            handler.post(dispatch);
+        }
     }
 
-    @SuppressWarnings("PMD.CompareObjectsWithEquals")
     public void execute(BluetoothGattCallback callback) {
-        NeatleLogger.d("Execute " + callback);
+        execute(callback, Operation.Priority.NORMAL);
+    }
+
+    /**
+     * Queues the callback behind the ones of the same or a higher priority.
+     *
+     * @param callback the callback of the operation
+     * @param priority the priority of the operation
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    public void execute(BluetoothGattCallback callback, @Operation.Priority int priority) {
+        NeatleLogger.d("Execute " + callback + " with priority " + priority);
         boolean wasIdle;
         synchronized (lock) {
             wasIdle = currentCallback == DO_NOTHING_CALLBACK;
@@ -216,7 +336,7 @@ public class Device implements Connection {
                 NeatleLogger.d("Restarting " + callback);
             } else {
                 NeatleLogger.d("Queueing up " + callback);
-                queue.add(callback);
+                enqueue(callback, priority, false);
             }
         }
         if (wasIdle && areServicesDiscovered()) {
@@ -226,6 +346,21 @@ public class Device implements Connection {
         }
     }
 
+    private void enqueue(BluetoothGattCallback callback, int priority, boolean aheadOfSamePriority) {
+        if (!queueEntries.containsKey(callback)) {
+            queueEntries.put(callback, new QueueEntry(priority, SystemClock.elapsedRealtime()));
+        }
+        int index = 0;
+        for (BluetoothGattCallback queued : queue) {
+            int queuedPriority = queueEntries.get(queued).priority;
+            if (queuedPriority > priority || (aheadOfSamePriority && queuedPriority == priority)) {
+                break;
+            }
+            index++;
+        }
+        queue.add(index, callback);
+    }
+
     @SuppressWarnings("PMD.CompareObjectsWithEquals")
     private void disconnectOnIdle() {
         handler.post(new Runnable() {
@@ -238,7 +373,7 @@ public class Device implements Connection {
                 }
 
                 synchronized (lock) {
-                    if (!changeListeners.isEmpty()) {
+                    if (hasChangeListeners()) {
                         NeatleLogger.i("Idle, but subscriptions are keeping the connection alive - listening for notifications/indications");
                         return;
                     }
@@ -263,21 +398,50 @@ public class Device implements Connection {
         BluetoothGattCallback target;
         BluetoothGatt targetGatt;
         boolean doResume;
+        ArrayList<ExpirableCallback> expired = null;
 
         synchronized (lock) {
+            long now = SystemClock.elapsedRealtime();
+            // the operation may have become current while waiting for the connection
+            if (currentCallback != DO_NOTHING_CALLBACK && isExpired(currentCallback, now)) {
+                expired = new ArrayList<>();
+                expired.add(expire(currentCallback));
+                currentCallback = DO_NOTHING_CALLBACK;
+            }
             if (currentCallback == DO_NOTHING_CALLBACK) {
                 BluetoothGattCallback newCallback = queue.poll();
-                if (newCallback == null) {
-                    if (changeListeners.isEmpty()) {
-                        disconnectOnIdle();
+                while (newCallback != null && isExpired(newCallback, now)) {
+                    if (expired == null) {
+                        expired = new ArrayList<>();
                     }
-                    return;
+                    expired.add(expire(newCallback));
+                    newCallback = queue.poll();
                 }
-                currentCallback = newCallback;
+                currentCallback = newCallback == null ? DO_NOTHING_CALLBACK : newCallback;
             }
             target = currentCallback;
             doResume = areServicesDiscovered();
             targetGatt = this.gatt;
+            if (doResume && target != DO_NOTHING_CALLBACK) {
+                QueueEntry entry = queueEntries.get(target);
+                if (!entry.started) {
+                    entry.started = true;
+                    queueStatistics.recordStarted(now - entry.queuedAt);
+                }
+            }
+        }
+
+        if (expired != null) {
+            for (ExpirableCallback callback : expired) {
+                NeatleLogger.i("Dropping expired " + callback);
+                callback.onExpired();
+            }
+        }
+        if (target == DO_NOTHING_CALLBACK) {
+            if (!hasChangeListeners()) {
+                disconnectOnIdle();
+            }
+            return;
         }
 
         if (doResume) {
@@ -289,6 +453,33 @@ public class Device implements Connection {
         }
     }
 
+    private boolean isExpired(BluetoothGattCallback callback, long now) {
+        if (!(callback instanceof ExpirableCallback)) {
+            return false;
+        }
+        QueueEntry entry = queueEntries.get(callback);
+        long deadline = ((ExpirableCallback) callback).getStartDeadline();
+        return !entry.started && deadline > 0 && now >= deadline;
+    }
+
+    private ExpirableCallback expire(BluetoothGattCallback callback) {
+        queueEntries.remove(callback);
+        queueStatistics.recordExpired();
+        return (ExpirableCallback) callback;
+    }
+
+    @Override
+    public QueueStatistics getQueueStatistics() {
+        synchronized (lock) {
+            long now = SystemClock.elapsedRealtime();
+            long oldest = 0;
+            for (BluetoothGattCallback queued : queue) {
+                oldest = Math.max(oldest, now - queueEntries.get(queued).queuedAt);
+            }
+            return new QueueStatistics(queueStatistics, queue.size(), oldest);
+        }
+    }
+
     public boolean areServicesDiscovered() {
         synchronized (lock) {
             return serviceDiscovered && state == BluetoothGatt.STATE_CONNECTED;
@@ -299,6 +490,7 @@ public class Device implements Connection {
     public void disconnect() {
         NeatleLogger.i("Disconnecting");
         stopDiscovery();
+        clearCharacteristicCache();
         BluetoothGatt target;
         int oldState;
 
@@ -306,6 +498,9 @@ public class Device implements Connection {
             target = gatt;
             gatt = null;
             this.serviceDiscovered = false;
+            this.mtu = DEFAULT_MTU;
+            this.txPhy = BluetoothDevice.PHY_LE_1M;
+            this.rxPhy = BluetoothDevice.PHY_LE_1M;
             oldState = state;
             state = BluetoothGatt.STATE_DISCONNECTED;
         }
@@ -358,9 +553,46 @@ public class Device implements Connection {
         handler.removeCallbacks(discoverWatchdog);
     }
 
+    /**
+     * Keeps track of commands that timed out. When several time out in a row, the Bluetooth
+     * stack is assumed to be stuck, and the connection is closed and reopened.
+     *
+     * @param timedOut true if the command timed out
+     */
+    public void commandFinished(boolean timedOut) {
+        synchronized (lock) {
+            if (!timedOut) {
+                consecutiveTimeouts = 0;
+                return;
+            }
+            consecutiveTimeouts++;
+            if (consecutiveTimeouts < MAX_CONSECUTIVE_TIMEOUTS) {
+                return;
+            }
+            consecutiveTimeouts = 0;
+        }
+        recycleGatt();
+    }
+
+    private void recycleGatt() {
+        NeatleLogger.i("Commands keep timing out, recycling the connection");
+        stopDiscovery();
+        BluetoothGatt target;
+        synchronized (lock) {
+            target = gatt;
+        }
+        if (target != null) {
+            // don't wait for the stack to report the disconnect, it's not responding
+            target.disconnect();
+            target.close();
+        }
+        connectionFailed(BluetoothGatt.GATT_FAILURE);
+    }
+
     @SuppressWarnings("PMD.CompareObjectsWithEquals")
     public void executeFinished(BluetoothGattCallback callback) {
         synchronized (lock) {
+            queueEntries.remove(callback);
             if (callback == currentCallback) {
                 this.currentCallback = DO_NOTHING_CALLBACK;
                 NeatleLogger.d("Finished " + callback);
@@ -500,6 +732,7 @@ public class Device implements Connection {
     }
 
     private void connectionFailed(int status) {
+        clearCharacteristicCache();
         BluetoothGattCallback current;
         int oldState;
         int newState;
@@ -511,6 +744,9 @@ public class Device implements Connection {
             state = BluetoothGatt.STATE_DISCONNECTED;
             newState = state;
             serviceDiscovered = false;
+            mtu = DEFAULT_MTU;
+            txPhy = BluetoothDevice.PHY_LE_1M;
+            rxPhy = BluetoothDevice.PHY_LE_1M;
             current = currentCallback;
             queueCopy = new LinkedList<>(queue);
 
@@ -534,6 +770,9 @@ public class Device implements Connection {
         int newState;
         synchronized (lock) {
             serviceDiscovered = false;
+            mtu = DEFAULT_MTU;
+            txPhy = BluetoothDevice.PHY_LE_1M;
+            rxPhy = BluetoothDevice.PHY_LE_1M;
             oldState = state;
             state = BluetoothGatt.STATE_CONNECTED;
             newState = state;
@@ -560,15 +799,27 @@ public class Device implements Connection {
         this.transport = transport;
     }
 
-/*public void yield(BluetoothGattCallback from, BluetoothGattCallback to) {
+    /**
+     * Lets queued operations of a higher priority run before the rest of the given one, which
+     * must be the one in progress. It's put back at the front of its priority and resumed with
+     * {@link BluetoothGattCallback#onServicesDiscovered(BluetoothGatt, int)} once they are done.
+     *
+     * @param callback the callback of the operation in progress
+     * @return true if the operation yielded, false if nothing of a higher priority is waiting
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    public boolean yieldToHigherPriority(BluetoothGattCallback callback) {
         synchronized (lock) {
-            if (currentCallback == from) {
-                queue.add(0, currentCallback);
-                currentCallback = to;
-                NeatleLogger.d("Yielded to " + to);
-            } else {
-                throw new IllegalArgumentException("Cannot yield. Operation not in progress");
+            if (currentCallback != callback || queue.isEmpty()) {
+                return false;
             }
+            int priority = queueEntries.get(callback).priority;
+            if (queueEntries.get(queue.peek()).priority >= priority) {
+                return false;
+            }
+            enqueue(callback, priority, true);
+            currentCallback = DO_NOTHING_CALLBACK;
+            NeatleLogger.d("Yielded " + callback + " to " + queue.peek());
         }
         handler.post(new Runnable() {
             @Override
@@ -576,8 +827,19 @@ public class Device implements Connection {
                 resume();
             }
         });
+        return true;
+    }
+
+    private static final class QueueEntry {
+        final int priority;
+        final long queuedAt;
+        boolean started;
 
-    }*/
+        QueueEntry(int priority, long queuedAt) {
+            this.priority = priority;
+            this.queuedAt = queuedAt;
+        }
+    }
 
     private class GattCallback extends BluetoothGattCallback {
 
@@ -614,6 +876,11 @@ public class Device implements Connection {
         @Override
         public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
             NeatleLogger.d("createCharacteristicRead");
+            CharacteristicCache cache = characteristicCache;
+            BluetoothGattService service = characteristic.getService();
+            if (cache != null && service != null && status == BluetoothGatt.GATT_SUCCESS) {
+                cache.put(service.getUuid(), CommandResult.createCharacteristicRead(characteristic, status));
+            }
             BluetoothGattCallback target;
             synchronized (lock) {
                 target = currentCallback;
@@ -624,6 +891,12 @@ public class Device implements Connection {
         @Override
         public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
             NeatleLogger.d("onCharacteristicWrite " + status);
+            CharacteristicCache cache = characteristicCache;
+            BluetoothGattService service = characteristic.getService();
+            if (cache != null && service != null) {
+                // the device may store something else than what was written, read it again
+                cache.invalidate(service.getUuid(), characteristic.getUuid());
+            }
             BluetoothGattCallback target;
             synchronized (lock) {
                 target = currentCallback;
@@ -643,13 +916,30 @@ public class Device implements Connection {
 
         @Override
         public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            BluetoothGattCallback target;
-            synchronized (lock) {
-                target = currentCallback;
+            // called for every notification, so this path takes no locks and allocates
+            // only when someone needs a CommandResult
+            long when = SystemClock.elapsedRealtimeNanos();
+            currentCallback.onCharacteristicChanged(gatt, characteristic);
+
+            UUID uuid = characteristic.getUuid();
+            byte[] value = characteristic.getValue();
+            CopyOnWriteArrayList<RawCharacteristicListener> rawList = rawListeners.get(uuid);
+            if (rawList != null) {
+                for (RawCharacteristicListener listener : rawList) {
+                    listener.onCharacteristicChanged(uuid, value, when);
+                }
             }
-            target.onCharacteristicChanged(gatt, characteristic);
 
-            notifyCharacteristicChange(CommandResult.createCharacteristicChanged(characteristic));
+            CharacteristicCache cache = characteristicCache;
+            if (cache == null && !changeListeners.containsKey(uuid)) {
+                return;
+            }
+            CommandResult change = CommandResult.createCharacteristicChanged(uuid, value, when);
+            BluetoothGattService service = characteristic.getService();
+            if (cache != null && service != null) {
+                cache.put(service.getUuid(), change);
+            }
+            notifyCharacteristicChange(change);
         }
 
         @Override
@@ -673,13 +963,46 @@ public class Device implements Connection {
         @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
         @Override
         public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            NeatleLogger.d("onMtuChanged mtu: " + mtu + " status: " + status);
             BluetoothGattCallback target;
             synchronized (lock) {
+                if (status == BluetoothGatt.GATT_SUCCESS) {
+                    Device.this.mtu = mtu;
+                }
                 target = currentCallback;
             }
             target.onMtuChanged(gatt, mtu, status);
         }
 
+        @RequiresApi(api = Build.VERSION_CODES.O)
+        @Override
+        public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            NeatleLogger.d("onPhyUpdate tx: " + txPhy + " rx: " + rxPhy + " status: " + status);
+            BluetoothGattCallback target;
+            synchronized (lock) {
+                if (status == BluetoothGatt.GATT_SUCCESS) {
+                    Device.this.txPhy = txPhy;
+                    Device.this.rxPhy = rxPhy;
+                }
+                target = currentCallback;
+            }
+            target.onPhyUpdate(gatt, txPhy, rxPhy, status);
+        }
+
+        @RequiresApi(api = Build.VERSION_CODES.O)
+        @Override
+        public void onPhyRead(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            BluetoothGattCallback target;
+            synchronized (lock) {
+                if (status == BluetoothGatt.GATT_SUCCESS) {
+                    Device.this.txPhy = txPhy;
+                    Device.this.rxPhy = rxPhy;
+                }
+                target = currentCallback;
+            }
+            target.onPhyRead(gatt, txPhy, rxPhy, status);
+        }
+
         @Override
         public void onReadRemoteRssi(BluetoothGatt gatt, int rssi, int status) {
             BluetoothGattCallback target;
@@ -699,6 +1022,19 @@ public class Device implements Connection {
         }
     }
 
+    private static final class HandlerExecutor implements Executor {
+        private final Handler handler;
+
+        HandlerExecutor(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            handler.post(command);
+        }
+    }
+
     private class ScanForDeviceCallback implements BluetoothAdapter.LeScanCallback {
         @Override
         public void onLeScan(BluetoothDevice found, int rssi, byte[] scanRecord) {
@@ -34,9 +34,13 @@ import java.util.UUID;
 import si.inova.neatle.monitor.Connection;
 import si.inova.neatle.monitor.ConnectionMonitor;
 import si.inova.neatle.monitor.ConnectionMonitorImpl;
+import si.inova.neatle.operation.CharacteristicPoll;
+import si.inova.neatle.operation.CharacteristicPollImpl;
 import si.inova.neatle.operation.CharacteristicSubscription;
 import si.inova.neatle.operation.CharacteristicSubscriptionImpl;
 import si.inova.neatle.operation.OperationBuilder;
+import si.inova.neatle.operation.SubscriptionGroup;
+import si.inova.neatle.operation.SubscriptionGroupImpl;
 import si.inova.neatle.scan.ScanBuilder;
 import si.inova.neatle.util.DeviceManager;
 
@@ -67,6 +71,36 @@ public class Neatle {
         return new CharacteristicSubscriptionImpl(context, device, serviceUUID, characteristicsUUID);
     }
 
+    /**
+     * Creates a group of subscriptions to several characteristics of one device. The
+     * characteristics are subscribed to in a single operation and their changes are delivered
+     * to one listener. To listen for changes the group needs to be started.
+     *
+     * @param context the current context
+     * @param device  the device on which to subscribe
+     * @return an un-started, empty subscription group
+     */
+    public static SubscriptionGroup createSubscriptionGroup(@NonNull Context context, @NonNull BluetoothDevice device) {
+        return new SubscriptionGroupImpl(context, device);
+    }
+
+    /**
+     * Creates a poll, that reads a characteristic periodically. This is useful for
+     * characteristics that don't support notifications. To start reading the poll needs to be
+     * started.
+     *
+     * @param context             the current context
+     * @param device              the device from which to read
+     * @param serviceUUID         the service UUID under which the characteristic is located.
+     * @param characteristicsUUID the UUID of the characteristic to read
+     * @param periodMillis        the time between reads, in milliseconds
+     * @return an un-started poll.
+     */
+    public static CharacteristicPoll createPoll(@NonNull Context context, @NonNull BluetoothDevice device,
+                                                @NonNull UUID serviceUUID, @NonNull UUID characteristicsUUID, long periodMillis) {
+        return new CharacteristicPollImpl(context, device, serviceUUID, characteristicsUUID, periodMillis);
+    }
+
     /**
      * Creates a connection monitor that tries to connect to a bluetooth device, and notifies us of
      * changes to the connection. To listen for changes the monitor needs to be started.
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle;
+
+/**
+ * Statistics of how long operations wait in a device's queue before they start, e.g. to tell
+ * whether operations pile up while the device is out of range. Times are on the
+ * {@link android.os.SystemClock#elapsedRealtime()} clock.
+ *
+ * @see si.inova.neatle.monitor.Connection#getQueueStatistics()
+ */
+public final class QueueStatistics {
+
+    private long startedCount;
+    private long totalQueueAge;
+    private long maxQueueAge;
+    private long expiredCount;
+    private int queuedCount;
+    private long oldestQueueAge;
+
+    QueueStatistics() {
+    }
+
+    QueueStatistics(QueueStatistics other, int queuedCount, long oldestQueueAge) {
+        this.startedCount = other.startedCount;
+        this.totalQueueAge = other.totalQueueAge;
+        this.maxQueueAge = other.maxQueueAge;
+        this.expiredCount = other.expiredCount;
+        this.queuedCount = queuedCount;
+        this.oldestQueueAge = oldestQueueAge;
+    }
+
+    void recordStarted(long queueAge) {
+        startedCount++;
+        totalQueueAge += queueAge;
+        maxQueueAge = Math.max(maxQueueAge, queueAge);
+    }
+
+    void recordExpired() {
+        expiredCount++;
+    }
+
+    /**
+     * Returns the number of operations that were started.
+     *
+     * @return the number of operations
+     */
+    public long getStartedCount() {
+        return startedCount;
+    }
+
+    /**
+     * Returns the mean time started operations waited in the queue.
+     *
+     * @return the mean time in milliseconds, or 0 if no operation was started
+     */
+    public double getMeanQueueAge() {
+        return startedCount == 0 ? 0 : (double) totalQueueAge / startedCount;
+    }
+
+    /**
+     * Returns the longest time a started operation waited in the queue.
+     *
+     * @return the time in milliseconds, or 0 if no operation was started
+     */
+    public long getMaxQueueAge() {
+        return maxQueueAge;
+    }
+
+    /**
+     * Returns the number of operations that were dropped, because they waited in the queue for
+     * longer than they were allowed to.
+     *
+     * @return the number of operations
+     * @see si.inova.neatle.operation.OperationBuilder#maxQueueAge(long)
+     */
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Returns the number of operations waiting in the queue when the statistics were taken.
+     *
+     * @return the number of operations
+     */
+    public int getQueuedCount() {
+        return queuedCount;
+    }
+
+    /**
+     * Returns how long the oldest of the waiting operations had waited when the statistics were
+     * taken.
+     *
+     * @return the time in milliseconds, or 0 if no operation was waiting
+     */
+    public long getOldestQueueAge() {
+        return oldestQueueAge;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueStatistics[started: " + startedCount + ", mean age: " + getMeanQueueAge() + "ms, max age: "
+                + maxQueueAge + "ms, expired: " + expiredCount + ", queued: " + queuedCount + ", oldest: "
+                + oldestQueueAge + "ms]";
+    }
+}
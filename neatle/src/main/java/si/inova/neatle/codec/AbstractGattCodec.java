@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.codec;
+
+import si.inova.neatle.operation.CommandResult;
+import si.inova.neatle.source.ByteArrayInputSource;
+import si.inova.neatle.source.InputSource;
+import si.inova.neatle.util.Ieee11073;
+
+/**
+ * Base class of generated codecs. Connects them to {@link CommandResult} and {@link InputSource},
+ * and provides the primitives the generated code is built from.
+ *
+ * @param <T> the type of the structure
+ */
+public abstract class AbstractGattCodec<T> implements GattCodec<T> {
+
+    private final int size;
+
+    protected AbstractGattCodec(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Decodes the value of a command result into a new structure.
+     *
+     * @param result the result, for example a read or a notification
+     * @return the decoded structure
+     * @throws IndexOutOfBoundsException if the result is too short
+     */
+    public T decode(CommandResult result) {
+        T target = newInstance();
+        decode(result.getValue(), 0, target);
+        return target;
+    }
+
+    /**
+     * Decodes the value of a command result into an existing structure, without allocating.
+     *
+     * @param result the result, for example a read or a notification
+     * @param target the instance to decode into
+     * @throws IndexOutOfBoundsException if the result is too short
+     */
+    public void decode(CommandResult result, T target) {
+        decode(result.getValue(), 0, target);
+    }
+
+    /**
+     * Encodes a structure into a new array.
+     *
+     * @param value the structure to encode
+     * @return the encoded structure
+     */
+    public byte[] encode(T value) {
+        byte[] target = new byte[size];
+        encode(value, target, 0);
+        return target;
+    }
+
+    /**
+     * Encodes a structure into an input source, that can be written with a write command.
+     *
+     * @param value the structure to encode
+     * @return the input source
+     */
+    public InputSource toInputSource(T value) {
+        return new ByteArrayInputSource(encode(value));
+    }
+
+    protected void checkRange(byte[] data, int offset) {
+        if (data == null || offset < 0 || offset > data.length - size) {
+            throw new IndexOutOfBoundsException("Cannot fit " + size + " bytes at " + offset
+                    + " into " + (data == null ? 0 : data.length) + " bytes");
+        }
+    }
+
+    protected static long readInt(byte[] data, int offset, int size, boolean signed, boolean bigEndian) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            int index = bigEndian ? offset + i : offset + size - 1 - i;
+            value = (value << 8) | (data[index] & 0xFF);
+        }
+        if (signed && size < 8) {
+            int shift = 64 - size * 8;
+            value = (value << shift) >> shift;
+        }
+        return value;
+    }
+
+    protected static void writeInt(byte[] data, int offset, int size, long value, boolean bigEndian) {
+        for (int i = 0; i < size; i++) {
+            int index = bigEndian ? offset + size - 1 - i : offset + i;
+            data[index] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    protected static double readFloat(byte[] data, int offset, int format, boolean bigEndian) {
+        switch (format) {
+            case CommandResult.FORMAT_SFLOAT:
+                return Ieee11073.sfloatToDouble((int) readInt(data, offset, 2, false, bigEndian));
+            case CommandResult.FORMAT_FLOAT:
+                return Ieee11073.floatToDouble((int) readInt(data, offset, 4, false, bigEndian));
+            case CommandResult.FORMAT_FLOAT32:
+                return Float.intBitsToFloat((int) readInt(data, offset, 4, false, bigEndian));
+            case CommandResult.FORMAT_FLOAT64:
+                return Double.longBitsToDouble(readInt(data, offset, 8, false, bigEndian));
+            default:
+                throw new IllegalArgumentException("Format " + format + " is not a floating point format");
+        }
+    }
+
+    protected static void writeFloat(byte[] data, int offset, int format, double value, boolean bigEndian) {
+        switch (format) {
+            case CommandResult.FORMAT_SFLOAT:
+                writeInt(data, offset, 2, Ieee11073.doubleToSfloat(value), bigEndian);
+                break;
+            case CommandResult.FORMAT_FLOAT:
+                writeInt(data, offset, 4, Ieee11073.doubleToFloat(value), bigEndian);
+                break;
+            case CommandResult.FORMAT_FLOAT32:
+                writeInt(data, offset, 4, Float.floatToRawIntBits((float) value), bigEndian);
+                break;
+            case CommandResult.FORMAT_FLOAT64:
+                writeInt(data, offset, 8, Double.doubleToRawLongBits(value), bigEndian);
+                break;
+            default:
+                throw new IllegalArgumentException("Format " + format + " is not a floating point format");
+        }
+    }
+}
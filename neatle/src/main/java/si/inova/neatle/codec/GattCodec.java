@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.codec;
+
+/**
+ * Encodes and decodes a fixed size GATT structure. Implementations are generated for classes
+ * annotated with {@link GattStruct}.
+ *
+ * @param <T> the type of the structure
+ */
+public interface GattCodec<T> {
+
+    /**
+     * Returns the size of an encoded structure, in bytes.
+     *
+     * @return the size in bytes
+     */
+    int getSize();
+
+    /**
+     * Creates a new, empty structure.
+     *
+     * @return the new structure
+     */
+    T newInstance();
+
+    /**
+     * Decodes a structure into an existing instance, so that it can be reused.
+     *
+     * @param data   the encoded data
+     * @param offset the offset of the structure in data
+     * @param target the instance to decode into
+     * @throws IndexOutOfBoundsException if the data is too short
+     */
+    void decode(byte[] data, int offset, T target);
+
+    /**
+     * Encodes a structure into an existing array.
+     *
+     * @param value  the structure to encode
+     * @param target the array to encode into
+     * @param offset the offset in target
+     * @throws IndexOutOfBoundsException if the array is too short
+     */
+    void encode(T value, byte[] target, int offset);
+}
@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import si.inova.neatle.operation.CommandResult;
+
+/**
+ * A field of a {@link GattStruct}. Fields are laid out one after another, sorted by
+ * {@link #order()}.
+ *
+ * <p>A field with {@link #bits()} set is a bitfield. Consecutive bitfields with the same format are
+ * packed into a single value of that format, starting at the least significant bit, until the next
+ * one doesn't fit anymore.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface GattField {
+
+    /**
+     * The position of the field in the structure.
+     */
+    int order();
+
+    /**
+     * The format of the field, one of the {@code CommandResult.FORMAT_*} constants
+     * (e.g. {@link CommandResult#FORMAT_UINT16}). Integer formats map to integer or boolean fields,
+     * floating point formats to float or double fields.
+     */
+    int format();
+
+    /**
+     * The width of a bitfield in bits, or 0 if the field takes up its whole format.
+     */
+    int bits() default 0;
+
+    /**
+     * True if the field is big endian. GATT values are little endian by default.
+     */
+    boolean bigEndian() default false;
+}
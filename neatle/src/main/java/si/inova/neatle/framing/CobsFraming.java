@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.framing;
+
+/**
+ * Consistent Overhead Byte Stuffing: each message is encoded without zero bytes and ends with a
+ * zero byte. The overhead is at most one byte per 254 bytes of message, plus the delimiter.
+ */
+public final class CobsFraming implements Framing {
+
+    private static final int MAX_BLOCK = 0xFF;
+
+    @Override
+    public int getMaxEncodedLength(int length) {
+        return length + length / (MAX_BLOCK - 1) + 2;
+    }
+
+    @Override
+    public int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        int codeIndex = dstOffset;
+        int out = dstOffset + 1;
+        int code = 1;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = src[i];
+            if (b == 0) {
+                dst[codeIndex] = (byte) code;
+                codeIndex = out++;
+                code = 1;
+            } else {
+                dst[out++] = b;
+                code++;
+                if (code == MAX_BLOCK) {
+                    dst[codeIndex] = (byte) code;
+                    codeIndex = out++;
+                    code = 1;
+                }
+            }
+        }
+        dst[codeIndex] = (byte) code;
+        dst[out++] = 0;
+        return out - dstOffset;
+    }
+
+    @Override
+    public Deframer createDeframer(int maxFrameLength, FrameListener listener) {
+        return new CobsDeframer(maxFrameLength, listener);
+    }
+
+    private static final class CobsDeframer extends Deframer {
+
+        // code of the current block, 0 before the first block of a frame
+        private int code;
+        // bytes left in the current block
+        private int remaining;
+        private boolean discarding;
+
+        CobsDeframer(int maxFrameLength, FrameListener listener) {
+            super(maxFrameLength, listener);
+        }
+
+        @Override
+        public void feed(byte[] data, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                int b = data[i] & 0xFF;
+                if (b == 0) {
+                    endFrame();
+                } else if (discarding) {
+                    continue;
+                } else if (remaining == 0) {
+                    // a block ended, it's followed by a zero unless it was a full block
+                    if (code != 0 && code != MAX_BLOCK && !append((byte) 0)) {
+                        continue;
+                    }
+                    code = b;
+                    remaining = b - 1;
+                } else {
+                    append((byte) b);
+                    remaining--;
+                }
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            code = 0;
+            remaining = 0;
+            discarding = false;
+        }
+
+        private boolean append(byte b) {
+            if (frameLength == frame.length) {
+                dropFrame();
+                discarding = true;
+                return false;
+            }
+            frame[frameLength++] = b;
+            return true;
+        }
+
+        private void endFrame() {
+            if (!discarding && code != 0) {
+                if (remaining == 0) {
+                    listener.onFrame(frame, 0, frameLength);
+                } else {
+                    // the frame ended in the middle of a block
+                    dropFrame();
+                }
+            }
+            reset();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.framing;
+
+import si.inova.neatle.operation.CharacteristicsChangedListener;
+import si.inova.neatle.operation.CommandResult;
+import si.inova.neatle.operation.NotificationBatch;
+import si.inova.neatle.operation.NotificationBatchListener;
+
+/**
+ * Splits a stream of bytes, received over notifications, into messages. A message may span any
+ * number of notifications and a notification may hold any number of messages.
+ * <p>
+ * A deframer can be set as the listener of a {@link si.inova.neatle.operation.CharacteristicSubscription},
+ * either for single changes or for batches. Messages are reassembled into one reusable buffer.
+ * A deframer is not thread safe.
+ */
+public abstract class Deframer implements CharacteristicsChangedListener, NotificationBatchListener {
+
+    protected final FrameListener listener;
+    protected final byte[] frame;
+    protected int frameLength;
+
+    private long droppedCount;
+
+    protected Deframer(int maxFrameLength, FrameListener listener) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("Max frame length must be positive");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener must not be null");
+        }
+        this.frame = new byte[maxFrameLength];
+        this.listener = listener;
+    }
+
+    @Override
+    public void onCharacteristicChanged(CommandResult change) {
+        byte[] value = change.getValue();
+        if (change.wasSuccessful() && value != null) {
+            feed(value, 0, value.length);
+        }
+    }
+
+    @Override
+    public void onNotificationBatch(NotificationBatch batch) {
+        byte[] data = batch.getData();
+        for (int i = 0; i < batch.size(); i++) {
+            feed(data, batch.getOffset(i), batch.getLength(i));
+        }
+    }
+
+    /**
+     * Adds the received bytes to the stream, notifying the listener of each message they complete.
+     *
+     * @param data   the received bytes
+     * @param offset the offset in data
+     * @param length the number of bytes
+     */
+    public abstract void feed(byte[] data, int offset, int length);
+
+    /**
+     * Drops the partially received message, e.g. after a reconnect.
+     */
+    public void reset() {
+        frameLength = 0;
+    }
+
+    /**
+     * Returns the number of messages dropped because they were too long or malformed.
+     *
+     * @return the number of dropped messages
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    protected void dropFrame() {
+        droppedCount++;
+        frameLength = 0;
+    }
+}
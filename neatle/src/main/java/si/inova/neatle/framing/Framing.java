@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.framing;
+
+/**
+ * A way of splitting a byte stream into messages, e.g. for UART-like services that send and
+ * receive a stream of bytes over a pair of characteristics.
+ *
+ * @see si.inova.neatle.source.FramedInputSource
+ */
+public interface Framing {
+
+    /**
+     * Returns the largest number of bytes a message of the given length can be encoded to.
+     *
+     * @param length the length of the message
+     * @return the maximum encoded length, including any delimiters
+     */
+    int getMaxEncodedLength(int length);
+
+    /**
+     * Encodes a message into a frame.
+     *
+     * @param src       the message
+     * @param offset    the offset of the message in src
+     * @param length    the length of the message
+     * @param dst       the array to encode into, with at least {@link #getMaxEncodedLength(int)}
+     *                  bytes of space after dstOffset
+     * @param dstOffset where to start writing
+     * @return the number of bytes written
+     */
+    int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset);
+
+    /**
+     * Creates a deframer that splits a received byte stream into messages.
+     *
+     * @param maxFrameLength the longest message to accept; longer messages are dropped
+     * @param listener       the listener to notify of each message
+     * @return a new deframer
+     */
+    Deframer createDeframer(int maxFrameLength, FrameListener listener);
+}
@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.framing;
+
+/**
+ * Frames each message with its length, as a little endian unsigned integer of 1, 2 or 4 bytes.
+ * <p>
+ * When a notification holds whole messages, they are passed to the listener straight from the
+ * notification's value, without copying.
+ */
+public final class LengthPrefixFraming implements Framing {
+
+    private final int prefixSize;
+
+    /**
+     * @param prefixSize the size of the length in bytes: 1, 2 or 4
+     */
+    public LengthPrefixFraming(int prefixSize) {
+        if (prefixSize != 1 && prefixSize != 2 && prefixSize != 4) {
+            throw new IllegalArgumentException("Prefix size must be 1, 2 or 4");
+        }
+        this.prefixSize = prefixSize;
+    }
+
+    @Override
+    public int getMaxEncodedLength(int length) {
+        return prefixSize + length;
+    }
+
+    @Override
+    public int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        if (prefixSize < 4 && length >= 1 << (8 * prefixSize)) {
+            throw new IllegalArgumentException("Message of " + length + " bytes is too long for a "
+                    + prefixSize + " byte length");
+        }
+        for (int i = 0; i < prefixSize; i++) {
+            dst[dstOffset + i] = (byte) (length >>> (8 * i));
+        }
+        System.arraycopy(src, offset, dst, dstOffset + prefixSize, length);
+        return prefixSize + length;
+    }
+
+    @Override
+    public Deframer createDeframer(int maxFrameLength, FrameListener listener) {
+        return new LengthPrefixDeframer(prefixSize, maxFrameLength, listener);
+    }
+
+    private static final class LengthPrefixDeframer extends Deframer {
+
+        private final int prefixSize;
+
+        private int headerRead;
+        private long expected;
+        private long skipRemaining;
+
+        LengthPrefixDeframer(int prefixSize, int maxFrameLength, FrameListener listener) {
+            super(maxFrameLength, listener);
+            this.prefixSize = prefixSize;
+        }
+
+        @Override
+        public void feed(byte[] data, int offset, int length) {
+            int end = offset + length;
+            int i = offset;
+            while (i < end) {
+                if (skipRemaining > 0) {
+                    int n = (int) Math.min(end - i, skipRemaining);
+                    i += n;
+                    skipRemaining -= n;
+                } else if (headerRead < prefixSize) {
+                    if (headerRead == 0 && end - i >= prefixSize) {
+                        long frameSize = readLength(data, i);
+                        if (frameSize <= frame.length && end - i - prefixSize >= frameSize) {
+                            // the whole message is in this notification
+                            listener.onFrame(data, i + prefixSize, (int) frameSize);
+                            i += prefixSize + (int) frameSize;
+                            continue;
+                        }
+                    }
+                    expected |= (long) (data[i++] & 0xFF) << (8 * headerRead);
+                    headerRead++;
+                    if (headerRead == prefixSize) {
+                        startFrame();
+                    }
+                } else {
+                    int n = Math.min(end - i, (int) expected - frameLength);
+                    System.arraycopy(data, i, frame, frameLength, n);
+                    frameLength += n;
+                    i += n;
+                    if (frameLength == expected) {
+                        listener.onFrame(frame, 0, frameLength);
+                        reset();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            headerRead = 0;
+            expected = 0;
+            skipRemaining = 0;
+        }
+
+        private void startFrame() {
+            if (expected > frame.length) {
+                long skip = expected;
+                dropFrame();
+                reset();
+                skipRemaining = skip;
+            } else if (expected == 0) {
+                listener.onFrame(frame, 0, 0);
+                reset();
+            }
+        }
+
+        private long readLength(byte[] data, int offset) {
+            long value = 0;
+            for (int i = 0; i < prefixSize; i++) {
+                value |= (long) (data[offset + i] & 0xFF) << (8 * i);
+            }
+            return value;
+        }
+    }
+}
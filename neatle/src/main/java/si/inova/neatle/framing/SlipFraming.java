@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.framing;
+
+/**
+ * SLIP framing (RFC 1055): each message ends with an END byte, END and ESC bytes in the message
+ * are escaped. Empty messages are ignored, so extra END bytes can be used to flush line noise.
+ */
+public final class SlipFraming implements Framing {
+
+    static final byte END = (byte) 0xC0;
+    static final byte ESC = (byte) 0xDB;
+    static final byte ESC_END = (byte) 0xDC;
+    static final byte ESC_ESC = (byte) 0xDD;
+
+    @Override
+    public int getMaxEncodedLength(int length) {
+        return 2 * length + 1;
+    }
+
+    @Override
+    public int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        int out = dstOffset;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = src[i];
+            if (b == END) {
+                dst[out++] = ESC;
+                dst[out++] = ESC_END;
+            } else if (b == ESC) {
+                dst[out++] = ESC;
+                dst[out++] = ESC_ESC;
+            } else {
+                dst[out++] = b;
+            }
+        }
+        dst[out++] = END;
+        return out - dstOffset;
+    }
+
+    @Override
+    public Deframer createDeframer(int maxFrameLength, FrameListener listener) {
+        return new SlipDeframer(maxFrameLength, listener);
+    }
+
+    private static final class SlipDeframer extends Deframer {
+
+        private boolean escaped;
+        private boolean discarding;
+
+        SlipDeframer(int maxFrameLength, FrameListener listener) {
+            super(maxFrameLength, listener);
+        }
+
+        @Override
+        public void feed(byte[] data, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                byte b = data[i];
+                if (b == END) {
+                    if (!discarding && frameLength > 0) {
+                        listener.onFrame(frame, 0, frameLength);
+                    }
+                    reset();
+                } else if (discarding) {
+                    continue;
+                } else if (escaped) {
+                    escaped = false;
+                    if (b == ESC_END) {
+                        append(END);
+                    } else if (b == ESC_ESC) {
+                        append(ESC);
+                    } else {
+                        discard();
+                    }
+                } else if (b == ESC) {
+                    escaped = true;
+                } else {
+                    append(b);
+                }
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            escaped = false;
+            discarding = false;
+        }
+
+        private void append(byte b) {
+            if (frameLength == frame.length) {
+                discard();
+            } else {
+                frame[frameLength++] = b;
+            }
+        }
+
+        private void discard() {
+            dropFrame();
+            discarding = true;
+        }
+    }
+}
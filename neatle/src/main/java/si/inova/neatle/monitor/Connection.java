@@ -27,16 +27,26 @@ package si.inova.neatle.monitor;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattService;
+import android.os.Looper;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 import si.inova.neatle.Neatle;
+import si.inova.neatle.QueueStatistics;
 import si.inova.neatle.ServicesDiscoveredListener;
+import si.inova.neatle.operation.CharacteristicCache;
 import si.inova.neatle.operation.CharacteristicsChangedListener;
+import si.inova.neatle.operation.RawCharacteristicListener;
 
 public interface Connection {
 
+    /**
+     * The ATT MTU every link starts with, before a larger one is negotiated.
+     */
+    int DEFAULT_MTU = 23;
+
     /**
      * Is this connection established.
      *
@@ -106,6 +116,43 @@ public interface Connection {
      */
     int getCharacteristicsChangedListenerCount(UUID characteristicsUUID);
 
+    /**
+     * Add a listener that gets the raw value of every notification/indication on the
+     * characteristic. Unlike {@link #addCharacteristicsChangedListener}, it's called directly on
+     * the Bluetooth binder thread and no {@link si.inova.neatle.operation.CommandResult} is
+     * created for it.
+     * <p>
+     * Raw listeners are counted by {@link #getCharacteristicsChangedListenerCount(UUID)} and keep
+     * the connection alive the same way change listeners do.
+     *
+     * @param characteristicsUUID the UUID of the desired characteristics
+     * @param listener            the listener to add
+     */
+    void addRawCharacteristicListener(UUID characteristicsUUID, RawCharacteristicListener listener);
+
+    /**
+     * Removes the listener previously added by {@link #addRawCharacteristicListener}
+     *
+     * @param characteristicsUUID characteristics UUID
+     * @param listener            the listener to remove
+     */
+    void removeRawCharacteristicListener(UUID characteristicsUUID, RawCharacteristicListener listener);
+
+    /**
+     * Sets the executor on which change listeners are notified. Defaults to the main thread.
+     *
+     * @param executor the executor, or null to notify on the main thread
+     */
+    void setNotificationExecutor(Executor executor);
+
+    /**
+     * Notifies change listeners on the thread of the given looper, instead of the main thread.
+     *
+     * @param looper the looper, or null to notify on the main thread
+     * @see #setNotificationExecutor(Executor)
+     */
+    void setNotificationLooper(Looper looper);
+
     /**
      * Returns the state of this connection - {@link android.bluetooth.BluetoothAdapter#STATE_CONNECTED},
      * {@link android.bluetooth.BluetoothAdapter#STATE_CONNECTING},
@@ -156,6 +203,58 @@ public interface Connection {
      */
     List<BluetoothGattService> getServices();
 
+    /**
+     * Returns the ATT MTU negotiated on this connection, or {@link #DEFAULT_MTU} if no
+     * larger MTU has been negotiated yet. The MTU is reset on every new connection.
+     *
+     * @return the current MTU in bytes
+     * @see si.inova.neatle.operation.OperationBuilder#requestMtu(int)
+     */
+    int getMtu();
+
+    /**
+     * Returns the PHY used to transmit to the device, one of the {@code BluetoothDevice.PHY_LE_*}
+     * constants. Every connection starts on {@link android.bluetooth.BluetoothDevice#PHY_LE_1M}.
+     *
+     * @return the current transmitter PHY
+     * @see si.inova.neatle.operation.OperationBuilder#setPreferredPhy(int, int, int)
+     */
+    int getTxPhy();
+
+    /**
+     * Returns the PHY used to receive from the device, one of the {@code BluetoothDevice.PHY_LE_*}
+     * constants. Every connection starts on {@link android.bluetooth.BluetoothDevice#PHY_LE_1M}.
+     *
+     * @return the current receiver PHY
+     * @see si.inova.neatle.operation.OperationBuilder#setPreferredPhy(int, int, int)
+     */
+    int getRxPhy();
+
+    /**
+     * Sets the cache of characteristic values for this connection. Reads and notifications
+     * update the cache, and reads of characteristics with a fresh cached value are answered
+     * without going to the device. Caching is off by default.
+     *
+     * @param cache the cache to use, or null to turn caching off
+     */
+    void setCharacteristicCache(CharacteristicCache cache);
+
+    /**
+     * Returns the cache of characteristic values of this connection.
+     *
+     * @return the cache, or null if caching is off
+     * @see #setCharacteristicCache(CharacteristicCache)
+     */
+    CharacteristicCache getCharacteristicCache();
+
+    /**
+     * Returns the statistics of how long operations waited before they started on this
+     * connection.
+     *
+     * @return a snapshot of the statistics
+     */
+    QueueStatistics getQueueStatistics();
+
     void addServicesDiscoveredListener(ServicesDiscoveredListener listener);
 
     void removeServicesDiscoveredListener(ServicesDiscoveredListener listener);
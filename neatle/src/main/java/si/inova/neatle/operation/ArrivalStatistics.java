@@ -0,0 +1,170 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+/**
+ * Statistics of the time between changes of a characteristic, e.g. to check the sample rate of a
+ * sensor. The mean and jitter are computed on the fly, so no timestamps are kept.
+ * <p>
+ * An interval longer than 1.5 times the mean is counted as a gap, which usually means a change
+ * (or a connection event) was missed.
+ *
+ * @see CharacteristicSubscription#getArrivalStatistics()
+ */
+public final class ArrivalStatistics {
+
+    private static final double GAP_FACTOR = 1.5;
+    // the mean isn't reliable before that, so gaps aren't counted
+    private static final int MIN_INTERVALS_FOR_GAPS = 8;
+
+    private long count;
+    private long lastTimestampNanos;
+    private double mean;
+    private double m2;
+    private long minInterval;
+    private long maxInterval;
+    private long gapCount;
+
+    ArrivalStatistics() {
+    }
+
+    ArrivalStatistics(ArrivalStatistics other) {
+        this.count = other.count;
+        this.lastTimestampNanos = other.lastTimestampNanos;
+        this.mean = other.mean;
+        this.m2 = other.m2;
+        this.minInterval = other.minInterval;
+        this.maxInterval = other.maxInterval;
+        this.gapCount = other.gapCount;
+    }
+
+    void record(long timestampNanos) {
+        if (count > 0) {
+            long interval = timestampNanos - lastTimestampNanos;
+            long intervals = count;
+            if (intervals > MIN_INTERVALS_FOR_GAPS && interval > GAP_FACTOR * mean) {
+                gapCount++;
+            }
+            // Welford's online algorithm
+            double delta = interval - mean;
+            mean += delta / intervals;
+            m2 += delta * (interval - mean);
+            minInterval = intervals == 1 ? interval : Math.min(minInterval, interval);
+            maxInterval = Math.max(maxInterval, interval);
+        }
+        lastTimestampNanos = timestampNanos;
+        count++;
+    }
+
+    void reset() {
+        count = 0;
+        lastTimestampNanos = 0;
+        mean = 0;
+        m2 = 0;
+        minInterval = 0;
+        maxInterval = 0;
+        gapCount = 0;
+    }
+
+    /**
+     * Returns the number of changes received.
+     *
+     * @return the number of changes
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns when the last change was received, on the
+     * {@link android.os.SystemClock#elapsedRealtimeNanos()} clock.
+     *
+     * @return the time in nanoseconds since boot, or 0 if there were no changes
+     */
+    public long getLastTimestampNanos() {
+        return lastTimestampNanos;
+    }
+
+    /**
+     * Returns the mean time between changes.
+     *
+     * @return the mean interval in nanoseconds, or 0 if there were less than two changes
+     */
+    public double getMeanIntervalNanos() {
+        return mean;
+    }
+
+    /**
+     * Returns the jitter, the standard deviation of the time between changes.
+     *
+     * @return the jitter in nanoseconds, or 0 if there were less than three changes
+     */
+    public double getJitterNanos() {
+        long intervals = count - 1;
+        return intervals < 2 ? 0 : Math.sqrt(m2 / (intervals - 1));
+    }
+
+    /**
+     * Returns the shortest time between two changes.
+     *
+     * @return the interval in nanoseconds, or 0 if there were less than two changes
+     */
+    public long getMinIntervalNanos() {
+        return minInterval;
+    }
+
+    /**
+     * Returns the longest time between two changes.
+     *
+     * @return the interval in nanoseconds, or 0 if there were less than two changes
+     */
+    public long getMaxIntervalNanos() {
+        return maxInterval;
+    }
+
+    /**
+     * Returns the number of intervals that were much longer than the mean.
+     *
+     * @return the number of gaps
+     */
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    /**
+     * Returns the mean rate of changes.
+     *
+     * @return changes per second, or 0 if there were less than two changes
+     */
+    public double getRate() {
+        return mean <= 0 ? 0 : 1e9 / mean;
+    }
+
+    @Override
+    public String toString() {
+        return "ArrivalStatistics[count: " + count + ", mean: " + mean + "ns, jitter: " + getJitterNanos()
+                + "ns, min: " + minInterval + "ns, max: " + maxInterval + "ns, gaps: " + gapCount + "]";
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.os.SystemClock;
+import androidx.annotation.RestrictTo;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import si.inova.neatle.monitor.Connection;
+import si.inova.neatle.util.NeatleLogger;
+
+/**
+ * Reads many characteristics in a single command, so the operation only schedules one command
+ * for the whole batch.
+ */
+class BatchReadCommand extends Command {
+
+    private final BatchReadFilter filter;
+    private final BatchReadObserver batchObserver;
+
+    private final LinkedList<BluetoothGattCharacteristic> queue = new LinkedList<>();
+    private List<CommandResult> results;
+    private BluetoothGattCharacteristic current;
+    private long snapshot;
+
+    BatchReadCommand(BatchReadFilter filter, BatchReadObserver observer) {
+        super(observer);
+        this.filter = filter;
+        this.batchObserver = observer;
+    }
+
+    @Override
+    protected Command duplicate() {
+        return new BatchReadCommand(filter, batchObserver);
+    }
+
+    @Override
+    protected void start(Connection connection, BluetoothGatt gatt) {
+        queue.clear();
+        results = new ArrayList<>();
+        current = null;
+        snapshot = System.currentTimeMillis();
+
+        for (BluetoothGattService service : gatt.getServices()) {
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                if (filter.matches(service, characteristic)) {
+                    queue.add(characteristic);
+                }
+            }
+        }
+        NeatleLogger.d("Reading " + queue.size() + " characteristics in a batch");
+
+        readNext(gatt);
+    }
+
+    private void readNext(BluetoothGatt gatt) {
+        while (!queue.isEmpty()) {
+            current = queue.poll();
+            if (gatt.readCharacteristic(current)) {
+                return;
+            }
+            NeatleLogger.d("Read failed " + current.getUuid());
+            addResult(new CommandResult(current.getUuid(), null, BluetoothGatt.GATT_FAILURE, snapshot));
+        }
+
+        current = null;
+        finish(new BatchReadResult(BluetoothGatt.GATT_SUCCESS, snapshot, results));
+    }
+
+    @Override
+    protected void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        if (current == null || !characteristic.getUuid().equals(current.getUuid())) {
+            NeatleLogger.e("Got a read request for a unknown characteristic");
+            return;
+        }
+
+        byte[] value = status == BluetoothGatt.GATT_SUCCESS ? characteristic.getValue() : null;
+        // all results share the snapshot time, but keep their own arrival time
+        addResult(new CommandResult(characteristic.getUuid(), value, status, snapshot, SystemClock.elapsedRealtimeNanos()));
+        readNext(gatt);
+    }
+
+    private void addResult(CommandResult result) {
+        results.add(result);
+        if (batchObserver != null) {
+            batchObserver.characteristicRead(this, result);
+        }
+    }
+
+    @Override
+    protected void onError(int error) {
+        NeatleLogger.e("Unexpected error while reading a batch [" + error + "]");
+        queue.clear();
+        current = null;
+        finish(new BatchReadResult(error, snapshot, results));
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    BatchReadFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchReadCommand[" + queue.size() + " remaining]";
+    }
+}
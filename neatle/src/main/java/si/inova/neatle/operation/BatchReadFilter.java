@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Selects the characteristics read by a batched read. By default all readable characteristics
+ * of all services are selected; adding services or characteristics limits the read to those.
+ *
+ * @see OperationBuilder#readBatch(BatchReadFilter)
+ */
+public class BatchReadFilter {
+
+    private final Set<UUID> services = new HashSet<>();
+    private final Set<UUID> characteristics = new HashSet<>();
+    private int requiredProperties = BluetoothGattCharacteristic.PROPERTY_READ;
+
+    /**
+     * Limits the read to characteristics of the given service. Can be called more than once.
+     *
+     * @param serviceUUID the UUID of the service
+     * @return this object
+     */
+    public BatchReadFilter addService(UUID serviceUUID) {
+        services.add(serviceUUID);
+        return this;
+    }
+
+    /**
+     * Limits the read to the given characteristic. Can be called more than once.
+     *
+     * @param characteristicUUID the UUID of the characteristic
+     * @return this object
+     */
+    public BatchReadFilter addCharacteristic(UUID characteristicUUID) {
+        characteristics.add(characteristicUUID);
+        return this;
+    }
+
+    /**
+     * Limits the read to characteristics that have all of the given properties, in addition to
+     * {@link BluetoothGattCharacteristic#PROPERTY_READ}.
+     *
+     * @param properties a combination of the {@code BluetoothGattCharacteristic.PROPERTY_*}
+     *                   constants
+     * @return this object
+     */
+    public BatchReadFilter requireProperties(int properties) {
+        requiredProperties = properties | BluetoothGattCharacteristic.PROPERTY_READ;
+        return this;
+    }
+
+    boolean matches(BluetoothGattService service, BluetoothGattCharacteristic characteristic) {
+        if (!services.isEmpty() && !services.contains(service.getUuid())) {
+            return false;
+        }
+        if (!characteristics.isEmpty() && !characteristics.contains(characteristic.getUuid())) {
+            return false;
+        }
+        return (characteristic.getProperties() & requiredProperties) == requiredProperties;
+    }
+}
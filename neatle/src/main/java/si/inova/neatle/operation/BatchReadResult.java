@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a batched read. It holds the result of every characteristic that was read, all of
+ * them stamped with the time the batch started, so they can be treated as a single snapshot.
+ *
+ * <p>A failure to read a single characteristic doesn't fail the batch; check the status of the
+ * individual results. The batch itself only fails if it was interrupted, for example by a
+ * disconnect, in which case it holds the results read until then.
+ */
+public class BatchReadResult extends CommandResult {
+
+    private final List<CommandResult> results;
+
+    BatchReadResult(int status, long timestamp, List<CommandResult> results) {
+        super(null, null, status, timestamp);
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Returns the results of the individual characteristics, in the order they were read.
+     *
+     * @return the results of the characteristics
+     */
+    public List<CommandResult> getResults() {
+        return results;
+    }
+
+    /**
+     * Returns how many characteristics could not be read.
+     *
+     * @return the number of failed reads
+     */
+    public int getFailureCount() {
+        int count = 0;
+        for (CommandResult result : results) {
+            if (!result.wasSuccessful()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchReadResult[status: " + getStatus() + ", read: " + results.size() + ", failed: " + getFailureCount() + "]";
+    }
+}
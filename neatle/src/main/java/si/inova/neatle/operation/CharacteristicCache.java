@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.os.SystemClock;
+import androidx.annotation.RestrictTo;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A cache of characteristic values, fed by the reads and notifications of a connection. Reads of
+ * a characteristic whose cached value is younger than its time to live are answered from the
+ * cache, without going to the device.
+ *
+ * <p>Values are kept per service and characteristic, so the same characteristic in two services
+ * (e.g. two instances of a standard service) doesn't share a value. The cache holds at most the
+ * given number of characteristics; when it is full, the least recently used one is evicted.
+ * Written characteristics are invalidated and the whole cache is cleared when the connection is
+ * lost.
+ *
+ * @see si.inova.neatle.monitor.Connection#setCharacteristicCache(CharacteristicCache)
+ */
+public class CharacteristicCache {
+
+    private final int maxEntries;
+    private final long defaultTtl;
+    private final Map<UUID, Long> ttls = new HashMap<>();
+    private final LinkedHashMap<CharacteristicKey, Entry> entries;
+
+    /**
+     * @param maxEntries the maximum number of characteristics to keep
+     * @param defaultTtl how long (in milliseconds) a value stays fresh, unless set otherwise
+     *                   with {@link #setTtl(UUID, long)}
+     */
+    public CharacteristicCache(int maxEntries, long defaultTtl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache must hold at least one entry");
+        }
+        if (defaultTtl < 0) {
+            throw new IllegalArgumentException("Time to live cannot be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.defaultTtl = defaultTtl;
+        this.entries = new LinkedHashMap<CharacteristicKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CharacteristicKey, Entry> eldest) {
+                return size() > CharacteristicCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Sets how long (in milliseconds) the value of the given characteristic stays fresh, in
+     * every service it is found in. A time to live of 0 disables caching of that characteristic.
+     *
+     * @param characteristicUUID the UUID of the characteristic
+     * @param ttl                the time to live in milliseconds
+     */
+    public synchronized void setTtl(UUID characteristicUUID, long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Time to live cannot be negative");
+        }
+        ttls.put(characteristicUUID, ttl);
+        if (ttl == 0) {
+            Iterator<CharacteristicKey> it = entries.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().characteristicUUID.equals(characteristicUUID)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached value of the characteristic, if it is still fresh.
+     *
+     * @param serviceUUID        the UUID of the service the characteristic belongs to
+     * @param characteristicUUID the UUID of the characteristic
+     * @return the cached result, or null if there is no fresh value
+     */
+    public synchronized CommandResult get(UUID serviceUUID, UUID characteristicUUID) {
+        CharacteristicKey key = new CharacteristicKey(serviceUUID, characteristicUUID);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - entry.cachedAt > ttl(characteristicUUID)) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    /**
+     * Removes the cached value of the characteristic.
+     *
+     * @param serviceUUID        the UUID of the service the characteristic belongs to
+     * @param characteristicUUID the UUID of the characteristic
+     */
+    public synchronized void invalidate(UUID serviceUUID, UUID characteristicUUID) {
+        entries.remove(new CharacteristicKey(serviceUUID, characteristicUUID));
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of cached characteristics, fresh or not.
+     *
+     * @return the number of cached characteristics
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public synchronized void put(UUID serviceUUID, CommandResult result) {
+        if (!result.wasSuccessful() || result.getUUID() == null || result.getValue() == null) {
+            return;
+        }
+        if (ttl(result.getUUID()) == 0) {
+            return;
+        }
+        entries.put(new CharacteristicKey(serviceUUID, result.getUUID()), new Entry(result, SystemClock.elapsedRealtime()));
+    }
+
+    private long ttl(UUID characteristicUUID) {
+        Long ttl = ttls.get(characteristicUUID);
+        return ttl == null ? defaultTtl : ttl;
+    }
+
+    private static class Entry {
+        final CommandResult result;
+        final long cachedAt;
+
+        Entry(CommandResult result, long cachedAt) {
+            this.result = result;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
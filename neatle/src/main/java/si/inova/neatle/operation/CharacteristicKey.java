@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import java.util.UUID;
+
+/**
+ * Identifies a characteristic of a device. The same characteristic UUID can be found in more than
+ * one service, e.g. in two instances of a standard service, so the service is part of the key.
+ */
+final class CharacteristicKey {
+    final UUID serviceUUID;
+    final UUID characteristicUUID;
+
+    CharacteristicKey(UUID serviceUUID, UUID characteristicUUID) {
+        this.serviceUUID = serviceUUID;
+        this.characteristicUUID = characteristicUUID;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CharacteristicKey)) {
+            return false;
+        }
+        CharacteristicKey other = (CharacteristicKey) o;
+        return serviceUUID.equals(other.serviceUUID) && characteristicUUID.equals(other.characteristicUUID);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * serviceUUID.hashCode() + characteristicUUID.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return serviceUUID + "/" + characteristicUUID;
+    }
+}
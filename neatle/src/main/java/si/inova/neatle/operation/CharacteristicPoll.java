@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+
+import java.util.UUID;
+
+import si.inova.neatle.Neatle;
+
+/**
+ * Periodically reads a characteristic, for devices that don't support notifications.
+ * <p>
+ * Reads are scheduled on a fixed-rate grid of the monotonic clock, so the period doesn't drift with
+ * the time a read takes. If a read is still running when the next one is due, or if the poll falls
+ * behind by more than a period, the missed reads are skipped and merged into the next one.
+ *
+ * @see Neatle#createPoll(Context, BluetoothDevice, UUID, UUID, long)
+ */
+public interface CharacteristicPoll {
+
+    /**
+     * Sets the listener that will be called with each read value. The timestamp of the result
+     * is the time the value was read.
+     *
+     * @param characteristicsChangedListener the listener
+     */
+    void setOnCharacteristicsChangedListener(CharacteristicsChangedListener characteristicsChangedListener);
+
+    /**
+     * Starts polling, with the first read right away. It's safe to call start multiple times.
+     */
+    void start();
+
+    /**
+     * Stops polling, and cancels a read that is in progress.
+     */
+    void stop();
+
+    /**
+     * Check if this poll is started.
+     *
+     * @return true if started, false otherwise
+     */
+    boolean isStarted();
+
+    /**
+     * Returns the time between reads.
+     *
+     * @return the period in milliseconds
+     */
+    long getPeriod();
+
+    /**
+     * Returns the number of reads skipped since the poll was started, because a previous read
+     * was still running or the poll fell behind.
+     *
+     * @return the number of skipped reads
+     */
+    long getSkippedCount();
+}
@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import androidx.annotation.RestrictTo;
+
+import java.util.UUID;
+
+import si.inova.neatle.util.NeatleLogger;
+
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public class CharacteristicPollImpl implements CharacteristicPoll {
+
+    private final UUID characteristicUUID;
+    private final long period;
+
+    private final Operation readOp;
+    private final Handler handler = new Handler();
+
+    private CharacteristicsChangedListener listener;
+
+    private boolean started = false;
+    private boolean reading = false;
+    private long nextTick;
+    private long skippedCount;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            onTick();
+        }
+    };
+
+    private final OperationObserver readObserver = new SimpleOperationObserver() {
+        @Override
+        public void onOperationFinished(Operation op, OperationResults results) {
+            reading = false;
+            CommandResult result = results.getResult(characteristicUUID);
+            if (started && result != null && result.wasSuccessful() && listener != null) {
+                listener.onCharacteristicChanged(result);
+            }
+        }
+    };
+
+    public CharacteristicPollImpl(Context context, BluetoothDevice device, UUID serviceUUID, UUID characteristicUUID, long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        this.characteristicUUID = characteristicUUID;
+        this.period = period;
+
+        readOp = new OperationBuilder(context.getApplicationContext())
+                .read(serviceUUID, characteristicUUID)
+                .onFinished(readObserver)
+                .build(device);
+    }
+
+    @Override
+    public void setOnCharacteristicsChangedListener(CharacteristicsChangedListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void start() {
+        if (started) {
+            return;
+        }
+
+        started = true;
+        skippedCount = 0;
+        nextTick = SystemClock.uptimeMillis();
+        onTick();
+    }
+
+    @Override
+    public void stop() {
+        if (!started) {
+            return;
+        }
+
+        started = false;
+        handler.removeCallbacks(tick);
+        readOp.cancel();
+        reading = false;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return started;
+    }
+
+    @Override
+    public long getPeriod() {
+        return period;
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    private void onTick() {
+        if (!started) {
+            return;
+        }
+
+        if (reading) {
+            NeatleLogger.d("Previous read of " + characteristicUUID + " still running, skipping a poll");
+            skippedCount++;
+        } else {
+            reading = true;
+            readOp.execute();
+        }
+
+        // schedule on the grid and not relative to now, so that the latency of a tick doesn't add up
+        long now = SystemClock.uptimeMillis();
+        nextTick += period;
+        if (nextTick <= now) {
+            long missed = (now - nextTick) / period + 1;
+            NeatleLogger.d("Poll of " + characteristicUUID + " fell behind, skipping " + missed + " reads");
+            skippedCount += missed;
+            nextTick += missed * period;
+        }
+        handler.postAtTime(tick, nextTick);
+    }
+}
@@ -26,7 +26,10 @@ package si.inova.neatle.operation;
 
 import android.bluetooth.BluetoothDevice;
 import android.content.Context;
+import androidx.annotation.IntDef;
 
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 import java.util.UUID;
 
 import si.inova.neatle.Neatle;
@@ -38,6 +41,13 @@ import si.inova.neatle.Neatle;
  */
 public interface CharacteristicSubscription {
 
+    /**
+     * Batch interval that delivers batches once per display frame.
+     *
+     * @see #setOnNotificationBatchListener(NotificationBatchListener, long, int)
+     */
+    long EVERY_FRAME = 0;
+
     /**
      * Sets the listener that will be called on characteristic changes.
      *
@@ -45,6 +55,68 @@ public interface CharacteristicSubscription {
      */
     void setOnCharacteristicsChangedListener(CharacteristicsChangedListener characteristicsChangedListener);
 
+    /**
+     * Sets the listener that gets characteristic changes in batches, at most once per interval,
+     * instead of one call per change. Each value in a batch keeps its own timestamp. Batches
+     * are delivered on the thread this method is called on, which must have a looper.
+     * <p>
+     * Must be called before the subscription is started.
+     *
+     * @param listener       the listener, or null to stop batching
+     * @param intervalMillis how often to deliver batches, or {@link #EVERY_FRAME}
+     * @param capacity       how many values to preallocate each batch for; batches grow when
+     *                       more values arrive in one interval
+     */
+    void setOnNotificationBatchListener(NotificationBatchListener listener, long intervalMillis, int capacity);
+
+    /**
+     * Bounds the number of changes that may wait for the listener. Without a buffer, every change
+     * is queued on the main looper, so a slow listener lets the queue grow without limit. With a
+     * buffer, changes are kept in preallocated memory and at most one delivery is pending at a
+     * time; once the buffer is full, the overflow policy decides which change is dropped.
+     * <p>
+     * The buffer is used by the batch listener if one is set, otherwise by the change listener.
+     * Must be called before the subscription is started.
+     *
+     * @param capacity     the number of changes the buffer holds
+     * @param maxValueSize the largest value in bytes; larger values are dropped
+     * @param policy       what to do when the buffer is full
+     */
+    void setBuffer(int capacity, int maxValueSize, @OverflowPolicy int policy);
+
+    /**
+     * Returns the number of changes waiting in the buffer.
+     *
+     * @return the number of changes, 0 when there is no buffer
+     * @see #setBuffer(int, int, int)
+     */
+    int getBufferedCount();
+
+    /**
+     * Returns the most changes that were waiting in the buffer at once. Useful for sizing the
+     * buffer.
+     *
+     * @return the number of changes, 0 when there is no buffer
+     */
+    int getPeakBufferedCount();
+
+    /**
+     * Returns the number of changes dropped or conflated because the buffer was full, or
+     * because they were larger than the maximum value size.
+     *
+     * @return the number of dropped changes, 0 when there is no buffer
+     */
+    long getDroppedCount();
+
+    /**
+     * Returns the statistics of the time between changes since the subscription was started.
+     * Timestamps are taken when the change is received from the Bluetooth stack, so delays in
+     * delivering changes to listeners don't affect them.
+     *
+     * @return a snapshot of the statistics
+     */
+    ArrivalStatistics getArrivalStatistics();
+
     /**
      * Starts listening for characteristics changes. If there is no active connection and
      * the subscription is persistent than this is keep trying to connect to the device until
@@ -67,4 +139,27 @@ public interface CharacteristicSubscription {
      * @return true if started, false otherwise
      */
     boolean isStarted();
+
+    /**
+     * What happens to a change that arrives while the buffer is full.
+     *
+     * @see #setBuffer(int, int, int)
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({OverflowPolicy.DROP_OLDEST, OverflowPolicy.DROP_NEWEST, OverflowPolicy.CONFLATE})
+    @interface OverflowPolicy {
+        /**
+         * The oldest waiting change is dropped to make room.
+         */
+        int DROP_OLDEST = 0;
+        /**
+         * The new change is dropped.
+         */
+        int DROP_NEWEST = 1;
+        /**
+         * The new change replaces the newest waiting change, so the latest value always gets
+         * through.
+         */
+        int CONFLATE = 2;
+    }
 }
@@ -24,7 +24,6 @@
 
 package si.inova.neatle.operation;
 
-import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.content.Context;
 import androidx.annotation.RestrictTo;
@@ -32,29 +31,31 @@ import androidx.annotation.RestrictTo;
 import java.util.UUID;
 
 import si.inova.neatle.Neatle;
-import si.inova.neatle.ServicesDiscoveredListener;
 import si.inova.neatle.monitor.Connection;
-import si.inova.neatle.monitor.ConnectionStateListener;
+import si.inova.neatle.util.DeviceManager;
 
 @RestrictTo(RestrictTo.Scope.LIBRARY)
 public class CharacteristicSubscriptionImpl implements CharacteristicSubscription {
 
     private final BluetoothDevice device;
+    private final UUID serviceUUID;
     private final UUID characteristicsUUID;
 
-    private final Operation subscribeOp;
-    private final Operation unsubscribeOp;
-
     private CharacteristicsChangedListener listener;
+    private NotificationBatcher batcher;
+    private NotificationRing ring;
+    private NotificationBatcher bufferedChangeBatcher;
     private Context context;
 
     private boolean started = false;
 
-    private ConnectionStateListener connectionStateHandler = new ConnectionStateListener() {
+    private final ArrivalStatistics statistics = new ArrivalStatistics();
+
+    private RawCharacteristicListener statisticsRecorder = new RawCharacteristicListener() {
         @Override
-        public void onConnectionStateChanged(Connection connection, int newState) {
-            if (newState == BluetoothAdapter.STATE_CONNECTED) {
-                subscribeOnDevice();
+        public void onCharacteristicChanged(UUID characteristicUUID, byte[] value, long timestampNanos) {
+            synchronized (statistics) {
+                statistics.record(timestampNanos);
             }
         }
     };
@@ -68,20 +69,21 @@ public class CharacteristicSubscriptionImpl implements CharacteristicSubscriptio
         }
     };
 
-    private ServicesDiscoveredListener ServicesDiscoveredListener = new ServicesDiscoveredListener() {
+    private NotificationBatchListener bufferedChangeHandler = new NotificationBatchListener() {
         @Override
-        public void onServicesDiscovered(Connection connection) {
-            subscribeOnDevice();
+        public void onNotificationBatch(NotificationBatch batch) {
+            for (int i = 0; i < batch.size() && listener != null; i++) {
+                listener.onCharacteristicChanged(CommandResult.createCharacteristicChanged(batch.getUUID(),
+                        batch.getValue(i), batch.getTimestampNanos(i)));
+            }
         }
     };
 
     public CharacteristicSubscriptionImpl(Context context, BluetoothDevice device, UUID serviceUUID, UUID characteristicsUUID) {
         this.context = context.getApplicationContext();
         this.device = device;
+        this.serviceUUID = serviceUUID;
         this.characteristicsUUID = characteristicsUUID;
-
-        subscribeOp = new OperationBuilder(this.context).subscribeNotification(serviceUUID, characteristicsUUID, null).build(device);
-        unsubscribeOp = new OperationBuilder(this.context).unsubscribeNotification(serviceUUID, characteristicsUUID, null).build(device);
     }
 
     @Override
@@ -89,24 +91,75 @@ public class CharacteristicSubscriptionImpl implements CharacteristicSubscriptio
         this.listener = listener;
     }
 
+    @Override
+    public void setOnNotificationBatchListener(NotificationBatchListener listener, long intervalMillis, int capacity) {
+        if (started) {
+            throw new IllegalStateException("Subscription is already started");
+        }
+        this.batcher = listener == null ? null : new NotificationBatcher(characteristicsUUID, listener, intervalMillis, capacity);
+    }
+
+    @Override
+    public void setBuffer(int capacity, int maxValueSize, @OverflowPolicy int policy) {
+        if (started) {
+            throw new IllegalStateException("Subscription is already started");
+        }
+        this.ring = new NotificationRing(capacity, maxValueSize, policy);
+        this.bufferedChangeBatcher = new NotificationBatcher(characteristicsUUID, bufferedChangeHandler,
+                NotificationBatcher.IMMEDIATE, capacity);
+    }
+
+    @Override
+    public int getBufferedCount() {
+        return ring == null ? 0 : ring.size();
+    }
+
+    @Override
+    public int getPeakBufferedCount() {
+        return ring == null ? 0 : ring.peakSize();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return ring == null ? 0 : ring.droppedCount();
+    }
+
+    @Override
+    public ArrivalStatistics getArrivalStatistics() {
+        synchronized (statistics) {
+            return new ArrivalStatistics(statistics);
+        }
+    }
+
     @Override
     public void start() {
         if (started) {
             return;
         }
+        synchronized (statistics) {
+            statistics.reset();
+        }
 
-        unsubscribeOp.cancel();
         Connection connection = Neatle.getConnection(context, device);
 
-        connection.addConnectionStateListener(connectionStateHandler);
-        connection.addCharacteristicsChangedListener(characteristicsUUID, changeHandler);
-        connection.addServicesDiscoveredListener(ServicesDiscoveredListener);
-
-        if (connection.isConnected()) {
-            subscribeOnDevice();
-        } else {
-            connection.connect();
+        if (batcher != null) {
+            // batches are filled on the Bluetooth thread, without posting each change
+            batcher.setRing(ring);
+            batcher.start();
+            connection.addRawCharacteristicListener(characteristicsUUID, batcher);
+        } else if (ring != null) {
+            bufferedChangeBatcher.setRing(ring);
+            bufferedChangeBatcher.start();
+            connection.addRawCharacteristicListener(characteristicsUUID, bufferedChangeBatcher);
         }
+        if ((batcher == null && ring == null) || (batcher != null && listener != null)) {
+            connection.addCharacteristicsChangedListener(characteristicsUUID, changeHandler);
+        }
+        connection.addRawCharacteristicListener(characteristicsUUID, statisticsRecorder);
+
+        // the manager writes the descriptor only for the first subscriber of the characteristic
+        DeviceManager.getInstance(context).getSubscriptionManager(device)
+                .acquire(serviceUUID, characteristicsUUID, false);
 
         started = true;
     }
@@ -117,15 +170,19 @@ public class CharacteristicSubscriptionImpl implements CharacteristicSubscriptio
             return;
         }
 
-        subscribeOp.cancel();
         Connection connection = Neatle.getConnection(context, device);
-        connection.removeConnectionStateListener(connectionStateHandler);
         connection.removeCharacteristicsChangedListener(characteristicsUUID, changeHandler);
-        connection.removeServicesDiscoveredListener(ServicesDiscoveredListener);
-
-        if (connection.isConnected()) {
-            unsubscribeOnDevice();
+        connection.removeRawCharacteristicListener(characteristicsUUID, statisticsRecorder);
+        if (batcher != null) {
+            connection.removeRawCharacteristicListener(characteristicsUUID, batcher);
+            batcher.stop();
         }
+        if (bufferedChangeBatcher != null) {
+            connection.removeRawCharacteristicListener(characteristicsUUID, bufferedChangeBatcher);
+            bufferedChangeBatcher.stop();
+        }
+
+        DeviceManager.getInstance(context).getSubscriptionManager(device).release(serviceUUID, characteristicsUUID);
 
         started = false;
     }
@@ -134,14 +191,4 @@ public class CharacteristicSubscriptionImpl implements CharacteristicSubscriptio
     public boolean isStarted() {
         return started;
     }
-
-    private void subscribeOnDevice() {
-        unsubscribeOp.cancel();
-        subscribeOp.execute();
-    }
-
-    private void unsubscribeOnDevice() {
-        subscribeOp.cancel();
-        unsubscribeOp.execute();
-    }
 }
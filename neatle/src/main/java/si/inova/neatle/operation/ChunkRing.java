@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+/**
+ * A fixed size, single-producer/single-consumer queue of chunks. One thread may only put and the
+ * other may only take; neither of them ever blocks. Full and empty states have to be checked
+ * before putting or taking.
+ */
+final class ChunkRing {
+
+    private final byte[][] slots;
+    private final int mask;
+
+    // next slot to take, only written by the consumer
+    private volatile int head;
+    // next slot to put, only written by the producer
+    private volatile int tail;
+
+    /**
+     * @param capacity the number of slots, must be a power of two
+     */
+    ChunkRing(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.slots = new byte[capacity][];
+        this.mask = capacity - 1;
+    }
+
+    boolean isEmpty() {
+        return head == tail;
+    }
+
+    boolean isFull() {
+        return tail - head == slots.length;
+    }
+
+    int size() {
+        return tail - head;
+    }
+
+    /**
+     * Adds a chunk. Must only be called by the producer, and only when the ring is not full.
+     */
+    void put(byte[] chunk) {
+        int t = tail;
+        slots[t & mask] = chunk;
+        // the volatile write publishes the slot to the consumer
+        tail = t + 1;
+    }
+
+    /**
+     * Removes the oldest chunk. Must only be called by the consumer, and only when the ring is
+     * not empty.
+     */
+    byte[] take() {
+        int h = head;
+        byte[] chunk = slots[h & mask];
+        slots[h & mask] = null;
+        head = h + 1;
+        return chunk;
+    }
+}
@@ -44,11 +44,28 @@ public abstract class Command {
     public static final int SERVICE_NOT_FOUND = BluetoothGatt.GATT_FAILURE + 10;
     public static final int CHARACTERISTIC_NOT_FOUND = SERVICE_NOT_FOUND + 1;
     public static final int DESCRIPTOR_NOT_FOUND = CHARACTERISTIC_NOT_FOUND + 1;
+    public static final int RELIABLE_WRITE_MISMATCH = DESCRIPTOR_NOT_FOUND + 1;
+    /**
+     * The command didn't finish in time, most likely because the Bluetooth stack never called
+     * back.
+     *
+     * @see OperationBuilder#commandTimeout(long)
+     * @see OperationBuilder#timeout(long)
+     */
+    public static final int TIMEOUT = RELIABLE_WRITE_MISMATCH + 1;
+    /**
+     * The operation waited in the queue for longer than allowed, and was dropped before it
+     * started.
+     *
+     * @see OperationBuilder#maxQueueAge(long)
+     */
+    public static final int EXPIRED = TIMEOUT + 1;
 
     private final Object lock = new Object();
 
     private final CommandObserver observer;
     private CommandObserver operationCommandObserver;
+    private boolean finished;
 
     protected Command(CommandObserver observer) {
         this.observer = observer;
@@ -58,10 +75,21 @@ public abstract class Command {
     protected final void execute(Connection connection, CommandObserver operationCommandObserver, BluetoothGatt gatt) {
         synchronized (lock) {
             this.operationCommandObserver = operationCommandObserver;
+            this.finished = false;
         }
         start(connection, gatt);
     }
 
+    /**
+     * Creates a new command with the same configuration as this one, but none of its execution
+     * state, so that an {@link OperationPlan} can run it on several devices at the same time.
+     *
+     * @return the new command, or null if this command can't be duplicated
+     */
+    protected Command duplicate() {
+        return null;
+    }
+
     /**
      * Called when the command should start executing. When a command
      * is done with processing, it must call finish to release
@@ -76,10 +104,20 @@ public abstract class Command {
      */
     abstract protected void start(Connection connection, BluetoothGatt gatt);
 
+    /**
+     * Finishes the command with the result. Only the first call has an effect, so a callback that
+     * arrives after the command timed out is ignored.
+     *
+     * @param result the result of the command
+     */
     @CallSuper
     protected final void finish(CommandResult result) {
         CommandObserver oco;
         synchronized (lock) {
+            if (finished) {
+                return;
+            }
+            finished = true;
             oco = operationCommandObserver;
         }
 
@@ -102,6 +140,16 @@ public abstract class Command {
 
     protected abstract void onError(int error);
 
+    final void timeout() {
+        onError(TIMEOUT);
+        // in case onError didn't finish the command
+        finish(CommandResult.createErrorResult(null, TIMEOUT));
+    }
+
+    CommandObserver getObserver() {
+        return observer;
+    }
+
     protected void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
         if (status != BluetoothGatt.GATT_SUCCESS || newState != BluetoothGatt.STATE_CONNECTED) {
             onError(BluetoothGatt.GATT_FAILURE);
@@ -163,4 +211,18 @@ public abstract class Command {
     protected void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
         //do nothing by default
     }
+
+    /**
+     * @see android.bluetooth.BluetoothGattCallback#onPhyUpdate(BluetoothGatt, int, int, int)
+     */
+    protected void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+        //do nothing by default
+    }
+
+    /**
+     * @see android.bluetooth.BluetoothGattCallback#onPhyRead(BluetoothGatt, int, int, int)
+     */
+    protected void onPhyRead(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+        //do nothing by default
+    }
 }
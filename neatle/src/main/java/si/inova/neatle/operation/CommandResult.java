@@ -26,11 +26,16 @@ package si.inova.neatle.operation;
 
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.SystemClock;
 import androidx.annotation.RestrictTo;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.UUID;
 
+import si.inova.neatle.util.Ieee11073;
+
 /**
  * A result of a single command.
  */
@@ -51,6 +56,21 @@ public class CommandResult {
      */
     public static final int FORMAT_UINT32 = 0x14;
 
+    /**
+     * Characteristic value format type uint24
+     */
+    public static final int FORMAT_UINT24 = 0x13;
+
+    /**
+     * Characteristic value format type uint48
+     */
+    public static final int FORMAT_UINT48 = 0x16;
+
+    /**
+     * Characteristic value format type uint64
+     */
+    public static final int FORMAT_UINT64 = 0x18;
+
     /**
      * Characteristic value format type sint8
      */
@@ -61,21 +81,73 @@ public class CommandResult {
      */
     public static final int FORMAT_SINT16 = 0x22;
 
+    /**
+     * Characteristic value format type sint24
+     */
+    public static final int FORMAT_SINT24 = 0x23;
+
     /**
      * Characteristic value format type sint32
      */
     public static final int FORMAT_SINT32 = 0x24;
 
+    /**
+     * Characteristic value format type sint48
+     */
+    public static final int FORMAT_SINT48 = 0x26;
+
+    /**
+     * Characteristic value format type sint64
+     */
+    public static final int FORMAT_SINT64 = 0x28;
+
+    /**
+     * Characteristic value format type sfloat (16-bit IEEE-11073 float)
+     */
+    public static final int FORMAT_SFLOAT = 0x32;
+
+    /**
+     * Characteristic value format type float (32-bit IEEE-11073 float)
+     */
+    public static final int FORMAT_FLOAT = 0x34;
+
+    /**
+     * Format type float32 (32-bit IEEE-754 float, little endian).
+     *
+     * <p>This is a NeatLE-specific value, not one of the characteristic format types defined by
+     * the Bluetooth SIG or {@link android.bluetooth.BluetoothGattCharacteristic}. It is only
+     * understood by NeatLE's own accessors and codecs.
+     */
+    public static final int FORMAT_FLOAT32 = 0x44;
+
+    /**
+     * Format type float64 (64-bit IEEE-754 float, little endian).
+     *
+     * <p>This is a NeatLE-specific value, not one of the characteristic format types defined by
+     * the Bluetooth SIG or {@link android.bluetooth.BluetoothGattCharacteristic}. It is only
+     * understood by NeatLE's own accessors and codecs.
+     */
+    public static final int FORMAT_FLOAT64 = 0x48;
+
+    private static final int KIND_UNSIGNED = 0x10;
+    private static final int KIND_SIGNED = 0x20;
+
     private final UUID uuid;
     private final byte[] data;
     private final int status;
     private final long timestamp;
+    private final long timestampNanos;
 
     CommandResult(UUID uuid, byte[] data, int status, long timestamp) {
+        this(uuid, data, status, timestamp, SystemClock.elapsedRealtimeNanos());
+    }
+
+    CommandResult(UUID uuid, byte[] data, int status, long timestamp, long timestampNanos) {
         this.uuid = uuid;
         this.data = data;
         this.status = status;
         this.timestamp = timestamp;
+        this.timestampNanos = timestampNanos;
     }
 
     /**
@@ -146,29 +218,220 @@ public class CommandResult {
      * value size.
      */
     public Integer getFormattedIntValue(int formatType, int offset) {
-        if ((offset + formatType & 0xF) > data.length) return null;
+        if ((offset + (formatType & 0xF)) > data.length) return null;
 
         switch (formatType) {
             case FORMAT_UINT8:
-                return unsignedByteToInt(data[offset]);
             case FORMAT_UINT16:
-                return unsignedBytesToInt(data[offset], data[offset + 1]);
             case FORMAT_UINT32:
-                return unsignedBytesToInt(data[offset], data[offset + 1],
-                        data[offset + 2], data[offset + 3]);
             case FORMAT_SINT8:
-                return unsignedToSigned(unsignedByteToInt(data[offset]), 8);
             case FORMAT_SINT16:
-                return unsignedToSigned(unsignedBytesToInt(data[offset],
-                        data[offset + 1]), 16);
             case FORMAT_SINT32:
-                return unsignedToSigned(unsignedBytesToInt(data[offset],
-                        data[offset + 1], data[offset + 2], data[offset + 3]), 32);
+                return getIntValue(formatType, offset);
         }
 
         return null;
     }
 
+    /**
+     * Returns the integer value at the given offset, without boxing it.
+     *
+     * <p>Supports the 8, 16, 24 and 32-bit integer formats (e.g. {@link #FORMAT_UINT24}). A
+     * {@link #FORMAT_UINT32} value above {@link Integer#MAX_VALUE} wraps around, use
+     * {@link #getLongValue(int, int)} to get it unsigned.
+     *
+     * @param formatType the format type used to interpret the value
+     * @param offset     offset at which the value can be found
+     * @return the value
+     * @throws IllegalArgumentException  if the format is not an integer format of up to 32 bits
+     * @throws IndexOutOfBoundsException if the value does not fit into the data
+     */
+    public int getIntValue(int formatType, int offset) {
+        if ((formatType & 0xF) > 4) {
+            throw new IllegalArgumentException("Format " + formatType + " does not fit into an int");
+        }
+        return (int) getLongValue(formatType, offset);
+    }
+
+    /**
+     * Returns the integer value at the given offset, without boxing it.
+     *
+     * <p>Supports all integer formats. A {@link #FORMAT_UINT64} value above {@link Long#MAX_VALUE}
+     * wraps around.
+     *
+     * @param formatType the format type used to interpret the value
+     * @param offset     offset at which the value can be found
+     * @return the value
+     * @throws IllegalArgumentException  if the format is not an integer format
+     * @throws IndexOutOfBoundsException if the value does not fit into the data
+     */
+    public long getLongValue(int formatType, int offset) {
+        int kind = formatType & 0xF0;
+        if (kind != KIND_UNSIGNED && kind != KIND_SIGNED) {
+            throw new IllegalArgumentException("Format " + formatType + " is not an integer format");
+        }
+        int size = formatType & 0xF;
+        checkRange(size, offset, 1);
+
+        long value = littleEndianToLong(offset, size);
+        if (kind == KIND_SIGNED) {
+            int shift = 64 - size * 8;
+            value = (value << shift) >> shift;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the floating point value at the given offset, without boxing it.
+     *
+     * <p>Supports {@link #FORMAT_SFLOAT}, {@link #FORMAT_FLOAT}, {@link #FORMAT_FLOAT32} and
+     * {@link #FORMAT_FLOAT64}. The IEEE-11073 special values NaN, NRes and reserved are returned as
+     * {@link Float#NaN}, +/-INFINITY as {@link Float#POSITIVE_INFINITY} and
+     * {@link Float#NEGATIVE_INFINITY}.
+     *
+     * @param formatType the format type used to interpret the value
+     * @param offset     offset at which the value can be found
+     * @return the value
+     * @throws IllegalArgumentException  if the format is not a floating point format
+     * @throws IndexOutOfBoundsException if the value does not fit into the data
+     */
+    public float getFloatValue(int formatType, int offset) {
+        if (formatType == FORMAT_FLOAT32) {
+            checkRange(4, offset, 1);
+            return Float.intBitsToFloat((int) littleEndianToLong(offset, 4));
+        }
+        return (float) getDoubleValue(formatType, offset);
+    }
+
+    /**
+     * Returns the floating point value at the given offset, without boxing it.
+     *
+     * <p>Supports the same formats as {@link #getFloatValue(int, int)}.
+     *
+     * @param formatType the format type used to interpret the value
+     * @param offset     offset at which the value can be found
+     * @return the value
+     * @throws IllegalArgumentException  if the format is not a floating point format
+     * @throws IndexOutOfBoundsException if the value does not fit into the data
+     */
+    public double getDoubleValue(int formatType, int offset) {
+        switch (formatType) {
+            case FORMAT_SFLOAT:
+                checkRange(2, offset, 1);
+                return Ieee11073.sfloatToDouble((int) littleEndianToLong(offset, 2));
+            case FORMAT_FLOAT:
+                checkRange(4, offset, 1);
+                return Ieee11073.floatToDouble((int) littleEndianToLong(offset, 4));
+            case FORMAT_FLOAT32:
+                checkRange(4, offset, 1);
+                return Float.intBitsToFloat((int) littleEndianToLong(offset, 4));
+            case FORMAT_FLOAT64:
+                checkRange(8, offset, 1);
+                return Double.longBitsToDouble(littleEndianToLong(offset, 8));
+            default:
+                throw new IllegalArgumentException("Format " + formatType + " is not a floating point format");
+        }
+    }
+
+    /**
+     * Decodes {@code count} consecutive values of the given integer format into {@code dst}.
+     *
+     * @param formatType the format type used to interpret the values, see {@link #getIntValue(int, int)}
+     * @param offset     offset at which the first value can be found
+     * @param dst        the array to decode into
+     * @param dstOffset  index in {@code dst} of the first decoded value
+     * @param count      the number of values to decode
+     * @throws IllegalArgumentException  if the format is not an integer format of up to 32 bits
+     * @throws IndexOutOfBoundsException if the values do not fit into the data or into {@code dst}
+     */
+    public void getIntValues(int formatType, int offset, int[] dst, int dstOffset, int count) {
+        int size = formatType & 0xF;
+        checkRange(size, offset, count);
+        checkDestination(dst.length, dstOffset, count);
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = getIntValue(formatType, offset + i * size);
+        }
+    }
+
+    /**
+     * Decodes {@code count} consecutive values of the given integer format into {@code dst}.
+     *
+     * @param formatType the format type used to interpret the values, see {@link #getLongValue(int, int)}
+     * @param offset     offset at which the first value can be found
+     * @param dst        the array to decode into
+     * @param dstOffset  index in {@code dst} of the first decoded value
+     * @param count      the number of values to decode
+     * @throws IllegalArgumentException  if the format is not an integer format
+     * @throws IndexOutOfBoundsException if the values do not fit into the data or into {@code dst}
+     */
+    public void getLongValues(int formatType, int offset, long[] dst, int dstOffset, int count) {
+        int size = formatType & 0xF;
+        checkRange(size, offset, count);
+        checkDestination(dst.length, dstOffset, count);
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = getLongValue(formatType, offset + i * size);
+        }
+    }
+
+    /**
+     * Decodes {@code count} consecutive values of the given floating point format into {@code dst}.
+     *
+     * @param formatType the format type used to interpret the values, see {@link #getFloatValue(int, int)}
+     * @param offset     offset at which the first value can be found
+     * @param dst        the array to decode into
+     * @param dstOffset  index in {@code dst} of the first decoded value
+     * @param count      the number of values to decode
+     * @throws IllegalArgumentException  if the format is not a floating point format
+     * @throws IndexOutOfBoundsException if the values do not fit into the data or into {@code dst}
+     */
+    public void getFloatValues(int formatType, int offset, float[] dst, int dstOffset, int count) {
+        int size = formatType & 0xF;
+        checkRange(size, offset, count);
+        checkDestination(dst.length, dstOffset, count);
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = getFloatValue(formatType, offset + i * size);
+        }
+    }
+
+    /**
+     * Decodes {@code count} consecutive values of the given floating point format into {@code dst}.
+     *
+     * @param formatType the format type used to interpret the values, see {@link #getDoubleValue(int, int)}
+     * @param offset     offset at which the first value can be found
+     * @param dst        the array to decode into
+     * @param dstOffset  index in {@code dst} of the first decoded value
+     * @param count      the number of values to decode
+     * @throws IllegalArgumentException  if the format is not a floating point format
+     * @throws IndexOutOfBoundsException if the values do not fit into the data or into {@code dst}
+     */
+    public void getDoubleValues(int formatType, int offset, double[] dst, int dstOffset, int count) {
+        int size = formatType & 0xF;
+        checkRange(size, offset, count);
+        checkDestination(dst.length, dstOffset, count);
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = getDoubleValue(formatType, offset + i * size);
+        }
+    }
+
+    /**
+     * Returns a read-only, little endian view of the raw response.
+     *
+     * <p>A new view is allocated on every call, so each caller has its own position. The view
+     * is backed by the response and does not copy it. This is a convenience for parsing a whole
+     * response; to read single values on a per-notification path, use
+     * {@link #getIntValue(int, int)}, {@link #getLongValue(int, int)},
+     * {@link #getFloatValue(int, int)}, {@link #getDoubleValue(int, int)} or their bulk variants,
+     * which read the response directly and allocate nothing.
+     *
+     * @return the view, or null if there is no response data
+     */
+    public ByteBuffer getValueBuffer() {
+        if (data == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(data).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     /**
      * Returns the UUID of the characteristic this data was read from.
      *
@@ -198,45 +461,48 @@ public class CommandResult {
     }
 
     /**
-     * Checks if this command was successful.
+     * Returns when the result was received, on the {@link SystemClock#elapsedRealtimeNanos()}
+     * clock. Unlike {@link #getTimestamp()}, it never jumps, so it can be used to measure the
+     * time between results.
      *
-     * @return true if the command was succesful, false otherwise
+     * @return the time in nanoseconds since boot
      */
-    public boolean wasSuccessful() {
-        return status == BluetoothGatt.GATT_SUCCESS;
+    public long getTimestampNanos() {
+        return timestampNanos;
     }
 
     /**
-     * Convert signed bytes to a 16-bit unsigned int.
+     * Checks if this command was successful.
+     *
+     * @return true if the command was succesful, false otherwise
      */
-    private int unsignedBytesToInt(byte b0, byte b1) {
-        return (unsignedByteToInt(b0) + (unsignedByteToInt(b1) << 8));
+    public boolean wasSuccessful() {
+        return status == BluetoothGatt.GATT_SUCCESS;
     }
 
-    /**
-     * Convert a signed byte to an unsigned int.
-     */
-    private int unsignedByteToInt(byte b) {
-        return b & 0xFF;
+    private void checkRange(int size, int offset, int count) {
+        if (data == null || offset < 0 || count < 0 || (long) offset + (long) size * count > data.length) {
+            throw new IndexOutOfBoundsException("Cannot read " + count + " values of " + size
+                    + " bytes at " + offset + " from " + (data == null ? 0 : data.length) + " bytes");
+        }
     }
 
-    /**
-     * Convert an unsigned integer value to a two's-complement encoded
-     * signed value.
-     */
-    private int unsignedToSigned(int unsigned, int size) {
-        if ((unsigned & (1 << size - 1)) != 0) {
-            unsigned = -1 * ((1 << size - 1) - (unsigned & ((1 << size - 1) - 1)));
+    private static void checkDestination(int length, int dstOffset, int count) {
+        if (dstOffset < 0 || count < 0 || dstOffset > length - count) {
+            throw new IndexOutOfBoundsException("Cannot write " + count + " values at " + dstOffset
+                    + " into an array of " + length);
         }
-        return unsigned;
     }
 
     /**
-     * Convert signed bytes to a 32-bit unsigned int.
+     * Convert little endian bytes to an unsigned long.
      */
-    private int unsignedBytesToInt(byte b0, byte b1, byte b2, byte b3) {
-        return (unsignedByteToInt(b0) + (unsignedByteToInt(b1) << 8))
-                + (unsignedByteToInt(b2) << 16) + (unsignedByteToInt(b3) << 24);
+    private long littleEndianToLong(int offset, int size) {
+        long value = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
     }
 
     @Override
@@ -264,7 +530,16 @@ public class CommandResult {
 
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     public static CommandResult createCharacteristicChanged(BluetoothGattCharacteristic characteristic) {
-        long when = System.currentTimeMillis();
-        return new CommandResult(characteristic.getUuid(), characteristic.getValue(), BluetoothGatt.GATT_SUCCESS, when);
+        return createCharacteristicChanged(characteristic.getUuid(), characteristic.getValue(), SystemClock.elapsedRealtimeNanos());
+    }
+
+    /**
+     * Creates a change received at the given time. The wall clock timestamp is derived from it,
+     * so both tell the same time even if the result is created later.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static CommandResult createCharacteristicChanged(UUID characteristicUUID, byte[] value, long timestampNanos) {
+        long when = System.currentTimeMillis() - (SystemClock.elapsedRealtimeNanos() - timestampNanos) / 1000000;
+        return new CommandResult(characteristicUUID, value, BluetoothGatt.GATT_SUCCESS, when, timestampNanos);
     }
 }
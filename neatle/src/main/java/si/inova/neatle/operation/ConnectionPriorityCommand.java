@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.RestrictTo;
+
+import si.inova.neatle.monitor.Connection;
+import si.inova.neatle.util.NeatleLogger;
+
+class ConnectionPriorityCommand extends Command implements RestorableCommand {
+
+    /**
+     * How long (in milliseconds) a restore of the priority waits before the next command runs.
+     * There is no callback for the connection parameter update, this leaves it a few connection
+     * intervals.
+     */
+    static final long RESTORE_SETTLE_TIME = 250;
+
+    private final int priority;
+    private final long settleTime;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable settled = new Runnable() {
+        @Override
+        public void run() {
+            finish(CommandResult.createEmptySuccess(null));
+        }
+    };
+
+    ConnectionPriorityCommand(int priority, CommandObserver observer) {
+        this(priority, 0, observer);
+    }
+
+    /**
+     * @param settleTime how long (in milliseconds) to wait after the request before finishing
+     */
+    ConnectionPriorityCommand(int priority, long settleTime, CommandObserver observer) {
+        super(observer);
+        this.priority = priority;
+        this.settleTime = settleTime;
+    }
+
+    @Override
+    protected Command duplicate() {
+        return new ConnectionPriorityCommand(priority, settleTime, getObserver());
+    }
+
+    @Override
+    protected void start(Connection connection, BluetoothGatt gatt) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            NeatleLogger.i("Connection priority is not supported on API " + Build.VERSION.SDK_INT);
+            finish(CommandResult.createErrorResult(null, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED));
+            return;
+        }
+
+        NeatleLogger.d("Requesting connection priority " + priority);
+        // there is no callback for the connection parameter update, the request is all we get
+        if (gatt.requestConnectionPriority(priority)) {
+            if (settleTime > 0) {
+                handler.postDelayed(settled, settleTime);
+            } else {
+                finish(CommandResult.createEmptySuccess(null));
+            }
+        } else {
+            NeatleLogger.e("Failed to request connection priority " + priority);
+            finish(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+        }
+    }
+
+    @Override
+    public Command createRestoreCommand() {
+        // the current priority can't be read, so go back to the one every connection starts with
+        if (priority == BluetoothGatt.CONNECTION_PRIORITY_BALANCED
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return null;
+        }
+        NeatleLogger.d("Restoring balanced connection priority");
+        return new ConnectionPriorityCommand(BluetoothGatt.CONNECTION_PRIORITY_BALANCED, RESTORE_SETTLE_TIME, null);
+    }
+
+    @Override
+    protected void onFinished(CommandResult result) {
+        handler.removeCallbacks(settled);
+    }
+
+    @Override
+    protected void onError(int error) {
+        NeatleLogger.e("Unexpected error while requesting connection priority [" + error + "]");
+        finish(CommandResult.createErrorResult(null, error));
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPriorityCommand[" + priority + "]";
+    }
+}
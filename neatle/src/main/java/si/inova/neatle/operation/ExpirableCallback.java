@@ -0,0 +1,49 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import androidx.annotation.RestrictTo;
+
+/**
+ * Implemented by the callbacks of operations that may only wait in a device's queue for a
+ * limited time. An expired operation is dropped before it sends anything to the device.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public interface ExpirableCallback {
+
+    /**
+     * Returns the time by which the operation must start.
+     *
+     * @return the deadline on the {@link android.os.SystemClock#elapsedRealtime()} clock, or 0
+     * if the operation may wait for as long as needed
+     */
+    long getStartDeadline();
+
+    /**
+     * Called instead of starting the operation, once it's past its deadline. The callback was
+     * already removed from the queue.
+     */
+    void onExpired();
+}
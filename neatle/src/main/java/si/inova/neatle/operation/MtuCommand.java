@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+import androidx.annotation.RestrictTo;
+
+import si.inova.neatle.monitor.Connection;
+import si.inova.neatle.util.NeatleLogger;
+
+class MtuCommand extends Command {
+
+    static final int MAX_MTU = 517;
+
+    private final int mtu;
+
+    MtuCommand(int mtu, CommandObserver observer) {
+        super(observer);
+        this.mtu = mtu;
+    }
+
+    @Override
+    protected Command duplicate() {
+        return new MtuCommand(mtu, getObserver());
+    }
+
+    @Override
+    protected void start(Connection connection, BluetoothGatt gatt) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            NeatleLogger.i("MTU negotiation is not supported on API " + Build.VERSION.SDK_INT);
+            finish(CommandResult.createErrorResult(null, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED));
+            return;
+        }
+
+        int current = connection.getMtu();
+        if (current >= mtu) {
+            NeatleLogger.d("MTU already at " + current + ", no need to request " + mtu);
+            finish(CommandResult.createEmptySuccess(null));
+            return;
+        }
+
+        NeatleLogger.d("Requesting MTU " + mtu);
+        if (!gatt.requestMtu(mtu)) {
+            NeatleLogger.e("Failed to request MTU " + mtu);
+            finish(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+        }
+    }
+
+    @Override
+    protected void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            NeatleLogger.i("MTU request failed with status " + status);
+            finish(CommandResult.createErrorResult(null, status));
+        } else {
+            NeatleLogger.d("MTU changed to " + mtu);
+            finish(CommandResult.createEmptySuccess(null));
+        }
+    }
+
+    @Override
+    protected void onError(int error) {
+        NeatleLogger.e("Unexpected error while requesting MTU [" + error + "]");
+        finish(CommandResult.createErrorResult(null, error));
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    int getMtu() {
+        return mtu;
+    }
+
+    @Override
+    public String toString() {
+        return "MtuCommand[" + mtu + "]";
+    }
+}
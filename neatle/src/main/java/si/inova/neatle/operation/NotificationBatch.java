@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A batch of notifications/indications of a single characteristic. Values are stored back to
+ * back in one array, each with its own timestamp.
+ * <p>
+ * Batches are reused, so a batch is only valid during
+ * {@link NotificationBatchListener#onNotificationBatch(NotificationBatch)}.
+ */
+public final class NotificationBatch {
+
+    private final UUID uuid;
+
+    private byte[] data;
+    private int[] offsets;
+    private int[] lengths;
+    private long[] timestamps;
+    private int size;
+    private int dataSize;
+
+    NotificationBatch(UUID uuid, int capacity, int valueSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.uuid = uuid;
+        this.data = new byte[capacity * Math.max(valueSize, 1)];
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * Returns the UUID of the characteristic.
+     *
+     * @return the UUID
+     */
+    public UUID getUUID() {
+        return uuid;
+    }
+
+    /**
+     * Returns the number of values in this batch.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns when the value was received, on the
+     * {@link android.os.SystemClock#elapsedRealtimeNanos()} clock.
+     *
+     * @param index the index of the value, from 0 (the oldest) to {@code size() - 1}
+     * @return the time in nanoseconds since boot
+     */
+    public long getTimestampNanos(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    /**
+     * Returns the length of the value.
+     *
+     * @param index the index of the value
+     * @return the length in bytes
+     */
+    public int getLength(int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    /**
+     * Returns the offset of the value in {@link #getData()}.
+     *
+     * @param index the index of the value
+     * @return the offset in bytes
+     */
+    public int getOffset(int index) {
+        checkIndex(index);
+        return offsets[index];
+    }
+
+    /**
+     * Returns the array holding all values of this batch. Use {@link #getOffset(int)} and
+     * {@link #getLength(int)} to find a value in it. The array is reused, don't keep it.
+     *
+     * @return the backing array
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Copies the value into the given array.
+     *
+     * @param index     the index of the value
+     * @param dst       the destination array
+     * @param dstOffset the offset in the destination array
+     * @return the number of bytes copied
+     */
+    public int getValue(int index, byte[] dst, int dstOffset) {
+        checkIndex(index);
+        int length = lengths[index];
+        System.arraycopy(data, offsets[index], dst, dstOffset, length);
+        return length;
+    }
+
+    /**
+     * Returns a copy of the value.
+     *
+     * @param index the index of the value
+     * @return the value
+     */
+    public byte[] getValue(int index) {
+        checkIndex(index);
+        return Arrays.copyOfRange(data, offsets[index], offsets[index] + lengths[index]);
+    }
+
+    void add(byte[] value, long timestamp) {
+        add(value, 0, value == null ? 0 : value.length, timestamp);
+    }
+
+    void add(byte[] value, int offset, int length, long timestamp) {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+        if (dataSize + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + length));
+        }
+        if (length > 0) {
+            System.arraycopy(value, offset, data, dataSize, length);
+        }
+        offsets[size] = dataSize;
+        lengths[size] = length;
+        timestamps[size] = timestamp;
+        dataSize += length;
+        size++;
+    }
+
+    void clear() {
+        size = 0;
+        dataSize = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range, size is " + size);
+        }
+    }
+}
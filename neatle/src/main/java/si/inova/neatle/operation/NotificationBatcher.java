@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.os.Handler;
+import android.view.Choreographer;
+
+import java.util.UUID;
+
+import si.inova.neatle.monitor.Connection;
+
+/**
+ * Collects notifications on the Bluetooth thread and hands them to a
+ * {@link NotificationBatchListener} once per interval, on the thread that created it. Two
+ * batches are swapped, so a batch is never filled while the listener is reading it.
+ * <p>
+ * With a {@link NotificationRing}, notifications are collected in the ring instead, and the
+ * ring's overflow policy bounds how many of them wait for the listener.
+ */
+final class NotificationBatcher implements RawCharacteristicListener {
+
+    /**
+     * Interval that delivers values as soon as the looper gets to them.
+     */
+    static final long IMMEDIATE = -1;
+
+    private final Object lock = new Object();
+    private final Handler handler = new Handler();
+    private final NotificationBatchListener listener;
+    private final long intervalMillis;
+    private final Choreographer choreographer;
+
+    private NotificationBatch filling;
+    private NotificationBatch delivering;
+    private boolean scheduled;
+    private boolean started;
+    private NotificationRing ring;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            flush();
+        }
+    };
+
+    /**
+     * @param intervalMillis the delivery interval, {@link CharacteristicSubscription#EVERY_FRAME}
+     *                       to deliver once per frame or {@link #IMMEDIATE}
+     * @param capacity       the number of values to preallocate each batch for
+     */
+    NotificationBatcher(UUID characteristicUUID, NotificationBatchListener listener, long intervalMillis, int capacity) {
+        if (intervalMillis < 0 && intervalMillis != IMMEDIATE) {
+            throw new IllegalArgumentException("Interval must not be negative");
+        }
+        this.listener = listener;
+        this.intervalMillis = intervalMillis;
+        this.choreographer = intervalMillis == CharacteristicSubscription.EVERY_FRAME ? Choreographer.getInstance() : null;
+        this.filling = new NotificationBatch(characteristicUUID, capacity, Connection.DEFAULT_MTU - 3);
+        this.delivering = new NotificationBatch(characteristicUUID, capacity, Connection.DEFAULT_MTU - 3);
+    }
+
+    @Override
+    public void onCharacteristicChanged(UUID characteristicUUID, byte[] value, long timestamp) {
+        synchronized (lock) {
+            if (!started) {
+                return;
+            }
+            if (ring == null) {
+                filling.add(value, timestamp);
+            } else if (!ring.put(value, timestamp)) {
+                return;
+            }
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        if (choreographer != null) {
+            choreographer.postFrameCallback(frameCallback);
+        } else if (intervalMillis == IMMEDIATE) {
+            handler.post(flushRunnable);
+        } else {
+            handler.postDelayed(flushRunnable, intervalMillis);
+        }
+    }
+
+    /**
+     * Collects notifications in the given ring, or in an unbounded batch if null. May only be
+     * called while stopped.
+     */
+    void setRing(NotificationRing ring) {
+        synchronized (lock) {
+            this.ring = ring;
+        }
+    }
+
+    void start() {
+        synchronized (lock) {
+            started = true;
+        }
+    }
+
+    /**
+     * Drops any pending values and stops the scheduled delivery.
+     */
+    void stop() {
+        if (choreographer != null) {
+            choreographer.removeFrameCallback(frameCallback);
+        } else {
+            handler.removeCallbacks(flushRunnable);
+        }
+        synchronized (lock) {
+            started = false;
+            filling.clear();
+            if (ring != null) {
+                ring.clear();
+            }
+            scheduled = false;
+        }
+    }
+
+    private void flush() {
+        NotificationBatch batch;
+        synchronized (lock) {
+            if (ring == null) {
+                batch = filling;
+                filling = delivering;
+                delivering = batch;
+            } else {
+                batch = delivering;
+                ring.drainTo(batch);
+            }
+            scheduled = false;
+        }
+        try {
+            if (batch.size() > 0) {
+                listener.onNotificationBatch(batch);
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+}
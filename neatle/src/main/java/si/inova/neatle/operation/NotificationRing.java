@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+/**
+ * A bounded, preallocated queue of notification values. Values are kept in fixed size slots of
+ * one array, with their lengths and timestamps in primitive arrays, so putting and draining
+ * never allocates.
+ * <p>
+ * Not thread safe, callers have to synchronize changes. The counters may be read from any thread.
+ */
+final class NotificationRing {
+
+    private final byte[] data;
+    private final int[] lengths;
+    private final long[] timestamps;
+    private final int slotSize;
+    @CharacteristicSubscription.OverflowPolicy
+    private final int policy;
+
+    // index of the oldest value
+    private int head;
+    private volatile int size;
+    private volatile int peakSize;
+    private volatile long droppedCount;
+
+    NotificationRing(int capacity, int slotSize, @CharacteristicSubscription.OverflowPolicy int policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (slotSize <= 0) {
+            throw new IllegalArgumentException("Value size must be positive");
+        }
+        if (policy != CharacteristicSubscription.OverflowPolicy.DROP_OLDEST
+                && policy != CharacteristicSubscription.OverflowPolicy.DROP_NEWEST
+                && policy != CharacteristicSubscription.OverflowPolicy.CONFLATE) {
+            throw new IllegalArgumentException("Unknown overflow policy " + policy);
+        }
+        this.data = new byte[capacity * slotSize];
+        this.lengths = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.slotSize = slotSize;
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a value, applying the overflow policy when the ring is full. Values longer than the
+     * slot size are dropped.
+     *
+     * @return true if the value was stored
+     */
+    boolean put(byte[] value, long timestamp) {
+        int length = value == null ? 0 : value.length;
+        if (length > slotSize) {
+            droppedCount++;
+            return false;
+        }
+
+        int capacity = lengths.length;
+        int slot;
+        if (size < capacity) {
+            slot = (head + size) % capacity;
+            size++;
+            peakSize = Math.max(peakSize, size);
+        } else if (policy == CharacteristicSubscription.OverflowPolicy.DROP_OLDEST) {
+            slot = head;
+            head = (head + 1) % capacity;
+            droppedCount++;
+        } else if (policy == CharacteristicSubscription.OverflowPolicy.DROP_NEWEST) {
+            droppedCount++;
+            return false;
+        } else {
+            // conflate: the newest value replaces the last one still waiting
+            slot = (head + size - 1) % capacity;
+            droppedCount++;
+        }
+
+        if (length > 0) {
+            System.arraycopy(value, 0, data, slot * slotSize, length);
+        }
+        lengths[slot] = length;
+        timestamps[slot] = timestamp;
+        return true;
+    }
+
+    /**
+     * Moves all values, oldest first, to the given batch.
+     */
+    void drainTo(NotificationBatch batch) {
+        int capacity = lengths.length;
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % capacity;
+            batch.add(data, slot * slotSize, lengths[slot], timestamps[slot]);
+        }
+        clear();
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return lengths.length;
+    }
+
+    int peakSize() {
+        return peakSize;
+    }
+
+    long droppedCount() {
+        return droppedCount;
+    }
+}
@@ -24,6 +24,11 @@
 
 package si.inova.neatle.operation;
 
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
 /**
  * An operation that combines one or more read and write commands.
  */
@@ -45,4 +50,29 @@ public interface Operation {
      * @return true if canceled, false otherwise
      */
     boolean isCanceled();
+
+    /**
+     * How urgent an operation is. Operations of a device run one at a time; a waiting operation
+     * of a higher priority runs before queued ones of a lower priority, and between the commands
+     * of one of a lower priority that is already running. The interrupted operation continues
+     * where it left off afterwards.
+     *
+     * @see OperationBuilder#priority(int)
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({Priority.INTERACTIVE, Priority.NORMAL, Priority.BULK})
+    @interface Priority {
+        /**
+         * Short operations a user is waiting for, like reading a value to show it.
+         */
+        int INTERACTIVE = 0;
+        /**
+         * The default priority.
+         */
+        int NORMAL = 1;
+        /**
+         * Long running transfers, like a firmware upload, that can wait for everything else.
+         */
+        int BULK = 2;
+    }
 }
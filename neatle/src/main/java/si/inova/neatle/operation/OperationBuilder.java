@@ -25,6 +25,7 @@
 package si.inova.neatle.operation;
 
 import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.content.Context;
 import androidx.annotation.CheckResult;
@@ -35,6 +36,7 @@ import java.util.LinkedList;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 
+import si.inova.neatle.monitor.Connection;
 import si.inova.neatle.source.CalllableInputSource;
 import si.inova.neatle.source.InputSource;
 
@@ -45,6 +47,10 @@ public class OperationBuilder {
     private LinkedList<Command> commands = new LinkedList<>();
     private OperationObserver masterObserver;
     private int retryCount;
+    private int priority = Operation.Priority.NORMAL;
+    private long commandTimeout;
+    private long operationTimeout;
+    private long maxQueueAge;
 
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     public OperationBuilder(Context context) {
@@ -76,6 +82,36 @@ public class OperationBuilder {
         return this;
     }
 
+    /**
+     * Reads all readable characteristics selected by the filter, one after another in a single
+     * command. This is much cheaper than adding a read per characteristic. A characteristic that
+     * can't be read doesn't stop the batch; its result just carries the error status.
+     *
+     * <p>The command finishes with a {@link BatchReadResult}, holding the results of all
+     * characteristics.
+     *
+     * @param filter the filter selecting the characteristics, or null to read all of them
+     * @return this object
+     */
+    public OperationBuilder readBatch(BatchReadFilter filter) {
+        return readBatch(filter, null);
+    }
+
+    /**
+     * Reads all readable characteristics selected by the filter, one after another in a single
+     * command. The observer is notified of each characteristic as soon as it was read.
+     *
+     * @param filter   the filter selecting the characteristics, or null to read all of them
+     * @param observer the observer for this specific command
+     * @return this object
+     * @see #readBatch(BatchReadFilter)
+     */
+    public OperationBuilder readBatch(BatchReadFilter filter, BatchReadObserver observer) {
+        BatchReadCommand cmd = new BatchReadCommand(filter == null ? new BatchReadFilter() : filter, observer);
+        commands.add(cmd);
+        return this;
+    }
+
     /**
      * Writes data to a characteristic of a service.
      *
@@ -146,6 +182,157 @@ public class OperationBuilder {
         return this;
     }
 
+    /**
+     * Requests a larger ATT MTU for the connection. Writes that follow in this or any later
+     * operation on the same connection will send chunks sized to the negotiated MTU, up to the
+     * 512 bytes an attribute can hold, instead of the default 20 bytes. If the connection already
+     * uses an MTU of at least the requested size the command succeeds without contacting the
+     * device.
+     *
+     * <p><b>Note:</b> MTU negotiation is only available on API 21 and higher. On older devices
+     * the command fails with {@link android.bluetooth.BluetoothGatt#GATT_REQUEST_NOT_SUPPORTED}.
+     *
+     * @param mtu the requested MTU, between 23 and 517 bytes
+     * @return this object
+     * @see si.inova.neatle.monitor.Connection#getMtu()
+     */
+    public OperationBuilder requestMtu(int mtu) {
+        return requestMtu(mtu, null);
+    }
+
+    /**
+     * Requests a larger ATT MTU for the connection.
+     *
+     * @param mtu      the requested MTU, between 23 and 517 bytes
+     * @param observer the observer for this specific command
+     * @return this object
+     * @see #requestMtu(int)
+     */
+    public OperationBuilder requestMtu(int mtu, CommandObserver observer) {
+        if (mtu < Connection.DEFAULT_MTU || mtu > MtuCommand.MAX_MTU) {
+            throw new IllegalArgumentException("MTU must be between " + Connection.DEFAULT_MTU + " and " + MtuCommand.MAX_MTU);
+        }
+        MtuCommand cmd = new MtuCommand(mtu, observer);
+        commands.add(cmd);
+        return this;
+    }
+
+    /**
+     * Requests a connection priority for the rest of this operation, for example
+     * {@link BluetoothGatt#CONNECTION_PRIORITY_HIGH} before a bulk transfer. Once the operation
+     * is done, the connection goes back to {@link BluetoothGatt#CONNECTION_PRIORITY_BALANCED},
+     * which every connection starts with.
+     *
+     * <p><b>Note:</b> Only available on API 21 and higher. On older devices the command fails
+     * with {@link BluetoothGatt#GATT_REQUEST_NOT_SUPPORTED}.
+     *
+     * @param priority one of the {@code BluetoothGatt.CONNECTION_PRIORITY_*} constants
+     * @return this object
+     */
+    public OperationBuilder requestConnectionPriority(int priority) {
+        return requestConnectionPriority(priority, null);
+    }
+
+    /**
+     * Requests a connection priority for the rest of this operation.
+     *
+     * @param priority one of the {@code BluetoothGatt.CONNECTION_PRIORITY_*} constants
+     * @param observer the observer for this specific command
+     * @return this object
+     * @see #requestConnectionPriority(int)
+     */
+    public OperationBuilder requestConnectionPriority(int priority, CommandObserver observer) {
+        if (priority != BluetoothGatt.CONNECTION_PRIORITY_BALANCED
+                && priority != BluetoothGatt.CONNECTION_PRIORITY_HIGH
+                && priority != BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER) {
+            throw new IllegalArgumentException("Unknown connection priority " + priority);
+        }
+        ConnectionPriorityCommand cmd = new ConnectionPriorityCommand(priority, observer);
+        commands.add(cmd);
+        return this;
+    }
+
+    /**
+     * Sets the preferred PHY for the rest of this operation, for example
+     * {@link BluetoothDevice#PHY_LE_2M_MASK} for a bulk transfer. If the connection already uses
+     * one of the preferred PHYs the command succeeds without contacting the device. Once the
+     * operation is done, the PHY the connection used before is preferred again, before the next
+     * operation on the device starts.
+     *
+     * <p><b>Note:</b> Only available on API 26 and higher. On older devices the command fails
+     * with {@link BluetoothGatt#GATT_REQUEST_NOT_SUPPORTED}.
+     *
+     * @param txPhy      the preferred transmitter PHYs, a combination of the
+     *                   {@code BluetoothDevice.PHY_LE_*_MASK} constants
+     * @param rxPhy      the preferred receiver PHYs, a combination of the
+     *                   {@code BluetoothDevice.PHY_LE_*_MASK} constants
+     * @param phyOptions the coding to use with the coded PHY, one of the
+     *                   {@code BluetoothDevice.PHY_OPTION_*} constants
+     * @return this object
+     * @see si.inova.neatle.monitor.Connection#getTxPhy()
+     */
+    public OperationBuilder setPreferredPhy(int txPhy, int rxPhy, int phyOptions) {
+        return setPreferredPhy(txPhy, rxPhy, phyOptions, null);
+    }
+
+    /**
+     * Sets the preferred PHY for the rest of this operation.
+     *
+     * @param txPhy      the preferred transmitter PHYs
+     * @param rxPhy      the preferred receiver PHYs
+     * @param phyOptions the coding to use with the coded PHY
+     * @param observer   the observer for this specific command
+     * @return this object
+     * @see #setPreferredPhy(int, int, int)
+     */
+    public OperationBuilder setPreferredPhy(int txPhy, int rxPhy, int phyOptions, CommandObserver observer) {
+        if (!isPhyMask(txPhy) || !isPhyMask(rxPhy)) {
+            throw new IllegalArgumentException("PHY must be a combination of PHY_LE_*_MASK constants");
+        }
+        PhyCommand cmd = new PhyCommand(txPhy, rxPhy, phyOptions, observer);
+        commands.add(cmd);
+        return this;
+    }
+
+    private static boolean isPhyMask(int phy) {
+        int all = BluetoothDevice.PHY_LE_1M_MASK | BluetoothDevice.PHY_LE_2M_MASK | BluetoothDevice.PHY_LE_CODED_MASK;
+        return phy != 0 && (phy & ~all) == 0;
+    }
+
+    /**
+     * Writes several characteristic values in a single reliable write transaction. Each value is
+     * queued on the device and compared with the value the device echoes back; the queued values
+     * are only applied once all of them were echoed correctly. If a value doesn't match, the
+     * transaction is aborted, nothing is applied and the command fails with
+     * {@link Command#RELIABLE_WRITE_MISMATCH}.
+     *
+     * <p><b>Note:</b> Android sends each value in a single prepared write, so a value can be at
+     * most MTU - 5 bytes long (18 bytes with the default MTU).
+     *
+     * @param write the values to write
+     * @return this object
+     */
+    public OperationBuilder reliableWrite(ReliableWrite write) {
+        return reliableWrite(write, null);
+    }
+
+    /**
+     * Writes several characteristic values in a single reliable write transaction.
+     *
+     * @param write    the values to write
+     * @param observer the observer for this specific command
+     * @return this object
+     * @see #reliableWrite(ReliableWrite)
+     */
+    public OperationBuilder reliableWrite(ReliableWrite write, CommandObserver observer) {
+        if (write == null || write.getEntries().isEmpty()) {
+            throw new IllegalArgumentException("Reliable write needs at least one value");
+        }
+        ReliableWriteCommand cmd = new ReliableWriteCommand(write, observer);
+        commands.add(cmd);
+        return this;
+    }
+
     /**
      * Executes the given custom command.
      *
@@ -180,12 +367,83 @@ public class OperationBuilder {
         return this;
     }
 
+    /**
+     * Sets the priority of the operation. Operations of a higher priority don't wait for queued
+     * ones of a lower priority, and run between the commands of one that is already running.
+     *
+     * @param priority the priority, {@link Operation.Priority#NORMAL} by default
+     * @return this builder instance.
+     */
+    public OperationBuilder priority(@Operation.Priority int priority) {
+        if (priority < Operation.Priority.INTERACTIVE || priority > Operation.Priority.BULK) {
+            throw new IllegalArgumentException("Invalid priority: " + priority);
+        }
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Sets how long each command of the operation may take. A command that takes longer, for
+     * example because the Bluetooth stack never called back, fails with {@link Command#TIMEOUT}
+     * and the operation goes on as with any other error. When commands time out repeatedly, the
+     * connection to the device is recycled.
+     *
+     * @param millis the timeout in milliseconds. The default is 0, no timeout.
+     * @return this builder instance.
+     */
+    public OperationBuilder commandTimeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Invalid timeout: " + millis);
+        }
+        this.commandTimeout = millis;
+        return this;
+    }
+
+    /**
+     * Sets how long the whole operation may take, from when it's executed, including the time it
+     * waits for other operations. When the time is up, the command in progress fails with
+     * {@link Command#TIMEOUT} and the operation finishes without retrying.
+     *
+     * @param millis the timeout in milliseconds. The default is 0, no timeout.
+     * @return this builder instance.
+     */
+    public OperationBuilder timeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Invalid timeout: " + millis);
+        }
+        this.operationTimeout = millis;
+        return this;
+    }
+
+    /**
+     * Sets how long the operation may wait for other operations and for the connection before
+     * it starts. Once the time is up, the operation is dropped without sending anything to the
+     * device, and finishes with {@link Command#EXPIRED}. Useful for requests whose results are
+     * only interesting for a short time, so they don't pile up while the device is out of range.
+     *
+     * @param millis the maximum time in milliseconds. The default is 0, no limit.
+     * @return this builder instance.
+     */
+    public OperationBuilder maxQueueAge(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Invalid queue age: " + millis);
+        }
+        this.maxQueueAge = millis;
+        return this;
+    }
+
     protected OperationBuilder subscribeNotification(UUID serviceUUID, UUID characteristicsUUID, CommandObserver observer) {
         SubscribeCommand cmd = new SubscribeCommand(SubscribeCommand.Type.SUBSCRIBE_NOTIFICATION, serviceUUID, characteristicsUUID, observer);
         commands.add(cmd);
         return this;
     }
 
+    protected OperationBuilder subscribeIndication(UUID serviceUUID, UUID characteristicsUUID, CommandObserver observer) {
+        SubscribeCommand cmd = new SubscribeCommand(SubscribeCommand.Type.SUBSCRIBE_INDICATION, serviceUUID, characteristicsUUID, observer);
+        commands.add(cmd);
+        return this;
+    }
+
     protected OperationBuilder unsubscribeNotification(UUID serviceUUID, UUID characteristicsUUID, CommandObserver observer) {
         SubscribeCommand cmd = new SubscribeCommand(SubscribeCommand.Type.UNSUBSCRIBE, serviceUUID, characteristicsUUID, observer);
         commands.add(cmd);
@@ -205,6 +463,21 @@ public class OperationBuilder {
             throw new IllegalArgumentException("Device cannot be null");
         }
 
-        return new OperationImpl(context, device, commands, retryCount, masterObserver);
+        return new OperationImpl(context, device, commands, retryCount, priority, commandTimeout, operationTimeout, maxQueueAge,
+                masterObserver);
+    }
+
+    /**
+     * Creates a plan, that can run these commands on any number of devices at the same time.
+     * All commands must support {@link Command#duplicate()}; the built-in ones do, as long as their
+     * input sources are {@link si.inova.neatle.source.CopyableInputSource}s.
+     *
+     * @return the created plan
+     * @throws IllegalStateException if a command can't be duplicated
+     */
+    @CheckResult
+    public OperationPlan buildPlan() {
+        return new OperationPlan(context, commands, retryCount, priority, commandTimeout, operationTimeout, maxQueueAge,
+                masterObserver);
     }
 }
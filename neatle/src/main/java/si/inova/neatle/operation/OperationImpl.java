@@ -31,8 +31,10 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.content.Context;
 import android.os.Handler;
+import android.os.SystemClock;
 import androidx.annotation.RestrictTo;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 
@@ -45,10 +47,15 @@ class OperationImpl implements Operation {
 
     private static Command EMPTY_COMMAND = new EmptyCommand();
 
+    /**
+     * How long (in milliseconds) a restore may take before the operation moves on without it.
+     */
+    static final long RESTORE_TIMEOUT = 2000;
+
     private final Context context;
 
-    private final LinkedList<Command> commands;
-    private LinkedList<Command> commandQueue;
+    private final Command[] commandArray;
+    private int nextCommand;
     private Command currentCommand = EMPTY_COMMAND;
     private CommandResult lastResult;
 
@@ -59,23 +66,87 @@ class OperationImpl implements Operation {
     private Device connection;
 
     private final CommandHandler commandHandler = new CommandHandler();
-    private final Handler handler = new Handler();
+    private final RestoreHandler restoreHandler = new RestoreHandler();
+    private final Handler handler;
     private final GattCallback callback = new GattCallback();
     private BluetoothGatt gatt;
 
     private final int retryCount;
     private int retriedCount = 0;
+    private final int priority;
+    private final long commandTimeout;
+    private final long operationTimeout;
+    private final long maxQueueAge;
+    private volatile long startDeadline;
+
+    private final LinkedList<RestorableCommand> restoreStack = new LinkedList<>();
+    // the restores still to run once the commands are done, null while the commands are running
+    private LinkedList<Command> restoreQueue;
 
     private boolean yielded;
+    private boolean disconnected;
     private boolean canceled = false;
+    private boolean timedOut = false;
+
+    private final Runnable commandTimeoutHandler = new Runnable() {
+        @Override
+        public void run() {
+            Command cmd;
+            synchronized (OperationImpl.this) {
+                cmd = currentCommand;
+            }
+            if (cmd != EMPTY_COMMAND) {
+                NeatleLogger.i("Command timed out: " + cmd);
+                cmd.timeout();
+            }
+        }
+    };
 
-    OperationImpl(Context context, BluetoothDevice device, Collection<Command> commands, int retryCount, OperationObserver operationObserver) {
+    private final Runnable operationTimeoutHandler = new Runnable() {
+        @Override
+        public void run() {
+            Command cmd;
+            synchronized (OperationImpl.this) {
+                if (connection == null) {
+                    return;
+                }
+                timedOut = true;
+                cmd = currentCommand;
+                if (cmd == EMPTY_COMMAND) {
+                    // waiting in the queue or between commands
+                    lastResult = CommandResult.createErrorResult(null, Command.TIMEOUT);
+                    results.addResult(lastResult);
+                }
+            }
+            NeatleLogger.i("Operation timed out: " + OperationImpl.this);
+            if (cmd != EMPTY_COMMAND) {
+                // the operation ends once the command finished
+                cmd.timeout();
+            } else {
+                done();
+            }
+        }
+    };
+
+    OperationImpl(Context context, BluetoothDevice device, Collection<Command> commands, int retryCount, int priority,
+                  long commandTimeout, long operationTimeout, long maxQueueAge, OperationObserver operationObserver) {
+        this(context, device, commands.toArray(new Command[commands.size()]), retryCount, priority,
+                commandTimeout, operationTimeout, maxQueueAge, operationObserver, new Handler());
+    }
+
+    OperationImpl(Context context, BluetoothDevice device, Command[] commands, int retryCount, int priority,
+                  long commandTimeout, long operationTimeout, long maxQueueAge, OperationObserver operationObserver,
+                  Handler handler) {
         this.context = context;
         this.device = device;
-        this.commands = new LinkedList<>(commands);
-        this.commandQueue = new LinkedList<>(commands);
+        this.commandArray = commands;
         this.retryCount = retryCount;
+        this.priority = priority;
+        this.commandTimeout = commandTimeout;
+        this.operationTimeout = operationTimeout;
+        this.maxQueueAge = maxQueueAge;
         this.operationObserver = operationObserver;
+        this.handler = handler;
     }
 
     @Override
@@ -87,14 +158,22 @@ class OperationImpl implements Operation {
         Device conn;
         synchronized (this) {
             this.connection = conn = DeviceManager.getInstance(context).getDevice(device);
-            this.results = new OperationResults();
-            this.commandQueue = new LinkedList<>(commands);
+            this.results = new OperationResults(commandArray.length);
+            this.nextCommand = 0;
             this.currentCommand = EMPTY_COMMAND;
             this.retriedCount = 0;
             this.canceled = false;
+            this.timedOut = false;
             this.lastResult = null;
+            this.disconnected = false;
+            this.restoreStack.clear();
+            this.restoreQueue = null;
+            this.startDeadline = maxQueueAge > 0 ? SystemClock.elapsedRealtime() + maxQueueAge : 0;
+        }
+        if (operationTimeout > 0) {
+            handler.postDelayed(operationTimeoutHandler, operationTimeout);
         }
-        conn.execute(callback);
+        conn.execute(callback, priority);
     }
 
     private void retry() {
@@ -102,12 +181,14 @@ class OperationImpl implements Operation {
         synchronized (this) {
             retriedCount++;
             NeatleLogger.i("Retrying operation, attempt:" + retriedCount);
-            results = new OperationResults();
-            commandQueue = new LinkedList<>(commands);
+            results = new OperationResults(commandArray.length);
+            nextCommand = 0;
             conn = connection;
             lastResult = null;
+            // the commands register again when they are executed again
+            restoreStack.clear();
         }
-        conn.execute(callback);
+        conn.execute(callback, priority);
     }
 
     @Override
@@ -129,38 +210,86 @@ class OperationImpl implements Operation {
     }
 
     private void done() {
+        synchronized (this) {
+            if (connection == null || restoreQueue != null) {
+                // not executing, or already restoring
+                return;
+            }
+            restoreQueue = new LinkedList<>();
+            // the settings are gone with the connection, and the gatt can't be used anymore
+            if (!disconnected && gatt != null) {
+                for (RestorableCommand cmd : restoreStack) {
+                    Command restore = cmd.createRestoreCommand();
+                    if (restore != null) {
+                        restoreQueue.add(restore);
+                    }
+                }
+            }
+            restoreStack.clear();
+        }
+
+        handler.removeCallbacks(operationTimeoutHandler);
+        handler.removeCallbacks(commandTimeoutHandler);
+        restoreNext();
+    }
+
+    /**
+     * Runs the next restore. The operation keeps the device until every restore got its callback
+     * or timed out, so the callbacks don't end up in the operation that runs next.
+     */
+    private void restoreNext() {
         Device conn;
-        boolean wasExecuting;
+        Command cmd;
         synchronized (this) {
-            wasExecuting = this.connection != null;
-            conn = this.connection;
-            this.connection = null;
+            conn = connection;
+            cmd = disconnected ? null : restoreQueue.poll();
+            currentCommand = cmd == null ? EMPTY_COMMAND : cmd;
         }
 
-        if (wasExecuting) {
-            conn.executeFinished(callback);
-            NeatleLogger.d("Operation finished, success: " + results.wasSuccessful() + ", cancel:" + isCanceled());
+        if (cmd == null) {
+            finished(conn);
+            return;
+        }
+        NeatleLogger.d("Restoring with: " + cmd);
+        handler.postDelayed(commandTimeoutHandler, RESTORE_TIMEOUT);
+        cmd.execute(conn, restoreHandler, gatt);
+    }
 
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (isCanceled()) {
-                        return;
-                    }
-                    if (operationObserver != null) {
-                        operationObserver.onOperationFinished(OperationImpl.this, results);
-                    }
-                }
-            });
+    private void finished(Device conn) {
+        synchronized (this) {
+            connection = null;
         }
+
+        conn.executeFinished(callback);
+        NeatleLogger.d("Operation finished, success: " + results.wasSuccessful() + ", cancel:" + isCanceled());
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isCanceled()) {
+                    return;
+                }
+                if (operationObserver != null) {
+                    operationObserver.onOperationFinished(OperationImpl.this, results);
+                }
+            }
+        });
     }
 
     private void executeNext() {
+        if (yieldToHigherPriority()) {
+            return;
+        }
+
         Command cmd;
         Device targetDevice;
         synchronized (this) {
             targetDevice = connection;
-            if (yielded || canceled) {
+            if (yielded || canceled || restoreQueue != null) {
+                return;
+            }
+            if (timedOut) {
+                done();
                 return;
             }
             if (lastResult != null && !lastResult.wasSuccessful()) {
@@ -174,7 +303,7 @@ class OperationImpl implements Operation {
             }
 
             Command old = currentCommand;
-            currentCommand = commandQueue.poll();
+            currentCommand = nextCommand < commandArray.length ? commandArray[nextCommand++] : null;
             NeatleLogger.d("Continuing with " + currentCommand + " after " + old + " with " + lastResult);
             if (currentCommand == null) {
                 currentCommand = EMPTY_COMMAND;
@@ -187,10 +316,34 @@ class OperationImpl implements Operation {
         if (operationObserver != null) {
             operationObserver.onCommandStarted(this, cmd);
         }
+        if (commandTimeout > 0) {
+            handler.postDelayed(commandTimeoutHandler, commandTimeout);
+        }
 
         cmd.execute(targetDevice, commandHandler, gatt);
     }
 
+    private boolean yieldToHigherPriority() {
+        Device targetDevice;
+        synchronized (this) {
+            // only between commands, and not when the operation is about to retry or finish
+            if (yielded || canceled || timedOut || restoreQueue != null || nextCommand == 0 || nextCommand >= commandArray.length
+                    || (lastResult != null && !lastResult.wasSuccessful())) {
+                return false;
+            }
+            targetDevice = connection;
+            yielded = true;
+        }
+        if (targetDevice.yieldToHigherPriority(callback)) {
+            NeatleLogger.d("Yielded after " + nextCommand + " commands: " + this);
+            return true;
+        }
+        synchronized (this) {
+            yielded = false;
+        }
+        return false;
+    }
+
     private void scheduleNext() {
         NeatleLogger.d("Scheduling next command after : " + currentCommand);
         handler.post(new Runnable() {
@@ -203,7 +356,7 @@ class OperationImpl implements Operation {
 
     @RestrictTo(RestrictTo.Scope.TESTS)
     LinkedList<Command> getCommands() {
-        return commands;
+        return new LinkedList<>(Arrays.asList(commandArray));
     }
 
     @RestrictTo(RestrictTo.Scope.TESTS)
@@ -216,6 +369,26 @@ class OperationImpl implements Operation {
         return retryCount;
     }
 
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    int getPriority() {
+        return priority;
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    long getCommandTimeout() {
+        return commandTimeout;
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    long getOperationTimeout() {
+        return operationTimeout;
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    long getMaxQueueAge() {
+        return maxQueueAge;
+    }
+
     @RestrictTo(RestrictTo.Scope.TESTS)
     BluetoothDevice getDevice() {
         return device;
@@ -223,7 +396,7 @@ class OperationImpl implements Operation {
 
     @Override
     public String toString() {
-        return "Operation[retryCount: " + retryCount + ", attempts: " + retriedCount + ", commands:" + this.commands + "]";
+        return "Operation[retryCount: " + retryCount + ", priority: " + priority + ", attempts: " + retriedCount + ", commands:" + Arrays.toString(commandArray) + "]";
     }
 
     private static class EmptyCommand extends Command {
@@ -246,12 +419,21 @@ class OperationImpl implements Operation {
     private class CommandHandler implements CommandObserver {
         @Override
         public void finished(final Command command, final CommandResult result) {
+            handler.removeCallbacks(commandTimeoutHandler);
+            Device targetDevice;
             synchronized (OperationImpl.this) {
+                targetDevice = connection;
                 lastResult = result;
                 results.addResult(result);
+                if (result.wasSuccessful() && command instanceof RestorableCommand) {
+                    restoreStack.addFirst((RestorableCommand) command);
+                }
                 //once the command is finished, don't forward any more events
                 currentCommand = EMPTY_COMMAND;
             }
+            if (targetDevice != null && (commandTimeout > 0 || operationTimeout > 0)) {
+                targetDevice.commandFinished(result.getStatus() == Command.TIMEOUT);
+            }
 
             NeatleLogger.d("Command finished, status: " + result.getStatus() + ", command:" + command + ", on: " + device.getAddress());
             handler.post(new Runnable() {
@@ -271,7 +453,41 @@ class OperationImpl implements Operation {
         }
     }
 
-    private class GattCallback extends BluetoothGattCallback {
+    private class RestoreHandler implements CommandObserver {
+        @Override
+        public void finished(Command command, CommandResult result) {
+            handler.removeCallbacks(commandTimeoutHandler);
+            synchronized (OperationImpl.this) {
+                currentCommand = EMPTY_COMMAND;
+            }
+            NeatleLogger.d("Restore finished, status: " + result.getStatus() + ", command:" + command);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    restoreNext();
+                }
+            });
+        }
+    }
+
+    private class GattCallback extends BluetoothGattCallback implements ExpirableCallback {
+
+        @Override
+        public long getStartDeadline() {
+            return startDeadline;
+        }
+
+        @Override
+        public void onExpired() {
+            synchronized (OperationImpl.this) {
+                if (connection == null) {
+                    return;
+                }
+                lastResult = CommandResult.createErrorResult(null, Command.EXPIRED);
+                results.addResult(lastResult);
+            }
+            done();
+        }
 
         @Override
         @SuppressWarnings("PMD.CompareObjectsWithEquals")
@@ -281,6 +497,11 @@ class OperationImpl implements Operation {
             Command cur;
             synchronized (OperationImpl.this) {
                 cur = currentCommand;
+                if (newState != BluetoothGatt.STATE_CONNECTED) {
+                    // a yielded operation has to retry or finish now, it won't be resumed
+                    yielded = false;
+                    disconnected = true;
+                }
                 if (newState != BluetoothGatt.STATE_CONNECTED && cur == EMPTY_COMMAND &&
                         (lastResult == null || lastResult.wasSuccessful())) {
                     lastResult = CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE);
@@ -296,6 +517,7 @@ class OperationImpl implements Operation {
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 synchronized (OperationImpl.this) {
                     yielded = false;
+                    disconnected = false;
                     OperationImpl.this.gatt = gatt;
                 }
                 scheduleNext();
@@ -342,6 +564,16 @@ class OperationImpl implements Operation {
             current().onMtuChanged(gatt, mtu, status);
         }
 
+        @Override
+        public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            current().onPhyUpdate(gatt, txPhy, rxPhy, status);
+        }
+
+        @Override
+        public void onPhyRead(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            current().onPhyRead(gatt, txPhy, rxPhy, status);
+        }
+
         @Override
         public String toString() {
             return "Callback[" + OperationImpl.this.toString() + "]";
@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import android.os.Handler;
+import androidx.annotation.CheckResult;
+import androidx.annotation.RestrictTo;
+
+import java.util.Collection;
+
+/**
+ * An immutable list of commands, that can be executed on any number of devices at the same time.
+ * Unlike an {@link Operation}, which runs on one device at a time, a plan only holds the
+ * configuration, and every execution gets its own copy of the commands.
+ * <p>
+ * The observers of the plan are shared by all executions. Use the {@link Operation} passed to them
+ * to tell executions apart.
+ *
+ * @see OperationBuilder#buildPlan()
+ */
+public final class OperationPlan {
+
+    private final Context context;
+    private final Command[] commands;
+    private final int retryCount;
+    private final int priority;
+    private final long commandTimeout;
+    private final long operationTimeout;
+    private final long maxQueueAge;
+    private final OperationObserver operationObserver;
+    private final Handler handler = new Handler();
+
+    OperationPlan(Context context, Collection<Command> commands, int retryCount, int priority,
+                  long commandTimeout, long operationTimeout, long maxQueueAge, OperationObserver operationObserver) {
+        for (Command command : commands) {
+            if (command.duplicate() == null) {
+                throw new IllegalStateException(command + " can't be executed on several devices at once");
+            }
+        }
+
+        this.context = context;
+        this.commands = commands.toArray(new Command[commands.size()]);
+        this.retryCount = retryCount;
+        this.priority = priority;
+        this.commandTimeout = commandTimeout;
+        this.operationTimeout = operationTimeout;
+        this.maxQueueAge = maxQueueAge;
+        this.operationObserver = operationObserver;
+    }
+
+    /**
+     * Creates an operation that runs this plan on a device. Note that you still need to call
+     * {@link Operation#execute()} to start the operation.
+     *
+     * @param device the device on which the operation will run
+     * @return the created operation
+     */
+    @CheckResult
+    public Operation createOperation(BluetoothDevice device) {
+        if (device == null) {
+            throw new IllegalArgumentException("Device cannot be null");
+        }
+
+        Command[] copies = new Command[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            copies[i] = commands[i].duplicate();
+        }
+        return new OperationImpl(context, device, copies, retryCount, priority,
+                commandTimeout, operationTimeout, maxQueueAge, operationObserver, handler);
+    }
+
+    /**
+     * Creates an operation that runs this plan on a device, and starts it.
+     *
+     * @param device the device on which the operation will run
+     * @return the started operation, which can be used to cancel it
+     */
+    public Operation execute(BluetoothDevice device) {
+        Operation operation = createOperation(device);
+        operation.execute();
+        return operation;
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    Command[] getCommands() {
+        return commands;
+    }
+}
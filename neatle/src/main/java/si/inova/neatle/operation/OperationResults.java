@@ -24,19 +24,32 @@
 
 package si.inova.neatle.operation;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 /**
  * The combined results of an operation.
+ *
+ * <p>Results are kept in the order the commands finished in, so a characteristic that was read
+ * more than once keeps all of its values.
  */
 public class OperationResults {
 
-    private final Map<UUID, CommandResult> results = new HashMap<>();
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private CommandResult[] results;
+    private int size;
     private boolean successful = false;
 
     OperationResults() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    OperationResults(int capacity) {
+        results = new CommandResult[Math.max(capacity, 1)];
     }
 
     /**
@@ -49,21 +62,81 @@ public class OperationResults {
     }
 
     /**
-     * Gets the result of a command that was executed on a specific UUAD.
+     * Gets the last result of a command that was executed on a specific UUAD.
      *
      * @param uuid the UUAD of the characteristic
-     * @return the command result
+     * @return the command result, or null if no command was executed on the UUID
      */
     public synchronized CommandResult getResult(UUID uuid) {
-        return results.get(uuid);
+        for (int i = size - 1; i >= 0; i--) {
+            if (equals(uuid, results[i].getUUID())) {
+                return results[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets all results of commands that were executed on a specific UUID, in execution order.
+     *
+     * @param uuid the UUID of the characteristic
+     * @return the command results, empty if no command was executed on the UUID
+     */
+    public synchronized List<CommandResult> getResults(UUID uuid) {
+        List<CommandResult> matching = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (equals(uuid, results[i].getUUID())) {
+                matching.add(results[i]);
+            }
+        }
+        return Collections.unmodifiableList(matching);
+    }
+
+    /**
+     * Gets the result at a specific position in execution order.
+     *
+     * @param index the position of the result, from 0 to {@link #size()} - 1
+     * @return the command result
+     * @throws IndexOutOfBoundsException if there is no result at index
+     */
+    public synchronized CommandResult getResult(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return results[index];
+    }
+
+    /**
+     * Gets all results in execution order.
+     *
+     * @return the command results
+     */
+    public synchronized List<CommandResult> getResults() {
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(results, size)));
+    }
+
+    /**
+     * Returns the number of results.
+     *
+     * @return the number of results
+     */
+    public synchronized int size() {
+        return size;
     }
 
     synchronized void addResult(CommandResult result) {
-        if (results.isEmpty()) {
+        if (size == 0) {
             successful = result.wasSuccessful();
         } else {
             successful = successful && result.wasSuccessful();
         }
-        results.put(result.getUUID(), result);
+        if (size == results.length) {
+            results = Arrays.copyOf(results, size * 2);
+        }
+        results[size++] = result;
+    }
+
+    private static boolean equals(UUID a, UUID b) {
+        return a == null ? b == null : a.equals(b);
     }
 }
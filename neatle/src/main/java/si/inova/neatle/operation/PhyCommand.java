@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+import androidx.annotation.RestrictTo;
+
+import si.inova.neatle.monitor.Connection;
+import si.inova.neatle.util.NeatleLogger;
+
+class PhyCommand extends Command implements RestorableCommand {
+
+    private final int txPhyMask;
+    private final int rxPhyMask;
+    private final int phyOptions;
+
+    private int previousTxPhy;
+    private int previousRxPhy;
+    private boolean changed;
+
+    PhyCommand(int txPhyMask, int rxPhyMask, int phyOptions, CommandObserver observer) {
+        super(observer);
+        this.txPhyMask = txPhyMask;
+        this.rxPhyMask = rxPhyMask;
+        this.phyOptions = phyOptions;
+    }
+
+    @Override
+    protected Command duplicate() {
+        return new PhyCommand(txPhyMask, rxPhyMask, phyOptions, getObserver());
+    }
+
+    @Override
+    protected void start(Connection connection, BluetoothGatt gatt) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            NeatleLogger.i("PHY selection is not supported on API " + Build.VERSION.SDK_INT);
+            finish(CommandResult.createErrorResult(null, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED));
+            return;
+        }
+
+        int txPhy = connection.getTxPhy();
+        int rxPhy = connection.getRxPhy();
+        if ((toMask(txPhy) & txPhyMask) != 0 && (toMask(rxPhy) & rxPhyMask) != 0) {
+            // when retried, the PHY is still the one an earlier attempt selected, keep restoring the original
+            NeatleLogger.d("Already using PHY tx: " + txPhy + " rx: " + rxPhy);
+            finish(CommandResult.createEmptySuccess(null));
+            return;
+        }
+
+        changed = false;
+        previousTxPhy = txPhy;
+        previousRxPhy = rxPhy;
+
+        NeatleLogger.d("Setting preferred PHY tx: " + txPhyMask + " rx: " + rxPhyMask);
+        gatt.setPreferredPhy(txPhyMask, rxPhyMask, phyOptions);
+    }
+
+    @Override
+    protected void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            NeatleLogger.i("PHY update failed with status " + status);
+            finish(CommandResult.createErrorResult(null, status));
+        } else {
+            NeatleLogger.d("PHY changed to tx: " + txPhy + " rx: " + rxPhy);
+            changed = true;
+            finish(CommandResult.createEmptySuccess(null));
+        }
+    }
+
+    @Override
+    public Command createRestoreCommand() {
+        if (!changed) {
+            return null;
+        }
+        changed = false;
+        NeatleLogger.d("Restoring PHY tx: " + previousTxPhy + " rx: " + previousRxPhy);
+        return new PhyCommand(toMask(previousTxPhy), toMask(previousRxPhy), BluetoothDevice.PHY_OPTION_NO_PREFERRED, null);
+    }
+
+    @Override
+    protected void onError(int error) {
+        NeatleLogger.e("Unexpected error while setting PHY [" + error + "]");
+        finish(CommandResult.createErrorResult(null, error));
+    }
+
+    /**
+     * Converts a PHY (1M, 2M or coded) to the mask used to select it.
+     */
+    private static int toMask(int phy) {
+        return 1 << (phy - 1);
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    int getTxPhyMask() {
+        return txPhyMask;
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    int getRxPhyMask() {
+        return rxPhyMask;
+    }
+
+    @Override
+    public String toString() {
+        return "PhyCommand[tx: " + txPhyMask + ", rx: " + rxPhyMask + "]";
+    }
+}
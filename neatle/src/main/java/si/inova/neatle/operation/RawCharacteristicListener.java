@@ -0,0 +1,48 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import java.util.UUID;
+
+/**
+ * Listener for characteristics changes, that receives the raw value without a {@link CommandResult}.
+ * <p>
+ * It's called on the Bluetooth binder thread, so it should return quickly. The value array is
+ * owned by the Bluetooth stack and is only valid during the call - copy it to keep it.
+ *
+ * @see si.inova.neatle.monitor.Connection#addRawCharacteristicListener(UUID, RawCharacteristicListener)
+ */
+public interface RawCharacteristicListener {
+
+    /**
+     * Invoked when the device notifies a change of the characteristic.
+     *
+     * @param characteristicUUID the UUID of the characteristic
+     * @param value              the new value, valid only during this call
+     * @param timestampNanos     when the change was received, on the
+     *                           {@link android.os.SystemClock#elapsedRealtimeNanos()} clock
+     */
+    void onCharacteristicChanged(UUID characteristicUUID, byte[] value, long timestampNanos);
+}
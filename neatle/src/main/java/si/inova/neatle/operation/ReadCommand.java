@@ -41,6 +41,16 @@ class ReadCommand extends SingleCharacteristicsCommand {
 
     @Override
     protected void start(Connection connection, BluetoothGatt gatt) {
+        CharacteristicCache cache = connection.getCharacteristicCache();
+        if (cache != null) {
+            CommandResult cached = cache.get(serviceUUID, characteristicUUID);
+            if (cached != null) {
+                NeatleLogger.d("Using cached value of " + characteristicUUID);
+                finish(cached);
+                return;
+            }
+        }
+
         BluetoothGattService service = gatt.getService(serviceUUID);
         if (service != null) {
             BluetoothGattCharacteristic characteristic = service.getCharacteristic(characteristicUUID);
@@ -60,6 +70,11 @@ class ReadCommand extends SingleCharacteristicsCommand {
         finish(CommandResult.createErrorResult(characteristicUUID, BluetoothGatt.GATT_FAILURE));
     }
 
+    @Override
+    protected Command duplicate() {
+        return new ReadCommand(serviceUUID, characteristicUUID, getObserver());
+    }
+
     @Override
     protected void onError(int error) {
         NeatleLogger.e("Unexpected error while reading [" + error + "]");
@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A set of characteristic values that are written to the device in a single reliable write
+ * transaction: the device queues all of them and applies them together, or none of them.
+ *
+ * @see OperationBuilder#reliableWrite(ReliableWrite)
+ */
+public class ReliableWrite {
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Adds a value to the transaction. Values are written in the order they were added.
+     *
+     * @param serviceUUID        the UUID of the service
+     * @param characteristicUUID the UUID of the characteristic
+     * @param value              the value to write, at most MTU - 5 bytes long
+     * @return this object
+     */
+    public ReliableWrite add(UUID serviceUUID, UUID characteristicUUID, byte[] value) {
+        if (serviceUUID == null || characteristicUUID == null) {
+            throw new IllegalArgumentException("Service and characteristic UUIDs cannot be null");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        entries.add(new Entry(serviceUUID, characteristicUUID, value.clone()));
+        return this;
+    }
+
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    static class Entry {
+        final UUID serviceUUID;
+        final UUID characteristicUUID;
+        final byte[] value;
+
+        Entry(UUID serviceUUID, UUID characteristicUUID, byte[] value) {
+            this.serviceUUID = serviceUUID;
+            this.characteristicUUID = characteristicUUID;
+            this.value = value;
+        }
+    }
+}
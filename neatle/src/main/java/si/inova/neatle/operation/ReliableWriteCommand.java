@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import androidx.annotation.RestrictTo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import si.inova.neatle.monitor.Connection;
+import si.inova.neatle.util.NeatleLogger;
+
+class ReliableWriteCommand extends Command {
+
+    /**
+     * Size of the ATT prepare write request header (opcode, attribute handle and value offset),
+     * which is subtracted from the MTU to get the largest value of a single prepared write.
+     */
+    private static final int ATT_PREPARE_WRITE_HEADER_SIZE = 5;
+
+    private final List<ReliableWrite.Entry> entries;
+
+    private BluetoothGatt gatt;
+    private BluetoothGattCharacteristic[] characteristics;
+    private int index;
+    private boolean inTransaction;
+
+    ReliableWriteCommand(ReliableWrite write, CommandObserver observer) {
+        this(write.getEntries(), observer);
+    }
+
+    private ReliableWriteCommand(List<ReliableWrite.Entry> entries, CommandObserver observer) {
+        super(observer);
+        this.entries = entries;
+    }
+
+    @Override
+    protected Command duplicate() {
+        return new ReliableWriteCommand(entries, getObserver());
+    }
+
+    @Override
+    protected void start(Connection connection, BluetoothGatt gatt) {
+        this.gatt = gatt;
+        int maxLength = Math.max(connection.getMtu(), Connection.DEFAULT_MTU) - ATT_PREPARE_WRITE_HEADER_SIZE;
+
+        characteristics = new BluetoothGattCharacteristic[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            ReliableWrite.Entry entry = entries.get(i);
+            if (entry.value.length > maxLength) {
+                NeatleLogger.i("Value for " + entry.characteristicUUID + " is longer than " + maxLength + " bytes");
+                finish(CommandResult.createErrorResult(entry.characteristicUUID, BluetoothGatt.GATT_INVALID_ATTRIBUTE_LENGTH));
+                return;
+            }
+
+            BluetoothGattService service = gatt.getService(entry.serviceUUID);
+            if (service == null) {
+                NeatleLogger.i("Service for reliable write not found [" + entry.serviceUUID + "]");
+                finish(CommandResult.createErrorResult(entry.characteristicUUID, SERVICE_NOT_FOUND));
+                return;
+            }
+            characteristics[i] = service.getCharacteristic(entry.characteristicUUID);
+            if (characteristics[i] == null) {
+                NeatleLogger.i("Characteristic not found [" + entry.characteristicUUID + "]");
+                finish(CommandResult.createErrorResult(entry.characteristicUUID, CHARACTERISTIC_NOT_FOUND));
+                return;
+            }
+        }
+
+        NeatleLogger.d("Beginning reliable write of " + entries.size() + " values");
+        if (!gatt.beginReliableWrite()) {
+            NeatleLogger.e("Failed to begin reliable write");
+            finish(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+            return;
+        }
+        inTransaction = true;
+        index = 0;
+        writeNext();
+    }
+
+    private void writeNext() {
+        if (index == entries.size()) {
+            NeatleLogger.d("Executing reliable write");
+            if (!gatt.executeReliableWrite()) {
+                NeatleLogger.e("Failed to execute reliable write");
+                abort(null, BluetoothGatt.GATT_FAILURE);
+            }
+            return;
+        }
+
+        ReliableWrite.Entry entry = entries.get(index);
+        BluetoothGattCharacteristic characteristic = characteristics[index];
+        characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+        characteristic.setValue(entry.value);
+        if (!gatt.writeCharacteristic(characteristic)) {
+            NeatleLogger.e("Failed to queue reliable write on " + entry.characteristicUUID);
+            abort(entry.characteristicUUID, BluetoothGatt.GATT_FAILURE);
+        }
+    }
+
+    @Override
+    protected void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+        ReliableWrite.Entry entry = entries.get(index);
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            NeatleLogger.i("Reliable write on " + entry.characteristicUUID + " failed with status " + status);
+            abort(entry.characteristicUUID, status);
+            return;
+        }
+        // the value holds what the device echoed back in the prepare write response
+        if (!Arrays.equals(entry.value, characteristic.getValue())) {
+            NeatleLogger.i("Device echoed a different value for " + entry.characteristicUUID);
+            abort(entry.characteristicUUID, RELIABLE_WRITE_MISMATCH);
+            return;
+        }
+
+        index++;
+        writeNext();
+    }
+
+    @Override
+    protected void onReliableWriteCompleted(BluetoothGatt gatt, int status) {
+        inTransaction = false;
+        if (status != BluetoothGatt.GATT_SUCCESS) {
+            NeatleLogger.i("Reliable write failed with status " + status);
+            finish(CommandResult.createErrorResult(null, status));
+        } else {
+            NeatleLogger.d("Reliable write completed");
+            finish(CommandResult.createEmptySuccess(null));
+        }
+    }
+
+    @Override
+    protected void onError(int error) {
+        NeatleLogger.e("Unexpected error while writing reliably [" + error + "]");
+        abort(null, error);
+    }
+
+    private void abort(UUID uuid, int status) {
+        if (inTransaction) {
+            inTransaction = false;
+            gatt.abortReliableWrite();
+        }
+        finish(CommandResult.createErrorResult(uuid, status));
+    }
+
+    @RestrictTo(RestrictTo.Scope.TESTS)
+    List<ReliableWrite.Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        return "ReliableWriteCommand[" + entries.size() + " values]";
+    }
+}
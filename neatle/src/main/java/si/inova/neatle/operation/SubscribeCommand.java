@@ -119,6 +119,11 @@ class SubscribeCommand extends SingleCharacteristicsCommand {
         }
     }
 
+    @Override
+    protected Command duplicate() {
+        return new SubscribeCommand(type, serviceUUID, characteristicUUID, getObserver());
+    }
+
     @Override
     protected void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
         if (status != BluetoothGatt.GATT_SUCCESS) {
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import java.util.UUID;
+
+/**
+ * Subscribes to a set of characteristics on one device together. All characteristics are
+ * subscribed to in a single operation, and after a reconnect they are restored in a single
+ * operation as well. Changes of all characteristics go to one listener, use
+ * {@link CommandResult#getUUID()} to tell them apart.
+ * <p>
+ * Characteristics that are also subscribed to elsewhere (by a {@link CharacteristicSubscription}
+ * or another group) share the notification with them.
+ *
+ * @see si.inova.neatle.Neatle#createSubscriptionGroup(android.content.Context, android.bluetooth.BluetoothDevice)
+ */
+public interface SubscriptionGroup {
+
+    /**
+     * Adds a characteristic to subscribe to with notifications. Must be called before the group
+     * is started.
+     *
+     * @param serviceUUID        the service under which the characteristic is located
+     * @param characteristicUUID the characteristic
+     * @return this group
+     */
+    SubscriptionGroup addNotification(UUID serviceUUID, UUID characteristicUUID);
+
+    /**
+     * Adds a characteristic to subscribe to with indications. Must be called before the group
+     * is started.
+     *
+     * @param serviceUUID        the service under which the characteristic is located
+     * @param characteristicUUID the characteristic
+     * @return this group
+     */
+    SubscriptionGroup addIndication(UUID serviceUUID, UUID characteristicUUID);
+
+    /**
+     * Returns the number of characteristics in this group.
+     *
+     * @return the number of characteristics
+     */
+    int size();
+
+    /**
+     * Sets the listener that will be called on changes of any characteristic in the group.
+     *
+     * @param listener the listener
+     */
+    void setOnCharacteristicsChangedListener(CharacteristicsChangedListener listener);
+
+    /**
+     * Starts listening for changes of all characteristics in the group. If there is no active
+     * connection, the device is connected to and the characteristics are subscribed to once
+     * it's connected.
+     * <p>
+     * It's safe to call start multiple times.
+     */
+    void start();
+
+    /**
+     * Stops listening for changes. Characteristics that have no other subscriptions are
+     * unsubscribed from in a single operation, but only if there is an active connection.
+     */
+    void stop();
+
+    /**
+     * Check if this group is started.
+     *
+     * @return true if started, false otherwise
+     */
+    boolean isStarted();
+}
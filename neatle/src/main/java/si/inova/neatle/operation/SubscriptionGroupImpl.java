@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import androidx.annotation.RestrictTo;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+import si.inova.neatle.Neatle;
+import si.inova.neatle.monitor.Connection;
+import si.inova.neatle.util.DeviceManager;
+
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public class SubscriptionGroupImpl implements SubscriptionGroup {
+
+    private final Context context;
+    private final BluetoothDevice device;
+
+    private final ArrayList<UUID> serviceUUIDs = new ArrayList<>();
+    private final ArrayList<UUID> characteristicUUIDs = new ArrayList<>();
+    private final ArrayList<Boolean> indications = new ArrayList<>();
+
+    private CharacteristicsChangedListener listener;
+    private boolean started = false;
+
+    // one listener for all characteristics, registered under each of them
+    private CharacteristicsChangedListener changeHandler = new CharacteristicsChangedListener() {
+        @Override
+        public void onCharacteristicChanged(CommandResult change) {
+            if (listener != null) {
+                listener.onCharacteristicChanged(change);
+            }
+        }
+    };
+
+    public SubscriptionGroupImpl(Context context, BluetoothDevice device) {
+        this.context = context.getApplicationContext();
+        this.device = device;
+    }
+
+    @Override
+    public SubscriptionGroup addNotification(UUID serviceUUID, UUID characteristicUUID) {
+        return add(serviceUUID, characteristicUUID, false);
+    }
+
+    @Override
+    public SubscriptionGroup addIndication(UUID serviceUUID, UUID characteristicUUID) {
+        return add(serviceUUID, characteristicUUID, true);
+    }
+
+    private SubscriptionGroup add(UUID serviceUUID, UUID characteristicUUID, boolean indication) {
+        if (started) {
+            throw new IllegalStateException("Subscription group is already started");
+        }
+        for (int i = 0; i < characteristicUUIDs.size(); i++) {
+            if (characteristicUUIDs.get(i).equals(characteristicUUID) && serviceUUIDs.get(i).equals(serviceUUID)) {
+                throw new IllegalArgumentException("Characteristic " + characteristicUUID + " of service "
+                        + serviceUUID + " is already in the group");
+            }
+        }
+        serviceUUIDs.add(serviceUUID);
+        characteristicUUIDs.add(characteristicUUID);
+        indications.add(indication);
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return characteristicUUIDs.size();
+    }
+
+    @Override
+    public void setOnCharacteristicsChangedListener(CharacteristicsChangedListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void start() {
+        if (started || characteristicUUIDs.isEmpty()) {
+            return;
+        }
+
+        Connection connection = Neatle.getConnection(context, device);
+        for (UUID characteristicUUID : characteristicUUIDs) {
+            connection.addCharacteristicsChangedListener(characteristicUUID, changeHandler);
+        }
+
+        boolean[] indicationArray = new boolean[indications.size()];
+        for (int i = 0; i < indicationArray.length; i++) {
+            indicationArray[i] = indications.get(i);
+        }
+        DeviceManager.getInstance(context).getSubscriptionManager(device).acquire(
+                serviceUUIDs.toArray(new UUID[0]), characteristicUUIDs.toArray(new UUID[0]), indicationArray);
+
+        started = true;
+    }
+
+    @Override
+    public void stop() {
+        if (!started) {
+            return;
+        }
+
+        Connection connection = Neatle.getConnection(context, device);
+        for (UUID characteristicUUID : characteristicUUIDs) {
+            connection.removeCharacteristicsChangedListener(characteristicUUID, changeHandler);
+        }
+
+        DeviceManager.getInstance(context).getSubscriptionManager(device)
+                .release(serviceUUIDs.toArray(new UUID[0]), characteristicUUIDs.toArray(new UUID[0]));
+
+        started = false;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return started;
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import androidx.annotation.RestrictTo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+import si.inova.neatle.Neatle;
+import si.inova.neatle.ServicesDiscoveredListener;
+import si.inova.neatle.monitor.Connection;
+
+/**
+ * Keeps track of the notifications/indications enabled on one device. Subscribers are counted
+ * per characteristic of a service, so the descriptor is written once when the first subscriber
+ * comes and once when the last one leaves. After a reconnect, all characteristics are subscribed
+ * to again in a single operation.
+ * <p>
+ * A subscribe or unsubscribe that is still pending when the characteristic is released or
+ * acquired again is canceled. When it was issued together with other characteristics, it is only
+ * canceled once all of them changed their mind, until then the operation that follows it in the
+ * queue puts the characteristic in the right state.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public class SubscriptionManager {
+
+    private final Context context;
+    private final BluetoothDevice device;
+    private final LinkedHashMap<CharacteristicKey, Entry> entries = new LinkedHashMap<>();
+    // released characteristics with an unsubscribe that didn't finish yet
+    private final LinkedHashMap<CharacteristicKey, Entry> releasing = new LinkedHashMap<>();
+
+    private Operation resubscribeOp;
+
+    private final OperationObserver pendingObserver = new SimpleOperationObserver() {
+        @Override
+        public void onOperationFinished(Operation op, OperationResults results) {
+            onPendingFinished(op);
+        }
+    };
+
+    private final ServicesDiscoveredListener servicesDiscoveredListener = new ServicesDiscoveredListener() {
+        @Override
+        public void onServicesDiscovered(Connection connection) {
+            resubscribeAll();
+        }
+    };
+
+    public SubscriptionManager(Context context, BluetoothDevice device) {
+        this.context = context.getApplicationContext();
+        this.device = device;
+    }
+
+    /**
+     * Adds a subscriber to the characteristic, subscribing on the device if it's the first one.
+     *
+     * @param serviceUUID        the service of the characteristic
+     * @param characteristicUUID the characteristic
+     * @param indication         true to subscribe to indications, false for notifications. Only
+     *                           used by the first subscriber.
+     */
+    public void acquire(UUID serviceUUID, UUID characteristicUUID, boolean indication) {
+        acquire(new UUID[]{serviceUUID}, new UUID[]{characteristicUUID}, new boolean[]{indication});
+    }
+
+    /**
+     * Adds a subscriber to each of the characteristics. All characteristics that get their first
+     * subscriber are subscribed to on the device in a single operation.
+     *
+     * @param serviceUUIDs        the services of the characteristics
+     * @param characteristicUUIDs the characteristics
+     * @param indications         for each characteristic, true to subscribe to indications, false
+     *                            for notifications. Only used by the first subscriber.
+     */
+    public void acquire(UUID[] serviceUUIDs, UUID[] characteristicUUIDs, boolean[] indications) {
+        Connection connection = Neatle.getConnection(context, device);
+        boolean connected = connection.isConnected();
+        ArrayList<Entry> subscribed = new ArrayList<>();
+        Operation op = null;
+        synchronized (this) {
+            if (entries.isEmpty()) {
+                connection.addServicesDiscoveredListener(servicesDiscoveredListener);
+            }
+            for (int i = 0; i < characteristicUUIDs.length; i++) {
+                CharacteristicKey key =
+                        new CharacteristicKey(serviceUUIDs[i], characteristicUUIDs[i]);
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    entry = releasing.remove(key);
+                    if (entry == null) {
+                        entry = new Entry(key, indications[i]);
+                    } else {
+                        entry.cancelPending();
+                    }
+                    entries.put(key, entry);
+                    resubscribeOp = null;
+                }
+                entry.count++;
+                if (entry.count == 1) {
+                    subscribed.add(entry);
+                }
+            }
+
+            if (!subscribed.isEmpty() && connected) {
+                if (subscribed.size() == 1) {
+                    op = subscribed.get(0).subscribeOp;
+                } else {
+                    OperationBuilder builder = new OperationBuilder(context).onFinished(pendingObserver);
+                    for (Entry entry : subscribed) {
+                        entry.addSubscribe(builder);
+                    }
+                    op = builder.build(device);
+                }
+                setPending(subscribed, op);
+            }
+        }
+
+        if (!connected) {
+            // everything is subscribed to once the services are discovered
+            connection.connect();
+        } else if (op != null) {
+            op.execute();
+        }
+    }
+
+    /**
+     * Removes a subscriber from the characteristic, unsubscribing on the device if it was the
+     * last one.
+     *
+     * @param serviceUUID        the service of the characteristic
+     * @param characteristicUUID the characteristic
+     */
+    public void release(UUID serviceUUID, UUID characteristicUUID) {
+        release(new UUID[]{serviceUUID}, new UUID[]{characteristicUUID});
+    }
+
+    /**
+     * Removes a subscriber from each of the characteristics. All characteristics that lose their
+     * last subscriber are unsubscribed from on the device in a single operation.
+     *
+     * @param serviceUUIDs        the services of the characteristics
+     * @param characteristicUUIDs the characteristics
+     */
+    public void release(UUID[] serviceUUIDs, UUID[] characteristicUUIDs) {
+        Connection connection = Neatle.getConnection(context, device);
+        boolean connected = connection.isConnected();
+        ArrayList<Entry> unsubscribed = new ArrayList<>();
+        Operation op;
+        synchronized (this) {
+            for (int i = 0; i < characteristicUUIDs.length; i++) {
+                CharacteristicKey key =
+                        new CharacteristicKey(serviceUUIDs[i], characteristicUUIDs[i]);
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    continue;
+                }
+                entry.count--;
+                if (entry.count > 0) {
+                    continue;
+                }
+                entries.remove(key);
+                resubscribeOp = null;
+                entry.cancelPending();
+                unsubscribed.add(entry);
+            }
+            if (unsubscribed.isEmpty()) {
+                return;
+            }
+            if (entries.isEmpty()) {
+                connection.removeServicesDiscoveredListener(servicesDiscoveredListener);
+            }
+            if (!connected) {
+                return;
+            }
+
+            if (unsubscribed.size() == 1) {
+                op = unsubscribed.get(0).unsubscribeOp;
+            } else {
+                OperationBuilder builder = new OperationBuilder(context).onFinished(pendingObserver);
+                for (Entry entry : unsubscribed) {
+                    builder.unsubscribeNotification(
+                            entry.key.serviceUUID, entry.key.characteristicUUID, null);
+                }
+                op = builder.build(device);
+            }
+            for (Entry entry : unsubscribed) {
+                releasing.put(entry.key, entry);
+            }
+            setPending(unsubscribed, op);
+        }
+        op.execute();
+    }
+
+    /**
+     * Returns the number of subscribers of the characteristic.
+     *
+     * @param serviceUUID        the service of the characteristic
+     * @param characteristicUUID the characteristic
+     * @return the number of subscribers
+     */
+    public synchronized int getSubscriberCount(UUID serviceUUID, UUID characteristicUUID) {
+        Entry entry = entries.get(new CharacteristicKey(serviceUUID, characteristicUUID));
+        return entry == null ? 0 : entry.count;
+    }
+
+    private void resubscribeAll() {
+        Operation op;
+        synchronized (this) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            if (resubscribeOp == null) {
+                OperationBuilder builder = new OperationBuilder(context).onFinished(pendingObserver);
+                for (Entry entry : entries.values()) {
+                    entry.addSubscribe(builder);
+                }
+                resubscribeOp = builder.build(device);
+            }
+            op = resubscribeOp;
+            setPending(entries.values(), op);
+        }
+        op.execute();
+    }
+
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private void setPending(Collection<Entry> pendingEntries, Operation op) {
+        Pending pending = new Pending(op, pendingEntries.size());
+        for (Entry entry : pendingEntries) {
+            if (entry.pending != null && entry.pending.op != op) {
+                // replaced, e.g. by a resubscribe after a reconnect
+                entry.cancelPending();
+            }
+            entry.pending = pending;
+        }
+    }
+
+    private synchronized void onPendingFinished(Operation op) {
+        for (Entry entry : entries.values()) {
+            entry.clearPending(op);
+        }
+        Iterator<Entry> it = releasing.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.clearPending(op)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * An operation that subscribes or unsubscribes one or more characteristics.
+     */
+    private static final class Pending {
+        final Operation op;
+        int remaining;
+
+        Pending(Operation op, int remaining) {
+            this.op = op;
+            this.remaining = remaining;
+        }
+    }
+
+    private final class Entry {
+        final CharacteristicKey key;
+        final boolean indication;
+        final Operation subscribeOp;
+        final Operation unsubscribeOp;
+        Pending pending;
+        int count;
+
+        Entry(CharacteristicKey key, boolean indication) {
+            this.key = key;
+            this.indication = indication;
+            this.subscribeOp = addSubscribe(new OperationBuilder(context))
+                    .onFinished(pendingObserver)
+                    .build(device);
+            this.unsubscribeOp = new OperationBuilder(context)
+                    .unsubscribeNotification(key.serviceUUID, key.characteristicUUID, null)
+                    .onFinished(pendingObserver)
+                    .build(device);
+        }
+
+        /**
+         * Cancels the pending operation of this characteristic, once no other characteristic
+         * still needs it.
+         */
+        void cancelPending() {
+            if (pending == null) {
+                return;
+            }
+            pending.remaining--;
+            if (pending.remaining == 0) {
+                pending.op.cancel();
+            }
+            pending = null;
+        }
+
+        @SuppressWarnings("PMD.CompareObjectsWithEquals")
+        boolean clearPending(Operation op) {
+            if (pending == null || pending.op != op) {
+                return false;
+            }
+            pending = null;
+            return true;
+        }
+
+        OperationBuilder addSubscribe(OperationBuilder builder) {
+            return indication
+                    ? builder.subscribeIndication(key.serviceUUID, key.characteristicUUID, null)
+                    : builder.subscribeNotification(key.serviceUUID, key.characteristicUUID, null);
+        }
+    }
+}
@@ -31,15 +31,72 @@ import android.os.Handler;
 import androidx.annotation.VisibleForTesting;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import si.inova.neatle.monitor.Connection;
 import si.inova.neatle.source.AsyncInputSource;
+import si.inova.neatle.source.BufferInputSource;
+import si.inova.neatle.source.ChunkedInputSource;
+import si.inova.neatle.source.CopyableInputSource;
 import si.inova.neatle.source.InputSource;
 import si.inova.neatle.util.NeatleLogger;
 
 class WriteCommand extends SingleCharacteristicsCommand {
 
+    /**
+     * Size of the ATT write request header (opcode and attribute handle), which is subtracted
+     * from the MTU to get the largest payload of a single write.
+     */
+    private static final int ATT_WRITE_HEADER_SIZE = 3;
+    /**
+     * The longest attribute value allowed by ATT, which also bounds chunks at the largest MTUs.
+     */
+    private static final int MAX_ATTRIBUTE_LENGTH = 512;
+
+    /**
+     * Bounds (in milliseconds) of the delay before a write without response, refused because the
+     * Bluetooth stack's buffer was full, is retried.
+     */
+    private static final long MIN_BUSY_BACKOFF = 2;
+    private static final long MAX_BUSY_BACKOFF = 64;
+
+    /**
+     * For how long (in milliseconds) a single chunk is retried before the write fails.
+     */
+    private static final long MAX_BUSY_WAIT = 2000;
+
+    /**
+     * Number of chunk buffers used with a {@link BufferInputSource}. One holds the chunk being
+     * written while the next one is read into the other.
+     */
+    private static final int CHUNK_BUFFER_COUNT = 2;
+
+    /**
+     * How many chunks of an {@link AsyncInputSource} are read ahead of the chunk being written.
+     * Must be a power of two.
+     */
+    private static final int PREFETCH_CHUNKS = 4;
+
+    /**
+     * Marks the end of an async source in the prefetch ring.
+     */
+    private static final byte[] END_OF_SOURCE = new byte[0];
+
+    /**
+     * The executor reading all async sources. Readers never wait for the device, they only run
+     * while there is room in their prefetch ring, so a few threads serve any number of writes.
+     */
+    private static final Executor SHARED_READER_EXECUTOR = createReaderExecutor();
+
     private BluetoothGatt gatt;
     private BluetoothGattCharacteristic writeCharacteristic;
     private final int writeType;
@@ -47,10 +104,19 @@ class WriteCommand extends SingleCharacteristicsCommand {
     private final InputSource buffer;
 
     private final Handler handler = new Handler();
-    private final Object bufferReadLock = new Object();
+    private final Runnable busyRetry = new BusyRetry();
+    private volatile byte[] pendingChunk;
+    private long busyBackoff = MIN_BUSY_BACKOFF;
+    private long busyWaited;
+
+    private ByteBuffer[] chunkBuffers;
+    private int nextChunkBuffer;
+    private int chunkSize;
+
     private final boolean asyncMode;
+    private AsyncTransfer transfer;
     @VisibleForTesting
-    Thread readerThread;
+    Executor readerExecutor = SHARED_READER_EXECUTOR;
 
     WriteCommand(UUID serviceUUID, UUID characteristicsUUID, int writeType, InputSource buffer, CommandObserver observer) {
         super(serviceUUID, characteristicsUUID, observer);
@@ -59,6 +125,17 @@ class WriteCommand extends SingleCharacteristicsCommand {
         this.asyncMode = buffer instanceof AsyncInputSource;
     }
 
+    @Override
+    protected Command duplicate() {
+        InputSource source = buffer instanceof CopyableInputSource ? ((CopyableInputSource) buffer).copy() : null;
+        if (source == null) {
+            return null;
+        }
+        WriteCommand copy = new WriteCommand(serviceUUID, characteristicUUID, writeType, source, getObserver());
+        copy.readerExecutor = readerExecutor;
+        return copy;
+    }
+
     @Override
     protected void start(Connection connection, BluetoothGatt gatt) {
         BluetoothGattService service = gatt.getService(serviceUUID);
@@ -76,14 +153,24 @@ class WriteCommand extends SingleCharacteristicsCommand {
         }
         writeCharacteristic.setWriteType(writeType);
 
+        chunkSize = Math.min(Math.max(connection.getMtu(), Connection.DEFAULT_MTU) - ATT_WRITE_HEADER_SIZE,
+                MAX_ATTRIBUTE_LENGTH);
+        if (buffer instanceof ChunkedInputSource) {
+            ((ChunkedInputSource) buffer).setChunkSize(chunkSize);
+        }
+
         this.gatt = gatt;
         if (asyncMode) {
-            readerThread = new Thread(new AsyncReader());
-            readerThread.start();
+            transfer = new AsyncTransfer();
+            transfer.start();
         } else {
+            if (buffer instanceof BufferInputSource
+                    && (chunkBuffers == null || chunkBuffers[0].capacity() != chunkSize)) {
+                chunkBuffers = createChunkBuffers(CHUNK_BUFFER_COUNT);
+            }
             try {
                 buffer.open();
-                nextChunkReady(buffer.nextChunk());
+                nextChunkReady(readChunk(nextChunkBuffer()));
             } catch (IOException ex) {
                 NeatleLogger.e("Failed to read from the input source", ex);
                 finish(CommandResult.createErrorResult(characteristicUUID, BluetoothGatt.GATT_FAILURE));
@@ -94,12 +181,57 @@ class WriteCommand extends SingleCharacteristicsCommand {
     @Override
     protected void onFinished(CommandResult result) {
         super.onFinished(result);
-        if (readerThread != null) {
-            readerThread.interrupt();
+        pendingChunk = null;
+        handler.removeCallbacks(busyRetry);
+        if (transfer != null) {
+            transfer.cancel();
+            transfer = null;
         }
         NeatleLogger.d("Writing finished [" + characteristicUUID + "]");
     }
 
+    private ByteBuffer[] createChunkBuffers(int count) {
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            buffers[i] = ByteBuffer.allocate(chunkSize);
+        }
+        return buffers;
+    }
+
+    private ByteBuffer nextChunkBuffer() {
+        if (chunkBuffers == null) {
+            return null;
+        }
+        ByteBuffer target = chunkBuffers[nextChunkBuffer];
+        nextChunkBuffer = (nextChunkBuffer + 1) % chunkBuffers.length;
+        return target;
+    }
+
+    /**
+     * Reads the next chunk from the input source. Sources that can fill a buffer are read into
+     * the given, reused chunk buffer, so only the last, shorter chunk of a transfer needs
+     * a new array. The chunk is handed to the characteristic as is, which is safe since
+     * {@link BluetoothGatt#writeCharacteristic(BluetoothGattCharacteristic)} copies the value
+     * before it returns.
+     *
+     * @param target the buffer to read into, or null to let the source allocate the chunk
+     */
+    private byte[] readChunk(ByteBuffer target) throws IOException {
+        if (target == null) {
+            return buffer.nextChunk();
+        }
+
+        target.clear();
+        int read = ((BufferInputSource) buffer).nextChunk(target);
+        if (read < 0) {
+            return null;
+        }
+        if (read == target.capacity()) {
+            return target.array();
+        }
+        return Arrays.copyOf(target.array(), read);
+    }
+
     private void nextChunkReady(byte[] chunk) {
         if (chunk == null) {
             finish(CommandResult.createEmptySuccess(characteristicUUID));
@@ -107,11 +239,38 @@ class WriteCommand extends SingleCharacteristicsCommand {
         }
 
         NeatleLogger.d("Writing " + chunk.length + " bytes onto " + writeCharacteristic.getUuid());
+        pendingChunk = chunk;
+        busyWaited = 0;
+        writePendingChunk();
+    }
+
+    private void writePendingChunk() {
+        byte[] chunk = pendingChunk;
+        if (chunk == null) {
+            //finished while waiting for a retry
+            return;
+        }
+
         writeCharacteristic.setValue(chunk);
-        if (!gatt.writeCharacteristic(writeCharacteristic)) {
-            NeatleLogger.d("Write returned false");
-            finish(CommandResult.createErrorResult(characteristicUUID, BluetoothGatt.GATT_FAILURE));
+        if (gatt.writeCharacteristic(writeCharacteristic)) {
+            if (busyWaited > 0) {
+                //the stack needed less time than our last delay, start lower on the next full buffer
+                busyBackoff = Math.max(MIN_BUSY_BACKOFF, busyBackoff / 2);
+            }
+            return;
         }
+
+        if (writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE && busyWaited < MAX_BUSY_WAIT) {
+            //writes without response are refused while the stack's buffer is full - wait for it to drain
+            NeatleLogger.d("Write buffer full, retrying in " + busyBackoff + "ms");
+            handler.postDelayed(busyRetry, busyBackoff);
+            busyWaited += busyBackoff;
+            busyBackoff = Math.min(MAX_BUSY_BACKOFF, busyBackoff * 2);
+            return;
+        }
+
+        NeatleLogger.d("Write returned false");
+        finish(CommandResult.createErrorResult(characteristicUUID, BluetoothGatt.GATT_FAILURE));
     }
 
     @Override
@@ -123,13 +282,13 @@ class WriteCommand extends SingleCharacteristicsCommand {
         }
 
         if (asyncMode) {
-            synchronized (bufferReadLock) {
-                bufferReadLock.notify();
+            if (transfer != null) {
+                transfer.deliverNextChunk();
             }
         } else {
             byte[] chunk;
             try {
-                chunk = buffer.nextChunk();
+                chunk = readChunk(nextChunkBuffer());
             } catch (IOException ex) {
                 NeatleLogger.e("Failed to get the first chunk", ex);
                 finish(CommandResult.createErrorResult(characteristicUUID, BluetoothGatt.GATT_FAILURE));
@@ -157,10 +316,6 @@ class WriteCommand extends SingleCharacteristicsCommand {
     protected void onError(int error) {
         NeatleLogger.e("Unexpected error while writing [" + error + "]");
         finish(CommandResult.createErrorResult(characteristicUUID, error));
-
-        if (asyncMode && readerThread != null) {
-            readerThread.interrupt();
-        }
     }
 
     @Override
@@ -168,48 +323,172 @@ class WriteCommand extends SingleCharacteristicsCommand {
         return "WriteCommand[async:" + asyncMode + " - " + characteristicUUID + "] on [" + serviceUUID + "]";
     }
 
-    private class AsyncReader implements Runnable {
+    private class BusyRetry implements Runnable {
+        @Override
         public void run() {
-            try {
-                buffer.open();
-            } catch (IOException io) {
-                fail(io);
+            writePendingChunk();
+        }
+    }
+
+    private static Executor createReaderExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "neatle-reader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Reads an {@link AsyncInputSource} on the reader executor into a prefetch ring, while the
+     * chunks are taken from the ring and written on the main thread. The reader is scheduled
+     * whenever there is room in the ring and returns as soon as it is full, so it never waits
+     * for the device, and the device only waits for the reader when the ring is empty.
+     *
+     * <p>The source is opened, read and closed by the reader only.
+     */
+    private class AsyncTransfer implements Runnable {
+        private final ChunkRing ring = new ChunkRing(PREFETCH_CHUNKS);
+        // one more than the ring holds, the extra one is the chunk being written
+        private final ByteBuffer[] buffers =
+                buffer instanceof BufferInputSource ? createChunkBuffers(PREFETCH_CHUNKS + 1) : null;
+        private final AtomicBoolean producerScheduled = new AtomicBoolean();
+        private final AtomicBoolean consumerWaiting = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        // only touched by the reader
+        private int nextBuffer;
+        private boolean opened;
+        private boolean done;
+
+        private final Runnable deliver = new Runnable() {
+            @Override
+            public void run() {
+                if (transfer == AsyncTransfer.this) {
+                    deliverNextChunk();
+                }
+            }
+        };
+
+        void start() {
+            scheduleReader();
+            deliverNextChunk();
+        }
+
+        void cancel() {
+            cancelled = true;
+            // the reader closes the source
+            scheduleReader();
+        }
+
+        /**
+         * Writes the next prefetched chunk, or arranges for it to be written as soon as the
+         * reader puts it in the ring. Called on the main thread.
+         */
+        void deliverNextChunk() {
+            if (cancelled) {
                 return;
             }
-            try {
-                while (!Thread.interrupted()) {
-                    final byte[] chunk = buffer.nextChunk();
-                    handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            nextChunkReady(chunk);
-                        }
-                    });
+            if (ring.isEmpty()) {
+                consumerWaiting.set(true);
+                if (ring.isEmpty() || !consumerWaiting.compareAndSet(true, false)) {
+                    // the reader will post the delivery once it puts the next chunk
+                    return;
+                }
+            }
+
+            byte[] chunk = ring.take();
+            if (chunk == END_OF_SOURCE) {
+                nextChunkReady(null);
+                return;
+            }
+            scheduleReader();
+            nextChunkReady(chunk);
+        }
+
+        private void scheduleReader() {
+            if (producerScheduled.compareAndSet(false, true)) {
+                readerExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                read();
+                producerScheduled.set(false);
+                // re-check, room may have been made after the last look at the ring
+            } while (!done && (cancelled || !ring.isFull()) && producerScheduled.compareAndSet(false, true));
+        }
 
+        private void read() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                close();
+                return;
+            }
+
+            try {
+                if (!opened) {
+                    opened = true;
+                    buffer.open();
+                }
+                while (!ring.isFull() && !cancelled) {
+                    byte[] chunk = readChunk(nextBuffer());
+                    ring.put(chunk == null ? END_OF_SOURCE : chunk);
+                    if (consumerWaiting.compareAndSet(true, false)) {
+                        handler.post(deliver);
+                    }
                     if (chunk == null) {
+                        close();
                         return;
                     }
-
-                    synchronized (bufferReadLock) {
-                        bufferReadLock.wait();
-                    }
                 }
-            } catch (InterruptedException ignored) {
-                // We got interrupted. Error was already handled elsewhere.
-            } catch (IOException ex) {
-                fail(ex);
-            } finally {
-                try {
-                    buffer.close();
-                } catch (IOException closeEx) {
-                    NeatleLogger.e("Failed to close input source", closeEx);
+                if (cancelled) {
+                    close();
                 }
+            } catch (IOException ex) {
+                NeatleLogger.e("Failed to read", ex);
+                close();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (transfer == AsyncTransfer.this) {
+                            finish(CommandResult.createErrorResult(characteristicUUID, BluetoothGatt.GATT_FAILURE));
+                        }
+                    }
+                });
             }
         }
 
-        private void fail(Exception ex) {
-            NeatleLogger.e("Failed to read", ex);
-            finish(CommandResult.createErrorResult(characteristicUUID, BluetoothGatt.GATT_FAILURE));
+        private ByteBuffer nextBuffer() {
+            if (buffers == null) {
+                return null;
+            }
+            ByteBuffer target = buffers[nextBuffer];
+            nextBuffer = (nextBuffer + 1) % buffers.length;
+            return target;
+        }
+
+        private void close() {
+            done = true;
+            if (!opened) {
+                return;
+            }
+            try {
+                buffer.close();
+            } catch (IOException closeEx) {
+                NeatleLogger.e("Failed to close input source", closeEx);
+            }
         }
     }
 }
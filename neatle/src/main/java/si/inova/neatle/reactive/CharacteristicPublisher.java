@@ -0,0 +1,59 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.reactive;
+
+import si.inova.neatle.operation.CharacteristicSubscription;
+import si.inova.neatle.operation.CharacteristicsChangedListener;
+import si.inova.neatle.operation.CommandResult;
+
+/**
+ * Publishes the changes of one characteristic subscription to any number of subscribers.
+ */
+final class CharacteristicPublisher extends SharedPublisher<CommandResult> {
+
+    private final CharacteristicSubscription subscription;
+
+    CharacteristicPublisher(CharacteristicSubscription subscription, int bufferSize,
+                            @CharacteristicSubscription.OverflowPolicy int policy) {
+        super(bufferSize, policy);
+        this.subscription = subscription;
+        subscription.setOnCharacteristicsChangedListener(new CharacteristicsChangedListener() {
+            @Override
+            public void onCharacteristicChanged(CommandResult change) {
+                emit(change);
+            }
+        });
+    }
+
+    @Override
+    protected void connect() {
+        subscription.start();
+    }
+
+    @Override
+    protected void disconnect() {
+        subscription.stop();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.reactive;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import org.reactivestreams.Publisher;
+
+import java.util.UUID;
+
+import si.inova.neatle.Neatle;
+import si.inova.neatle.operation.CharacteristicSubscription;
+import si.inova.neatle.operation.CommandResult;
+import si.inova.neatle.scan.ScanBuilder;
+import si.inova.neatle.scan.ScanEvent;
+
+/**
+ * Reactive Streams views of subscriptions and scanners. Requires the
+ * {@code org.reactivestreams:reactive-streams} library, which NeatLE doesn't include by itself.
+ * <p>
+ * A publisher is shared: all its subscribers use one subscription (or scanner), which is started
+ * with the first subscriber and stopped when the last one cancels. Each subscriber gets items as
+ * it requests them, and has its own buffer for the items it hasn't requested yet. All signals are
+ * emitted on the main thread.
+ */
+public final class NeatlePublishers {
+
+    /**
+     * The buffer size used by the methods without one.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 16;
+
+    private NeatlePublishers() {
+    }
+
+    /**
+     * Creates a publisher of a characteristic's changes, buffering up to
+     * {@link #DEFAULT_BUFFER_SIZE} changes per subscriber and dropping the oldest ones.
+     *
+     * @see #characteristic(Context, BluetoothDevice, UUID, UUID, int, int)
+     */
+    public static Publisher<CommandResult> characteristic(@NonNull Context context, @NonNull BluetoothDevice device,
+                                                          @NonNull UUID serviceUUID, @NonNull UUID characteristicsUUID) {
+        return characteristic(context, device, serviceUUID, characteristicsUUID, DEFAULT_BUFFER_SIZE,
+                CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Creates a publisher of a characteristic's changes.
+     *
+     * @param context             the context
+     * @param device              the device
+     * @param serviceUUID         the service of the characteristic
+     * @param characteristicsUUID the characteristic to subscribe to
+     * @param bufferSize          how many changes to keep per subscriber, until it requests them
+     * @param policy              what to drop when a subscriber's buffer is full; use
+     *                            {@link CharacteristicSubscription.OverflowPolicy#CONFLATE} to
+     *                            always get the latest value
+     * @return the publisher
+     */
+    public static Publisher<CommandResult> characteristic(@NonNull Context context, @NonNull BluetoothDevice device,
+                                                          @NonNull UUID serviceUUID, @NonNull UUID characteristicsUUID,
+                                                          int bufferSize, @CharacteristicSubscription.OverflowPolicy int policy) {
+        return new CharacteristicPublisher(Neatle.createSubscription(context, device, serviceUUID, characteristicsUUID),
+                bufferSize, policy);
+    }
+
+    /**
+     * Creates a publisher of scan events, buffering up to {@link #DEFAULT_BUFFER_SIZE} events per
+     * subscriber and dropping the oldest ones.
+     *
+     * @see #scan(Context, ScanBuilder, int, int)
+     */
+    public static Publisher<ScanEvent> scan(@NonNull Context context, @NonNull ScanBuilder builder) {
+        return scan(context, builder, DEFAULT_BUFFER_SIZE, CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Creates a publisher of scan events. The builder's scan event listener is replaced by the
+     * publisher.
+     *
+     * @param context    the context
+     * @param builder    the builder of the scanner
+     * @param bufferSize how many events to keep per subscriber, until it requests them
+     * @param policy     what to drop when a subscriber's buffer is full
+     * @return the publisher
+     */
+    public static Publisher<ScanEvent> scan(@NonNull Context context, @NonNull ScanBuilder builder,
+                                            int bufferSize, @CharacteristicSubscription.OverflowPolicy int policy) {
+        return new ScanPublisher(context, builder, bufferSize, policy);
+    }
+}
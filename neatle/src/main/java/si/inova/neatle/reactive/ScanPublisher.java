@@ -0,0 +1,63 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.reactive;
+
+import android.content.Context;
+
+import si.inova.neatle.operation.CharacteristicSubscription;
+import si.inova.neatle.scan.ScanBuilder;
+import si.inova.neatle.scan.ScanEvent;
+import si.inova.neatle.scan.Scanner;
+
+/**
+ * Publishes the events of one scanner to any number of subscribers.
+ */
+final class ScanPublisher extends SharedPublisher<ScanEvent> {
+
+    private final Context context;
+    private final Scanner scanner;
+
+    ScanPublisher(Context context, ScanBuilder builder, int bufferSize,
+                  @CharacteristicSubscription.OverflowPolicy int policy) {
+        super(bufferSize, policy);
+        this.context = context.getApplicationContext();
+        this.scanner = builder.setScanEventListener(new Scanner.ScanEventListener() {
+            @Override
+            public void onScanEvent(ScanEvent e) {
+                emit(e);
+            }
+        }).build();
+    }
+
+    @Override
+    protected void connect() {
+        scanner.startScanning(context);
+    }
+
+    @Override
+    protected void disconnect() {
+        scanner.stopScanning();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.reactive;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import si.inova.neatle.operation.CharacteristicSubscription;
+
+/**
+ * A publisher of a hot source, shared by all its subscribers. The source is started when the
+ * first subscriber subscribes and stopped when the last one cancels.
+ * <p>
+ * Every subscriber has its own bounded buffer. Items are delivered as the subscriber requests
+ * them; once its buffer is full, the overflow policy decides which item is dropped. All signals
+ * are emitted on the main thread.
+ */
+abstract class SharedPublisher<T> implements Publisher<T> {
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Downstream> subscribers = new CopyOnWriteArrayList<>();
+    private final int bufferSize;
+    @CharacteristicSubscription.OverflowPolicy
+    private final int policy;
+
+    SharedPublisher(int bufferSize, @CharacteristicSubscription.OverflowPolicy int policy) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        if (policy != CharacteristicSubscription.OverflowPolicy.DROP_OLDEST
+                && policy != CharacteristicSubscription.OverflowPolicy.DROP_NEWEST
+                && policy != CharacteristicSubscription.OverflowPolicy.CONFLATE) {
+            throw new IllegalArgumentException("Unknown overflow policy " + policy);
+        }
+        this.bufferSize = bufferSize;
+        this.policy = policy;
+    }
+
+    /**
+     * Starts the source, called on the main thread when the first subscriber subscribes.
+     */
+    protected abstract void connect();
+
+    /**
+     * Stops the source, called on the main thread when the last subscriber cancels.
+     */
+    protected abstract void disconnect();
+
+    /**
+     * Passes an item from the source to all subscribers.
+     */
+    protected void emit(final T item) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    emit(item);
+                }
+            });
+            return;
+        }
+        for (Downstream subscriber : subscribers) {
+            subscriber.offer(item);
+        }
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must not be null");
+        }
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                Downstream downstream = new Downstream(subscriber);
+                subscriber.onSubscribe(downstream);
+                if (downstream.cancelled) {
+                    return;
+                }
+                subscribers.add(downstream);
+                if (subscribers.size() == 1) {
+                    connect();
+                }
+            }
+        });
+    }
+
+    int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private void remove(Downstream downstream) {
+        if (subscribers.remove(downstream) && subscribers.isEmpty()) {
+            disconnect();
+        }
+    }
+
+    private void runOnMain(Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            handler.post(runnable);
+        }
+    }
+
+    private final class Downstream implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+        // only used on the main thread
+        private final ArrayDeque<T> buffer = new ArrayDeque<>();
+        private long requested;
+        private boolean cancelled;
+        private boolean draining;
+
+        Downstream(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (n <= 0) {
+                        cancel();
+                        subscriber.onError(new IllegalArgumentException("Requested " + n + " items, must be positive"));
+                        return;
+                    }
+                    requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+                    drain();
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        cancelled = true;
+                        buffer.clear();
+                        remove(Downstream.this);
+                    }
+                }
+            });
+        }
+
+        void offer(T item) {
+            if (cancelled) {
+                return;
+            }
+            if (buffer.size() == bufferSize) {
+                if (policy == CharacteristicSubscription.OverflowPolicy.DROP_NEWEST) {
+                    return;
+                } else if (policy == CharacteristicSubscription.OverflowPolicy.CONFLATE) {
+                    buffer.pollLast();
+                } else {
+                    buffer.pollFirst();
+                }
+            }
+            buffer.offerLast(item);
+            drain();
+        }
+
+        private void drain() {
+            // onNext may request more, which must not emit recursively
+            if (draining) {
+                return;
+            }
+            draining = true;
+            try {
+                while (requested > 0 && !cancelled && !buffer.isEmpty()) {
+                    if (requested != Long.MAX_VALUE) {
+                        requested--;
+                    }
+                    subscriber.onNext(buffer.pollFirst());
+                }
+            } finally {
+                draining = false;
+            }
+        }
+    }
+}
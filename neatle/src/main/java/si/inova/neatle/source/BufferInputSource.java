@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An input source that copies its chunks into a buffer supplied by the caller instead of
+ * allocating a new array for each chunk. The write command keeps a few buffers and reuses them
+ * for the whole transfer.
+ * <p>
+ * A source that implements this interface is only read through {@link #nextChunk(ByteBuffer)}
+ * when written, so both {@code nextChunk} methods must provide the same chunks. A subclass of one
+ * of the library's sources that changes its chunks has to override both of them, and
+ * {@link CopyableInputSource#copy()} as well.
+ */
+public interface BufferInputSource extends InputSource {
+
+    /**
+     * Reads the next "chunk" from this stream into the given buffer, starting at its current
+     * position. At most {@code target.remaining()} bytes are read.
+     *
+     * @param target the buffer to read into
+     * @return the number of bytes read, or -1 if there is nothing more to read.
+     * @throws IOException if an IO error occurs
+     */
+    int nextChunk(ByteBuffer target) throws IOException;
+}
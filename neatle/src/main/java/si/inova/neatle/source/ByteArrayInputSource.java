@@ -25,23 +25,36 @@
 package si.inova.neatle.source;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * An input source that provides a byte array.
  */
-public class ByteArrayInputSource implements InputSource {
-
-    private static final int MAX_CHUNK_SIZE = 20;
+public class ByteArrayInputSource implements ChunkedInputSource, BufferInputSource, CopyableInputSource {
 
     private final byte[] data;
 
     protected byte[] buffer;
     protected int offset;
+    protected int chunkSize = DEFAULT_CHUNK_SIZE;
 
     public ByteArrayInputSource(byte[] data) {
         this.data = data;
     }
 
+    @Override
+    public InputSource copy() {
+        return new ByteArrayInputSource(data);
+    }
+
+    @Override
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
     @Override
     public void close() throws IOException {
         buffer = null;
@@ -65,12 +78,30 @@ public class ByteArrayInputSource implements InputSource {
             return null;
         }
 
-        int chunkSize = Math.min(MAX_CHUNK_SIZE, remaining);
+        int size = Math.min(chunkSize, remaining);
 
-        byte[] ret = new byte[chunkSize];
-        System.arraycopy(buffer, offset, ret, 0, chunkSize);
-        offset += chunkSize;
+        byte[] ret = new byte[size];
+        System.arraycopy(buffer, offset, ret, 0, size);
+        offset += size;
 
         return ret;
     }
+
+    @Override
+    public int nextChunk(ByteBuffer target) throws IOException {
+        if (buffer == null) {
+            return -1;
+        }
+
+        int remaining = buffer.length - offset;
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        int size = Math.min(Math.min(chunkSize, remaining), target.remaining());
+        target.put(buffer, offset, size);
+        offset += size;
+
+        return size;
+    }
 }
@@ -31,11 +31,12 @@ import java.util.concurrent.Callable;
 /**
  * A input source that invokes {@link Callable} just before the first chunk is requested.
  */
-public class CalllableInputSource implements InputSource {
+public class CalllableInputSource implements ChunkedInputSource, BufferInputSource, CopyableInputSource {
 
     private final Callable<ByteBuffer> source;
 
     private ByteBuffer byteBuffer;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
 
     public CalllableInputSource(Callable<ByteBuffer> source) {
         this.source = source;
@@ -47,19 +48,25 @@ public class CalllableInputSource implements InputSource {
     }
 
     @Override
-    public byte[] nextChunk() throws IOException {
-        if (byteBuffer == null) {
-            try {
-                byteBuffer = source.call();
-            } catch (Exception e) {
-                throw new IOException("Failed to get bytes from callback");
-            }
+    public InputSource copy() {
+        return new CalllableInputSource(source);
+    }
+
+    @Override
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
         }
-        if (byteBuffer == null || !byteBuffer.hasRemaining()) {
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public byte[] nextChunk() throws IOException {
+        if (!hasRemaining()) {
             return null;
         }
 
-        int remaining = Math.min(byteBuffer.remaining(), 20);
+        int remaining = Math.min(byteBuffer.remaining(), chunkSize);
         byte[] chunk = new byte[remaining];
 
         byteBuffer.get(chunk);
@@ -68,6 +75,31 @@ public class CalllableInputSource implements InputSource {
 
     }
 
+    @Override
+    public int nextChunk(ByteBuffer target) throws IOException {
+        if (!hasRemaining()) {
+            return -1;
+        }
+
+        int size = Math.min(Math.min(byteBuffer.remaining(), chunkSize), target.remaining());
+        int limit = byteBuffer.limit();
+        byteBuffer.limit(byteBuffer.position() + size);
+        target.put(byteBuffer);
+        byteBuffer.limit(limit);
+        return size;
+    }
+
+    private boolean hasRemaining() throws IOException {
+        if (byteBuffer == null) {
+            try {
+                byteBuffer = source.call();
+            } catch (Exception e) {
+                throw new IOException("Failed to get bytes from callback");
+            }
+        }
+        return byteBuffer != null && byteBuffer.hasRemaining();
+    }
+
     @Override
     public void close() throws IOException {
         byteBuffer = null;
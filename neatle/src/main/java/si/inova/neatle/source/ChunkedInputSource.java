@@ -0,0 +1,45 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.source;
+
+/**
+ * An input source whose chunks can be resized to fit the connection they are written to. Before
+ * the source is opened, the write command sets the chunk size to the largest payload a single
+ * write can carry on the current link (the negotiated MTU minus the ATT header).
+ */
+public interface ChunkedInputSource extends InputSource {
+
+    /**
+     * The chunk size used on a link with the default MTU of 23 bytes.
+     */
+    int DEFAULT_CHUNK_SIZE = 20;
+
+    /**
+     * Sets the maximum size of the chunks returned by {@link #nextChunk()}.
+     *
+     * @param chunkSize the maximum chunk size in bytes, must be greater than 0
+     */
+    void setChunkSize(int chunkSize);
+}
@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.source;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An input source that provides the contents of a file, for example a firmware image.
+ *
+ * <p>The file is memory mapped when the source is opened, so the chunks are copied straight from
+ * the page cache into the write buffers and the heap usage does not depend on the size of the
+ * file. The file is read on a background thread.
+ *
+ * <p>An interrupted transfer can be resumed by creating a new source that starts at the offset
+ * where the previous one stopped.
+ */
+public class FileInputSource implements AsyncInputSource, BufferInputSource, ChunkedInputSource, CopyableInputSource {
+
+    private final File file;
+    private final long startOffset;
+
+    private MappedByteBuffer mapped;
+    private long position;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * @param file the file to read
+     */
+    public FileInputSource(File file) {
+        this(file, 0);
+    }
+
+    /**
+     * @param file   the file to read
+     * @param offset the offset in the file of the first byte to read
+     */
+    public FileInputSource(File file, long offset) {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset cannot be negative");
+        }
+        this.file = file;
+        this.startOffset = offset;
+        this.position = offset;
+    }
+
+    @Override
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public InputSource copy() {
+        return new FileInputSource(file, startOffset);
+    }
+
+    @Override
+    public void open() throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (startOffset > size) {
+                throw new IOException("Offset " + startOffset + " is past the end of " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, startOffset, size - startOffset);
+        } finally {
+            in.close();
+        }
+        position = startOffset;
+    }
+
+    @Override
+    public byte[] nextChunk() throws IOException {
+        if (mapped == null || !mapped.hasRemaining()) {
+            return null;
+        }
+
+        byte[] chunk = new byte[Math.min(chunkSize, mapped.remaining())];
+        mapped.get(chunk);
+        position += chunk.length;
+        return chunk;
+    }
+
+    @Override
+    public int nextChunk(ByteBuffer target) throws IOException {
+        if (mapped == null || !mapped.hasRemaining()) {
+            return -1;
+        }
+
+        int size = Math.min(Math.min(chunkSize, mapped.remaining()), target.remaining());
+        int limit = mapped.limit();
+        mapped.limit(mapped.position() + size);
+        target.put(mapped);
+        mapped.limit(limit);
+        position += size;
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+    }
+
+    /**
+     * Returns the offset in the file of the next byte this source will read. Chunks are read
+     * ahead of the writes, so this is only an upper bound of what was written to the device; to
+     * resume a failed transfer, start the new source at the offset the device acknowledged.
+     *
+     * @return the offset of the next byte to read
+     */
+    public long getPosition() {
+        return position;
+    }
+}
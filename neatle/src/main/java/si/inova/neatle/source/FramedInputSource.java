@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import si.inova.neatle.framing.Framing;
+
+/**
+ * An input source that writes messages as frames of a byte stream. The frames are written back
+ * to back, so small messages share chunks and every chunk but the last is as large as the
+ * connection allows.
+ */
+public class FramedInputSource implements ChunkedInputSource, BufferInputSource, CopyableInputSource {
+
+    private final Framing framing;
+    private final List<byte[]> messages;
+
+    private byte[] encoded;
+    private int length;
+    private int offset;
+    private boolean opened;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    public FramedInputSource(Framing framing, byte[]... messages) {
+        this(framing, Arrays.asList(messages));
+    }
+
+    public FramedInputSource(Framing framing, List<byte[]> messages) {
+        this.framing = framing;
+        this.messages = new ArrayList<>(messages);
+    }
+
+    @Override
+    public InputSource copy() {
+        return new FramedInputSource(framing, messages);
+    }
+
+    @Override
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void open() throws IOException {
+        int maxLength = 0;
+        for (byte[] message : messages) {
+            maxLength += framing.getMaxEncodedLength(message.length);
+        }
+        // the buffer is kept, so executing the write again doesn't allocate
+        if (encoded == null || encoded.length < maxLength) {
+            encoded = new byte[maxLength];
+        }
+        length = 0;
+        for (byte[] message : messages) {
+            length += framing.encode(message, 0, message.length, encoded, length);
+        }
+        offset = 0;
+        opened = true;
+    }
+
+    @Override
+    public byte[] nextChunk() throws IOException {
+        if (!opened || offset >= length) {
+            return null;
+        }
+        int size = Math.min(chunkSize, length - offset);
+        byte[] chunk = Arrays.copyOfRange(encoded, offset, offset + size);
+        offset += size;
+        return chunk;
+    }
+
+    @Override
+    public int nextChunk(ByteBuffer target) throws IOException {
+        if (!opened || offset >= length) {
+            return -1;
+        }
+        int size = Math.min(Math.min(chunkSize, length - offset), target.remaining());
+        target.put(encoded, offset, size);
+        offset += size;
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        opened = false;
+        offset = 0;
+    }
+}
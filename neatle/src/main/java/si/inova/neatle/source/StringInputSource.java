@@ -38,6 +38,11 @@ public class StringInputSource extends ByteArrayInputSource {
         this.data = data;
     }
 
+    @Override
+    public InputSource copy() {
+        return new StringInputSource(data);
+    }
+
     @Override
     public void open() throws IOException {
         if (data == null || data.length() == 0) {
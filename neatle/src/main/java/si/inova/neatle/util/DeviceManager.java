@@ -33,12 +33,14 @@ import androidx.annotation.RestrictTo;
 import java.util.HashMap;
 
 import si.inova.neatle.Device;
+import si.inova.neatle.operation.SubscriptionManager;
 
 @RestrictTo(RestrictTo.Scope.LIBRARY)
 public class DeviceManager {
 
     private final Context context;
     private final HashMap<String, Device> devices = new HashMap<>();
+    private final HashMap<String, SubscriptionManager> subscriptionManagers = new HashMap<>();
 
     // Using application context, so no chance for leak.
     @SuppressLint("StaticFieldLeak")
@@ -66,13 +68,24 @@ public class DeviceManager {
         return dev;
     }
 
+    public synchronized SubscriptionManager getSubscriptionManager(BluetoothDevice device) {
+        SubscriptionManager manager = subscriptionManagers.get(device.getAddress());
+        if (manager == null) {
+            manager = new SubscriptionManager(context, device);
+            subscriptionManagers.put(device.getAddress(), manager);
+        }
+        return manager;
+    }
+
     @RestrictTo(RestrictTo.Scope.TESTS)
-    public void putDevice(Device device, String address) {
+    public synchronized void putDevice(Device device, String address) {
         devices.put(address, device);
+        subscriptionManagers.remove(address);
     }
 
     @RestrictTo(RestrictTo.Scope.TESTS)
-    public void clearDevices() {
+    public synchronized void clearDevices() {
         devices.clear();
+        subscriptionManagers.clear();
     }
 }
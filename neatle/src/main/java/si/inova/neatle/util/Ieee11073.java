@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.util;
+
+import androidx.annotation.RestrictTo;
+
+/**
+ * Conversions between doubles and the IEEE-11073 16-bit SFLOAT and 32-bit FLOAT types used by
+ * Bluetooth SIG health profiles.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class Ieee11073 {
+
+    private static final int SFLOAT_NAN = 0x07FF;
+    private static final int SFLOAT_NRES = 0x0800;
+    private static final int SFLOAT_RESERVED = 0x0801;
+    private static final int SFLOAT_POSITIVE_INFINITY = 0x07FE;
+    private static final int SFLOAT_NEGATIVE_INFINITY = 0x0802;
+    private static final int SFLOAT_MAX_MANTISSA = 0x07FD;
+
+    private static final int FLOAT_NAN = 0x007FFFFF;
+    private static final int FLOAT_NRES = 0x00800000;
+    private static final int FLOAT_RESERVED = 0x00800001;
+    private static final int FLOAT_POSITIVE_INFINITY = 0x007FFFFE;
+    private static final int FLOAT_NEGATIVE_INFINITY = 0x00800002;
+    private static final int FLOAT_MAX_MANTISSA = 0x007FFFFD;
+
+    // mantissa 0 is always encoded with exponent 0, so this is never a valid encoding
+    private static final int NOT_REPRESENTABLE = Integer.MIN_VALUE;
+
+    private Ieee11073() {
+    }
+
+    /**
+     * Converts a 16-bit SFLOAT (4-bit exponent, 12-bit mantissa) to a double. NaN, NRes and the
+     * reserved value are returned as {@link Double#NaN}.
+     */
+    public static double sfloatToDouble(int raw) {
+        switch (raw & 0xFFFF) {
+            case SFLOAT_NAN:
+            case SFLOAT_NRES:
+            case SFLOAT_RESERVED:
+                return Double.NaN;
+            case SFLOAT_POSITIVE_INFINITY:
+                return Double.POSITIVE_INFINITY;
+            case SFLOAT_NEGATIVE_INFINITY:
+                return Double.NEGATIVE_INFINITY;
+        }
+        int mantissa = (raw << 20) >> 20;
+        int exponent = (raw << 16) >> 28;
+        return scale(mantissa, exponent);
+    }
+
+    /**
+     * Converts a 32-bit FLOAT (8-bit exponent, 24-bit mantissa) to a double. NaN, NRes and the
+     * reserved value are returned as {@link Double#NaN}.
+     */
+    public static double floatToDouble(int raw) {
+        switch (raw) {
+            case FLOAT_NAN:
+            case FLOAT_NRES:
+            case FLOAT_RESERVED:
+                return Double.NaN;
+            case FLOAT_POSITIVE_INFINITY:
+                return Double.POSITIVE_INFINITY;
+            case FLOAT_NEGATIVE_INFINITY:
+                return Double.NEGATIVE_INFINITY;
+        }
+        int mantissa = (raw << 8) >> 8;
+        int exponent = raw >> 24;
+        return scale(mantissa, exponent);
+    }
+
+    /**
+     * Converts a double to a 16-bit SFLOAT, keeping as many decimal digits as the mantissa allows.
+     * Values too large for the type are encoded as +/-INFINITY.
+     */
+    public static int doubleToSfloat(double value) {
+        if (Double.isNaN(value)) {
+            return SFLOAT_NAN;
+        }
+        int encoded = encode(value, -8, 7, SFLOAT_MAX_MANTISSA, 12);
+        if (encoded == NOT_REPRESENTABLE) {
+            return value > 0 ? SFLOAT_POSITIVE_INFINITY : SFLOAT_NEGATIVE_INFINITY;
+        }
+        return encoded & 0xFFFF;
+    }
+
+    /**
+     * Converts a double to a 32-bit FLOAT, keeping as many decimal digits as the mantissa allows.
+     * Values too large for the type are encoded as +/-INFINITY.
+     */
+    public static int doubleToFloat(double value) {
+        if (Double.isNaN(value)) {
+            return FLOAT_NAN;
+        }
+        int encoded = encode(value, -128, 127, FLOAT_MAX_MANTISSA, 24);
+        if (encoded == NOT_REPRESENTABLE) {
+            return value > 0 ? FLOAT_POSITIVE_INFINITY : FLOAT_NEGATIVE_INFINITY;
+        }
+        return encoded;
+    }
+
+    private static int encode(double value, int minExponent, int maxExponent, int maxMantissa, int mantissaBits) {
+        if (Double.isInfinite(value)) {
+            return NOT_REPRESENTABLE;
+        }
+        for (int exponent = minExponent; exponent <= maxExponent; exponent++) {
+            long mantissa = Math.round(exponent < 0
+                    ? value * Math.pow(10, -exponent)
+                    : value / Math.pow(10, exponent));
+            if (Math.abs(mantissa) > maxMantissa) {
+                continue;
+            }
+
+            // drop trailing zeros, so that e.g. 1.0 is encoded as 1e0 and not as 10000000e-7
+            while (mantissa != 0 && mantissa % 10 == 0 && exponent < maxExponent) {
+                mantissa /= 10;
+                exponent++;
+            }
+            if (mantissa == 0) {
+                exponent = 0;
+            }
+            int mantissaMask = (1 << mantissaBits) - 1;
+            return (exponent << mantissaBits) | ((int) mantissa & mantissaMask);
+        }
+        return NOT_REPRESENTABLE;
+    }
+
+    private static double scale(int mantissa, int exponent) {
+        // dividing by an exact power of ten rounds better than multiplying by an inexact one
+        if (exponent < 0) {
+            return mantissa / Math.pow(10, -exponent);
+        }
+        return mantissa * Math.pow(10, exponent);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.content.Context;
+import android.os.Build;
+import android.os.Looper;
+import android.os.SystemClock;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import si.inova.neatle.operation.ExpirableCallback;
+import si.inova.neatle.operation.Operation;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class DeviceQueueTest {
+
+    @Mock
+    private BluetoothDevice btDevice;
+    @Mock
+    private BluetoothAdapter adapter;
+    @Mock
+    private BluetoothGatt gatt;
+
+    private Device device;
+    private BluetoothGattCallback gattCallback;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        ArgumentCaptor<BluetoothGattCallback> deviceCallback = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        when(btDevice.connectGatt(Mockito.<Context>any(), Mockito.anyBoolean(), deviceCallback.capture(), Mockito.anyInt()))
+                .thenReturn(gatt);
+        when(gatt.discoverServices()).thenReturn(true);
+
+        device = new Device(RuntimeEnvironment.application, btDevice, adapter);
+        device.connectWithGatt();
+        gattCallback = deviceCallback.getValue();
+        // connected, but services are not discovered yet, so operations wait in the queue
+        gattCallback.onConnectionStateChange(gatt, BluetoothGatt.GATT_SUCCESS, BluetoothGatt.STATE_CONNECTED);
+    }
+
+    @Test
+    public void testExpiredOperationsAreDropped() {
+        BluetoothGattCallback stale = Mockito.mock(BluetoothGattCallback.class,
+                Mockito.withSettings().extraInterfaces(ExpirableCallback.class));
+        when(((ExpirableCallback) stale).getStartDeadline()).thenReturn(SystemClock.elapsedRealtime() + 1000);
+        BluetoothGattCallback fresh = Mockito.mock(BluetoothGattCallback.class);
+
+        device.execute(stale, Operation.Priority.NORMAL);
+        device.execute(fresh, Operation.Priority.NORMAL);
+        shadowOf(Looper.getMainLooper()).idleFor(1000, TimeUnit.MILLISECONDS);
+
+        QueueStatistics statistics = device.getQueueStatistics();
+        assertEquals(2, statistics.getQueuedCount());
+        assertEquals(1000, statistics.getOldestQueueAge());
+
+        gattCallback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+
+        verify((ExpirableCallback) stale).onExpired();
+        verify(stale, never()).onServicesDiscovered(Mockito.<BluetoothGatt>any(), Mockito.anyInt());
+        verify(fresh).onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+
+        statistics = device.getQueueStatistics();
+        assertEquals(0, statistics.getQueuedCount());
+        assertEquals(1, statistics.getExpiredCount());
+        assertEquals(1, statistics.getStartedCount());
+        assertEquals(1000, statistics.getMaxQueueAge());
+        assertEquals(1000.0, statistics.getMeanQueueAge(), 0.0);
+    }
+
+    @Test
+    public void testOperationsWithinDeadlineStart() {
+        BluetoothGattCallback callback = Mockito.mock(BluetoothGattCallback.class,
+                Mockito.withSettings().extraInterfaces(ExpirableCallback.class));
+        when(((ExpirableCallback) callback).getStartDeadline()).thenReturn(SystemClock.elapsedRealtime() + 1000);
+
+        device.execute(callback, Operation.Priority.NORMAL);
+        shadowOf(Looper.getMainLooper()).idleFor(999, TimeUnit.MILLISECONDS);
+        gattCallback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+
+        verify((ExpirableCallback) callback, never()).onExpired();
+        verify(callback).onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+        assertEquals(0, device.getQueueStatistics().getExpiredCount());
+    }
+}
@@ -4,18 +4,30 @@ import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
 import android.content.Context;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import si.inova.neatle.operation.CharacteristicsChangedListener;
+import si.inova.neatle.operation.CommandResult;
+import si.inova.neatle.operation.Operation;
+import si.inova.neatle.operation.RawCharacteristicListener;
+
 public class DeviceTest {
     @Mock
     private Context context;
@@ -119,4 +131,148 @@ public class DeviceTest {
         // This test checks for the exception. If we got so far, test passed
         Assert.assertTrue(true);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void rawListenerIsCalledOnCallbackThread() {
+        UUID characteristicUUID = Neatle.createUUID(1);
+        byte[] value = new byte[]{1, 2, 3};
+        BluetoothGattCallback gattCallback = connectAndCaptureCallback();
+
+        RawCharacteristicListener listener = Mockito.mock(RawCharacteristicListener.class);
+        device.addRawCharacteristicListener(characteristicUUID, listener);
+        Assert.assertEquals(1, device.getCharacteristicsChangedListenerCount(characteristicUUID));
+
+        gattCallback.onCharacteristicChanged(Mockito.mock(BluetoothGatt.class), createCharacteristic(characteristicUUID, value));
+        Mockito.verify(listener).onCharacteristicChanged(Mockito.eq(characteristicUUID), Mockito.same(value), Mockito.anyLong());
+
+        device.removeRawCharacteristicListener(characteristicUUID, listener);
+        Assert.assertEquals(0, device.getCharacteristicsChangedListenerCount(characteristicUUID));
+
+        gattCallback.onCharacteristicChanged(Mockito.mock(BluetoothGatt.class), createCharacteristic(characteristicUUID, value));
+        Mockito.verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    public void changeListenersAreNotifiedOnExecutor() {
+        UUID characteristicUUID = Neatle.createUUID(1);
+        byte[] value = new byte[]{1, 2, 3};
+        BluetoothGattCallback gattCallback = connectAndCaptureCallback();
+
+        final List<Runnable> tasks = new ArrayList<>();
+        device.setNotificationExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        CharacteristicsChangedListener listener = Mockito.mock(CharacteristicsChangedListener.class);
+        device.addCharacteristicsChangedListener(characteristicUUID, listener);
+
+        gattCallback.onCharacteristicChanged(Mockito.mock(BluetoothGatt.class), createCharacteristic(characteristicUUID, value));
+        Assert.assertEquals(1, tasks.size());
+        Mockito.verifyNoInteractions(listener);
+
+        tasks.get(0).run();
+        ArgumentCaptor<CommandResult> result = ArgumentCaptor.forClass(CommandResult.class);
+        Mockito.verify(listener).onCharacteristicChanged(result.capture());
+        Assert.assertEquals(characteristicUUID, result.getValue().getUUID());
+        Assert.assertArrayEquals(value, result.getValue().getValue());
+    }
+
+    @Test
+    public void noDispatchWithoutListeners() {
+        UUID characteristicUUID = Neatle.createUUID(1);
+        BluetoothGattCallback gattCallback = connectAndCaptureCallback();
+
+        final List<Runnable> tasks = new ArrayList<>();
+        device.setNotificationExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        gattCallback.onCharacteristicChanged(Mockito.mock(BluetoothGatt.class), createCharacteristic(characteristicUUID, new byte[]{1}));
+        Assert.assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void higherPriorityRunsBetweenCommands() {
+        BluetoothGattCallback gattCallback = connectAndCaptureCallback();
+        BluetoothGatt gatt = Mockito.mock(BluetoothGatt.class);
+        Mockito.when(gatt.discoverServices()).thenReturn(true);
+        gattCallback.onConnectionStateChange(gatt, BluetoothGatt.GATT_SUCCESS, BluetoothGatt.STATE_CONNECTED);
+        gattCallback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+
+        BluetoothGattCallback running = Mockito.mock(BluetoothGattCallback.class);
+        BluetoothGattCallback bulk = Mockito.mock(BluetoothGattCallback.class);
+        BluetoothGattCallback normal = Mockito.mock(BluetoothGattCallback.class);
+        BluetoothGattCallback interactive = Mockito.mock(BluetoothGattCallback.class);
+        InOrder inOrder = Mockito.inOrder(running, bulk, normal, interactive);
+
+        device.execute(running, Operation.Priority.NORMAL);
+        device.execute(bulk, Operation.Priority.BULK);
+        device.execute(normal, Operation.Priority.NORMAL);
+        Assert.assertFalse(device.yieldToHigherPriority(running));
+
+        device.execute(interactive, Operation.Priority.INTERACTIVE);
+        Assert.assertTrue(device.yieldToHigherPriority(running));
+
+        // the handler doesn't run in this test, resume with the next discovery instead
+        gattCallback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+        device.executeFinished(interactive);
+        gattCallback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+        device.executeFinished(running);
+        gattCallback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+        device.executeFinished(normal);
+        gattCallback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+
+        inOrder.verify(running).onServicesDiscovered(Mockito.<BluetoothGatt>any(), Mockito.eq(BluetoothGatt.GATT_SUCCESS));
+        inOrder.verify(interactive).onServicesDiscovered(Mockito.<BluetoothGatt>any(), Mockito.eq(BluetoothGatt.GATT_SUCCESS));
+        inOrder.verify(running).onServicesDiscovered(Mockito.<BluetoothGatt>any(), Mockito.eq(BluetoothGatt.GATT_SUCCESS));
+        inOrder.verify(normal).onServicesDiscovered(Mockito.<BluetoothGatt>any(), Mockito.eq(BluetoothGatt.GATT_SUCCESS));
+        inOrder.verify(bulk).onServicesDiscovered(Mockito.<BluetoothGatt>any(), Mockito.eq(BluetoothGatt.GATT_SUCCESS));
+    }
+
+    @Test
+    public void recyclesGattAfterRepeatedTimeouts() {
+        BluetoothGatt gatt = Mockito.mock(BluetoothGatt.class);
+        Mockito.when(btDevice.connectGatt(
+                Mockito.<Context>any(),
+                Mockito.anyBoolean(),
+                Mockito.<BluetoothGattCallback>any())
+        ).thenReturn(gatt);
+        device.connectWithGatt();
+
+        device.commandFinished(true);
+        device.commandFinished(true);
+        device.commandFinished(false);
+        device.commandFinished(true);
+        device.commandFinished(true);
+        Mockito.verify(gatt, Mockito.never()).close();
+
+        device.commandFinished(true);
+        Mockito.verify(gatt).close();
+        Assert.assertFalse(device.isConnected());
+        Assert.assertFalse(device.isConnecting());
+    }
+
+    private BluetoothGattCallback connectAndCaptureCallback() {
+        ArgumentCaptor<BluetoothGattCallback> deviceCallback = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        Mockito.when(btDevice.connectGatt(
+                Mockito.<Context>any(),
+                Mockito.anyBoolean(),
+                deviceCallback.capture())
+        ).thenReturn(Mockito.mock(BluetoothGatt.class));
+
+        device.connectWithGatt();
+        return deviceCallback.getValue();
+    }
+
+    private static BluetoothGattCharacteristic createCharacteristic(UUID uuid, byte[] value) {
+        BluetoothGattCharacteristic characteristic = Mockito.mock(BluetoothGattCharacteristic.class);
+        Mockito.when(characteristic.getUuid()).thenReturn(uuid);
+        Mockito.when(characteristic.getValue()).thenReturn(value);
+        return characteristic;
+    }
+}
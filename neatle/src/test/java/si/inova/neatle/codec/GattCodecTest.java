@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.codec;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.Build;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+import si.inova.neatle.operation.CommandResult;
+import si.inova.neatle.source.InputSource;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class GattCodecTest {
+
+    private static final byte[] ENCODED = new byte[]{
+            0x15, 0x12, // flags: contact = 1, energy = 0, mode = 5, reserved = 0, rr = 0x12
+            0x34, 0x12, // heart rate, uint16
+            (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, // offset, sint24 = -2
+            0x01, 0x02, // sequence, big endian uint16
+            0x6D, (byte) 0xF1, // temperature, sfloat 36.5
+            0x00, 0x00, (byte) 0xC0, 0x3F // ratio, float32 1.5
+    };
+
+    @Test
+    public void testDecode() {
+        Measurement measurement = new GattCodecTest_MeasurementCodec().decode(createResult(ENCODED));
+
+        assertTrue(measurement.contact);
+        assertFalse(measurement.energy);
+        assertEquals(5, measurement.mode);
+        assertEquals(0x12, measurement.rr);
+        assertEquals(0x1234, measurement.heartRate);
+        assertEquals(-2, measurement.offset);
+        assertEquals(0x0102, measurement.sequence);
+        assertEquals(36.5f, measurement.temperature);
+        assertEquals(1.5, measurement.ratio);
+    }
+
+    @Test
+    public void testDecodeReusesTarget() {
+        GattCodecTest_MeasurementCodec codec = new GattCodecTest_MeasurementCodec();
+        byte[] data = new byte[ENCODED.length + 2];
+        System.arraycopy(ENCODED, 0, data, 2, ENCODED.length);
+
+        Measurement measurement = new Measurement();
+        codec.decode(data, 2, measurement);
+        assertEquals(0x1234, measurement.heartRate);
+
+        codec.decode(createResult(new byte[ENCODED.length]), measurement);
+        assertEquals(0, measurement.heartRate);
+        assertFalse(measurement.contact);
+    }
+
+    @Test
+    public void testEncode() {
+        Measurement measurement = new Measurement();
+        measurement.contact = true;
+        measurement.mode = 5;
+        measurement.rr = 0x12;
+        measurement.heartRate = 0x1234;
+        measurement.offset = -2;
+        measurement.sequence = 0x0102;
+        measurement.temperature = 36.5f;
+        measurement.ratio = 1.5;
+
+        GattCodecTest_MeasurementCodec codec = new GattCodecTest_MeasurementCodec();
+        assertEquals(ENCODED.length, codec.getSize());
+        assertArrayEquals(ENCODED, codec.encode(measurement));
+    }
+
+    @Test
+    public void testToInputSource() throws IOException {
+        GattCodecTest_MeasurementCodec codec = new GattCodecTest_MeasurementCodec();
+        InputSource source = codec.toInputSource(codec.decode(createResult(ENCODED)));
+
+        source.open();
+        assertArrayEquals(ENCODED, source.nextChunk());
+        assertNull(source.nextChunk());
+        source.close();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testDecodeTooShort() {
+        new GattCodecTest_MeasurementCodec().decode(createResult(new byte[4]));
+    }
+
+    private static CommandResult createResult(byte[] value) {
+        BluetoothGattCharacteristic characteristic = Mockito.mock(BluetoothGattCharacteristic.class);
+        Mockito.when(characteristic.getValue()).thenReturn(value);
+        return CommandResult.createCharacteristicChanged(characteristic);
+    }
+
+    @GattStruct
+    static class Measurement {
+        @GattField(order = 0, format = CommandResult.FORMAT_UINT16, bits = 1)
+        boolean contact;
+
+        @GattField(order = 1, format = CommandResult.FORMAT_UINT16, bits = 1)
+        boolean energy;
+
+        @GattField(order = 2, format = CommandResult.FORMAT_UINT16, bits = 3)
+        int mode;
+
+        @GattField(order = 3, format = CommandResult.FORMAT_UINT16, bits = 3)
+        int reserved;
+
+        @GattField(order = 4, format = CommandResult.FORMAT_UINT16, bits = 8)
+        int rr;
+
+        @GattField(order = 5, format = CommandResult.FORMAT_UINT16)
+        int heartRate;
+
+        @GattField(order = 6, format = CommandResult.FORMAT_SINT24)
+        int offset;
+
+        @GattField(order = 7, format = CommandResult.FORMAT_UINT16, bigEndian = true)
+        short sequence;
+
+        @GattField(order = 8, format = CommandResult.FORMAT_SFLOAT)
+        float temperature;
+
+        @GattField(order = 9, format = CommandResult.FORMAT_FLOAT32)
+        double ratio;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.framing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static org.junit.Assert.assertArrayEquals;
+
+public class FramingTest {
+
+    private static final byte[][] MESSAGES = {
+            {1, 2, 3},
+            {},
+            {0, 0, 0},
+            {(byte) 0xC0, (byte) 0xDB, 0x11, 0x00, (byte) 0xDC},
+            filled(254, (byte) 7),
+            filled(300, (byte) 9),
+            {42}
+    };
+
+    @Test
+    public void testLengthPrefixRoundTrip() {
+        assertRoundTrip(new LengthPrefixFraming(1), true, 255);
+        assertRoundTrip(new LengthPrefixFraming(2), true, 512);
+        assertRoundTrip(new LengthPrefixFraming(4), true, 512);
+    }
+
+    @Test
+    public void testCobsRoundTrip() {
+        assertRoundTrip(new CobsFraming(), true, 512);
+    }
+
+    @Test
+    public void testSlipRoundTrip() {
+        // SLIP can't carry empty messages
+        assertRoundTrip(new SlipFraming(), false, 512);
+    }
+
+    @Test
+    public void testCobsEncoding() {
+        CobsFraming framing = new CobsFraming();
+        byte[] dst = new byte[framing.getMaxEncodedLength(4)];
+        int length = framing.encode(new byte[]{0x11, 0x22, 0x00, 0x33}, 0, 4, dst, 0);
+        assertArrayEquals(new byte[]{3, 0x11, 0x22, 2, 0x33, 0}, Arrays.copyOf(dst, length));
+    }
+
+    @Test
+    public void testSlipEncoding() {
+        SlipFraming framing = new SlipFraming();
+        byte[] dst = new byte[framing.getMaxEncodedLength(3)];
+        int length = framing.encode(new byte[]{1, (byte) 0xC0, (byte) 0xDB}, 0, 3, dst, 0);
+        assertArrayEquals(new byte[]{1, (byte) 0xDB, (byte) 0xDC, (byte) 0xDB, (byte) 0xDD, (byte) 0xC0}, Arrays.copyOf(dst, length));
+    }
+
+    @Test
+    public void testLengthPrefixWholeFramesAreNotCopied() {
+        final List<byte[]> buffers = new ArrayList<>();
+        Deframer deframer = new LengthPrefixFraming(1).createDeframer(16, new FrameListener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                buffers.add(buffer);
+            }
+        });
+
+        byte[] notification = {2, 1, 2, 1, 3};
+        deframer.feed(notification, 0, notification.length);
+        assertEquals(2, buffers.size());
+        assertSame(notification, buffers.get(0));
+        assertSame(notification, buffers.get(1));
+    }
+
+    @Test
+    public void testTooLongFramesAreDropped() {
+        Framing[] framings = {new LengthPrefixFraming(2), new CobsFraming(), new SlipFraming()};
+        for (Framing framing : framings) {
+            byte[] stream = encode(framing, new byte[][]{filled(20, (byte) 1), {5, 6}});
+            final List<byte[]> frames = new ArrayList<>();
+            Deframer deframer = framing.createDeframer(10, collectInto(frames));
+            deframer.feed(stream, 0, stream.length);
+
+            assertEquals(1, frames.size());
+            assertArrayEquals(new byte[]{5, 6}, frames.get(0));
+            assertEquals(1, deframer.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void testMalformedFramesAreDropped() {
+        final List<byte[]> frames = new ArrayList<>();
+        Deframer cobs = new CobsFraming().createDeframer(10, collectInto(frames));
+        // the block says 4 bytes follow, but the frame ends after 2
+        cobs.feed(new byte[]{5, 1, 2, 0, 2, 9, 0}, 0, 7);
+        assertEquals(1, frames.size());
+        assertArrayEquals(new byte[]{9}, frames.get(0));
+        assertEquals(1, cobs.getDroppedCount());
+
+        frames.clear();
+        Deframer slip = new SlipFraming().createDeframer(10, collectInto(frames));
+        slip.feed(new byte[]{1, (byte) 0xDB, 2, (byte) 0xC0, 3, (byte) 0xC0}, 0, 6);
+        assertEquals(1, frames.size());
+        assertArrayEquals(new byte[]{3}, frames.get(0));
+        assertEquals(1, slip.getDroppedCount());
+    }
+
+    private static void assertRoundTrip(Framing framing, boolean emptyMessages, int maxLength) {
+        List<byte[]> expected = new ArrayList<>();
+        for (byte[] message : MESSAGES) {
+            if ((emptyMessages || message.length > 0) && message.length <= maxLength) {
+                expected.add(message);
+            }
+        }
+        byte[] stream = encode(framing, expected.toArray(new byte[0][]));
+
+        // split the stream into notifications of every size
+        for (int fragment = 1; fragment <= stream.length; fragment++) {
+            List<byte[]> frames = new ArrayList<>();
+            Deframer deframer = framing.createDeframer(512, collectInto(frames));
+            for (int i = 0; i < stream.length; i += fragment) {
+                deframer.feed(stream, i, Math.min(fragment, stream.length - i));
+            }
+
+            assertEquals(expected.size(), frames.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i), frames.get(i));
+            }
+            assertEquals(0, deframer.getDroppedCount());
+        }
+    }
+
+    private static byte[] encode(Framing framing, byte[][] messages) {
+        int maxLength = 0;
+        for (byte[] message : messages) {
+            maxLength += framing.getMaxEncodedLength(message.length);
+        }
+        byte[] stream = new byte[maxLength];
+        int length = 0;
+        for (byte[] message : messages) {
+            length += framing.encode(message, 0, message.length, stream, length);
+        }
+        return Arrays.copyOf(stream, length);
+    }
+
+    private static FrameListener collectInto(final List<byte[]> frames) {
+        return new FrameListener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                frames.add(Arrays.copyOfRange(buffer, offset, offset + length));
+            }
+        };
+    }
+
+    private static byte[] filled(int length, byte value) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, value);
+        return data;
+    }
+}
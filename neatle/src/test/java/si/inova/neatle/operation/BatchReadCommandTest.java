@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import si.inova.neatle.Device;
+import si.inova.neatle.Neatle;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class BatchReadCommandTest {
+
+    private UUID serviceUUID = Neatle.createUUID(1);
+    private UUID otherServiceUUID = Neatle.createUUID(2);
+
+    @Mock
+    private BatchReadObserver batchObserver;
+    @Mock
+    private CommandObserver operationCommandObserver;
+    @Mock
+    private BluetoothGatt gatt;
+    @Mock
+    private Device device;
+    @Mock
+    private BluetoothGattService service;
+    @Mock
+    private BluetoothGattService otherService;
+
+    private BluetoothGattCharacteristic first;
+    private BluetoothGattCharacteristic second;
+    private BluetoothGattCharacteristic notReadable;
+    private BluetoothGattCharacteristic other;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        first = createCharacteristic(10, BluetoothGattCharacteristic.PROPERTY_READ);
+        second = createCharacteristic(11, BluetoothGattCharacteristic.PROPERTY_READ | BluetoothGattCharacteristic.PROPERTY_NOTIFY);
+        notReadable = createCharacteristic(12, BluetoothGattCharacteristic.PROPERTY_WRITE);
+        other = createCharacteristic(13, BluetoothGattCharacteristic.PROPERTY_READ);
+
+        when(service.getUuid()).thenReturn(serviceUUID);
+        when(service.getCharacteristics()).thenReturn(Arrays.asList(first, second, notReadable));
+        when(otherService.getUuid()).thenReturn(otherServiceUUID);
+        when(otherService.getCharacteristics()).thenReturn(Collections.singletonList(other));
+        when(gatt.getServices()).thenReturn(Arrays.asList(service, otherService));
+        when(gatt.readCharacteristic(any(BluetoothGattCharacteristic.class))).thenReturn(true);
+    }
+
+    @Test
+    public void testReadAll() {
+        BatchReadCommand command = new BatchReadCommand(new BatchReadFilter(), batchObserver);
+
+        command.execute(device, operationCommandObserver, gatt);
+        verify(gatt).readCharacteristic(first);
+
+        when(first.getValue()).thenReturn(new byte[]{1});
+        command.onCharacteristicRead(gatt, first, BluetoothGatt.GATT_SUCCESS);
+        verify(gatt).readCharacteristic(second);
+
+        command.onCharacteristicRead(gatt, second, BluetoothGatt.GATT_READ_NOT_PERMITTED);
+        verify(gatt).readCharacteristic(other);
+        verify(gatt, never()).readCharacteristic(notReadable);
+
+        when(other.getValue()).thenReturn(new byte[]{3});
+        command.onCharacteristicRead(gatt, other, BluetoothGatt.GATT_SUCCESS);
+
+        ArgumentCaptor<CommandResult> streamed = ArgumentCaptor.forClass(CommandResult.class);
+        verify(batchObserver, times(3)).characteristicRead(eq(command), streamed.capture());
+
+        ArgumentCaptor<CommandResult> finished = ArgumentCaptor.forClass(CommandResult.class);
+        verify(batchObserver).finished(eq(command), finished.capture());
+        verify(operationCommandObserver).finished(eq(command), any(CommandResult.class));
+
+        BatchReadResult result = (BatchReadResult) finished.getValue();
+        assertEquals(BluetoothGatt.GATT_SUCCESS, result.getStatus());
+        assertEquals(streamed.getAllValues(), result.getResults());
+        assertEquals(1, result.getFailureCount());
+
+        List<CommandResult> results = result.getResults();
+        assertEquals(first.getUuid(), results.get(0).getUUID());
+        assertArrayEquals(new byte[]{1}, results.get(0).getValue());
+        assertEquals(BluetoothGatt.GATT_READ_NOT_PERMITTED, results.get(1).getStatus());
+        assertArrayEquals(new byte[]{3}, results.get(2).getValue());
+        for (CommandResult r : results) {
+            assertEquals(result.getTimestamp(), r.getTimestamp());
+        }
+    }
+
+    @Test
+    public void testFilter() {
+        BatchReadFilter filter = new BatchReadFilter()
+                .addService(serviceUUID)
+                .requireProperties(BluetoothGattCharacteristic.PROPERTY_NOTIFY);
+        BatchReadCommand command = new BatchReadCommand(filter, batchObserver);
+
+        command.execute(device, operationCommandObserver, gatt);
+        command.onCharacteristicRead(gatt, second, BluetoothGatt.GATT_SUCCESS);
+
+        verify(gatt, never()).readCharacteristic(first);
+        verify(gatt, never()).readCharacteristic(other);
+        BatchReadResult result = verifyFinished(command);
+        assertEquals(1, result.getResults().size());
+        assertEquals(second.getUuid(), result.getResults().get(0).getUUID());
+    }
+
+    @Test
+    public void testCharacteristicFilter() {
+        BatchReadCommand command = new BatchReadCommand(new BatchReadFilter().addCharacteristic(other.getUuid()), batchObserver);
+
+        command.execute(device, operationCommandObserver, gatt);
+        verify(gatt).readCharacteristic(other);
+        verify(gatt, times(1)).readCharacteristic(any(BluetoothGattCharacteristic.class));
+    }
+
+    @Test
+    public void testReadRequestFailedContinues() {
+        when(gatt.readCharacteristic(first)).thenReturn(false);
+        BatchReadCommand command = new BatchReadCommand(new BatchReadFilter().addService(serviceUUID), batchObserver);
+
+        command.execute(device, operationCommandObserver, gatt);
+        verify(gatt).readCharacteristic(second);
+        command.onCharacteristicRead(gatt, second, BluetoothGatt.GATT_SUCCESS);
+
+        BatchReadResult result = verifyFinished(command);
+        assertEquals(BluetoothGatt.GATT_SUCCESS, result.getStatus());
+        assertEquals(BluetoothGatt.GATT_FAILURE, result.getResults().get(0).getStatus());
+        assertEquals(1, result.getFailureCount());
+    }
+
+    @Test
+    public void testOnErrorKeepsPartialResults() {
+        BatchReadCommand command = new BatchReadCommand(new BatchReadFilter(), batchObserver);
+
+        command.execute(device, operationCommandObserver, gatt);
+        command.onCharacteristicRead(gatt, first, BluetoothGatt.GATT_SUCCESS);
+        command.onError(BluetoothGatt.GATT_FAILURE);
+
+        BatchReadResult result = verifyFinished(command);
+        assertEquals(BluetoothGatt.GATT_FAILURE, result.getStatus());
+        assertEquals(1, result.getResults().size());
+    }
+
+    @Test
+    public void testNothingToRead() {
+        when(gatt.getServices()).thenReturn(Collections.<BluetoothGattService>emptyList());
+        BatchReadCommand command = new BatchReadCommand(new BatchReadFilter(), batchObserver);
+
+        command.execute(device, operationCommandObserver, gatt);
+        BatchReadResult result = verifyFinished(command);
+        assertEquals(BluetoothGatt.GATT_SUCCESS, result.getStatus());
+        assertEquals(0, result.getResults().size());
+    }
+
+    @Test
+    public void testToStringBecauseWhyNot() {
+        assertNotNull(new BatchReadCommand(new BatchReadFilter(), null).toString());
+    }
+
+    private BatchReadResult verifyFinished(BatchReadCommand command) {
+        ArgumentCaptor<CommandResult> finished = ArgumentCaptor.forClass(CommandResult.class);
+        verify(batchObserver).finished(eq(command), finished.capture());
+        verify(operationCommandObserver).finished(eq(command), any(CommandResult.class));
+        return (BatchReadResult) finished.getValue();
+    }
+
+    private static BluetoothGattCharacteristic createCharacteristic(int uuid, int properties) {
+        BluetoothGattCharacteristic characteristic = mock(BluetoothGattCharacteristic.class);
+        when(characteristic.getUuid()).thenReturn(Neatle.createUUID(uuid));
+        when(characteristic.getProperties()).thenReturn(properties);
+        return characteristic;
+    }
+}
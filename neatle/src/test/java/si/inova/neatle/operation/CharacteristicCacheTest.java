@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import si.inova.neatle.Neatle;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class CharacteristicCacheTest {
+
+    private UUID service = Neatle.createUUID(10);
+    private UUID otherService = Neatle.createUUID(11);
+    private UUID first = Neatle.createUUID(1);
+    private UUID second = Neatle.createUUID(2);
+    private UUID third = Neatle.createUUID(3);
+
+    @Test
+    public void testFreshValue() {
+        CharacteristicCache cache = new CharacteristicCache(10, 100);
+        CommandResult result = createResult(first);
+        cache.put(service, result);
+
+        assertSame(result, cache.get(service, first));
+        assertNull(cache.get(service, second));
+
+        shadowOf(Looper.getMainLooper()).idleFor(101, TimeUnit.MILLISECONDS);
+        assertNull(cache.get(service, first));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testPerCharacteristicTtl() {
+        CharacteristicCache cache = new CharacteristicCache(10, 100);
+        cache.setTtl(second, 1000);
+        cache.setTtl(third, 0);
+        cache.put(service, createResult(first));
+        cache.put(service, createResult(second));
+        cache.put(service, createResult(third));
+
+        assertNull(cache.get(service, third));
+
+        shadowOf(Looper.getMainLooper()).idleFor(500, TimeUnit.MILLISECONDS);
+        assertNull(cache.get(service, first));
+        assertEquals(second, cache.get(service, second).getUUID());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        CharacteristicCache cache = new CharacteristicCache(2, 1000);
+        cache.put(service, createResult(first));
+        cache.put(service, createResult(second));
+        cache.get(service, first);
+        cache.put(service, createResult(third));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(service, second));
+        assertEquals(first, cache.get(service, first).getUUID());
+        assertEquals(third, cache.get(service, third).getUUID());
+    }
+
+    @Test
+    public void testFailedResultsNotCached() {
+        CharacteristicCache cache = new CharacteristicCache(10, 1000);
+        cache.put(service, CommandResult.createErrorResult(first, BluetoothGatt.GATT_FAILURE));
+        cache.put(service, CommandResult.createEmptySuccess(second));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testKeyedByService() {
+        CharacteristicCache cache = new CharacteristicCache(10, 1000);
+        CommandResult result = createResult(first);
+        CommandResult other = createResult(first);
+        cache.put(service, result);
+        cache.put(otherService, other);
+
+        assertEquals(2, cache.size());
+        assertSame(result, cache.get(service, first));
+        assertSame(other, cache.get(otherService, first));
+
+        cache.invalidate(otherService, first);
+        assertSame(result, cache.get(service, first));
+        assertNull(cache.get(otherService, first));
+    }
+
+    @Test
+    public void testInvalidate() {
+        CharacteristicCache cache = new CharacteristicCache(10, 1000);
+        cache.put(service, createResult(first));
+        cache.put(service, createResult(second));
+
+        cache.invalidate(service, first);
+        assertNull(cache.get(service, first));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new CharacteristicCache(0, 1000);
+    }
+
+    private static CommandResult createResult(UUID uuid) {
+        return new CommandResult(uuid, new byte[]{1}, BluetoothGatt.GATT_SUCCESS, System.currentTimeMillis());
+    }
+}
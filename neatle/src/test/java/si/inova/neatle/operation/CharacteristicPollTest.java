@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.os.Build;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import si.inova.neatle.Device;
+import si.inova.neatle.Neatle;
+import si.inova.neatle.util.DeviceManager;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class CharacteristicPollTest {
+
+    private static final UUID SERVICE_UUID = Neatle.createUUID(1);
+    private static final UUID CHARACTERISTIC_UUID = Neatle.createUUID(2);
+    private static final String MAC = "00:11:22:33:44:55";
+
+    @Mock
+    private BluetoothDevice bluetoothDevice;
+    @Mock
+    private Device device;
+    @Mock
+    private BluetoothGatt gatt;
+    @Mock
+    private BluetoothGattService gattService;
+    @Mock
+    private BluetoothGattCharacteristic gattCharacteristic;
+    @Mock
+    private CharacteristicsChangedListener changedListener;
+
+    private CharacteristicPollImpl poll;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(bluetoothDevice.getAddress()).thenReturn(MAC);
+        when(gatt.getService(SERVICE_UUID)).thenReturn(gattService);
+        when(gattService.getCharacteristic(CHARACTERISTIC_UUID)).thenReturn(gattCharacteristic);
+        when(gattCharacteristic.getUuid()).thenReturn(CHARACTERISTIC_UUID);
+        when(gattCharacteristic.getValue()).thenReturn(new byte[]{42});
+        when(gatt.readCharacteristic(gattCharacteristic)).thenReturn(true);
+        DeviceManager.getInstance(RuntimeEnvironment.application).putDevice(device, MAC);
+
+        poll = new CharacteristicPollImpl(RuntimeEnvironment.application, bluetoothDevice, SERVICE_UUID, CHARACTERISTIC_UUID, 100);
+        poll.setOnCharacteristicsChangedListener(changedListener);
+    }
+
+    @After
+    public void tearDown() {
+        poll.stop();
+        DeviceManager.getInstance(RuntimeEnvironment.application).clearDevices();
+    }
+
+    @Test
+    public void testStartStop() {
+        poll.start();
+        assertTrue(poll.isStarted());
+        poll.start();
+        verify(device, times(1)).execute(any(BluetoothGattCallback.class), anyInt());
+
+        poll.stop();
+        assertFalse(poll.isStarted());
+        verify(device).executeFinished(any(BluetoothGattCallback.class));
+
+        shadowOf(Looper.getMainLooper()).idleFor(500, TimeUnit.MILLISECONDS);
+        verify(device, times(1)).execute(any(BluetoothGattCallback.class), anyInt());
+    }
+
+    @Test
+    public void testReadsPeriodically() {
+        poll.start();
+        BluetoothGattCallback callback = captureCallback(1);
+        completeRead(callback);
+
+        ArgumentCaptor<CommandResult> captor = ArgumentCaptor.forClass(CommandResult.class);
+        verify(changedListener).onCharacteristicChanged(captor.capture());
+        assertEquals(CHARACTERISTIC_UUID, captor.getValue().getUUID());
+        assertEquals(42, captor.getValue().getValueAsInt());
+
+        shadowOf(Looper.getMainLooper()).idleFor(100, TimeUnit.MILLISECONDS);
+        callback = captureCallback(2);
+        completeRead(callback);
+
+        verify(changedListener, times(2)).onCharacteristicChanged(any(CommandResult.class));
+        assertEquals(0, poll.getSkippedCount());
+    }
+
+    @Test
+    public void testFailedReadIsNotDelivered() {
+        poll.start();
+        BluetoothGattCallback callback = captureCallback(1);
+        callback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+        shadowOf(Looper.getMainLooper()).idle();
+        callback.onCharacteristicRead(gatt, gattCharacteristic, BluetoothGatt.GATT_FAILURE);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(changedListener, never()).onCharacteristicChanged(any(CommandResult.class));
+
+        // polling goes on after a failed read
+        shadowOf(Looper.getMainLooper()).idleFor(100, TimeUnit.MILLISECONDS);
+        completeRead(captureCallback(2));
+        verify(changedListener, times(1)).onCharacteristicChanged(any(CommandResult.class));
+    }
+
+    @Test
+    public void testSkipsTicksWhileReading() {
+        poll.start();
+        shadowOf(Looper.getMainLooper()).idleFor(250, TimeUnit.MILLISECONDS);
+
+        // the first read never finished
+        verify(device, times(1)).execute(any(BluetoothGattCallback.class), anyInt());
+        assertEquals(2, poll.getSkippedCount());
+        verify(changedListener, never()).onCharacteristicChanged(any(CommandResult.class));
+    }
+
+    @Test
+    public void testMergesMissedTicks() {
+        poll.start();
+        completeRead(captureCallback(1));
+
+        // the main thread was blocked for 3.5 periods
+        ShadowSystemClock.advanceBy(Duration.ofMillis(350));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        // the late tick reads once, the two ticks it missed are skipped and the grid is kept
+        verify(device, times(2)).execute(any(BluetoothGattCallback.class), anyInt());
+        assertEquals(2, poll.getSkippedCount());
+
+        completeRead(captureCallback(2));
+        shadowOf(Looper.getMainLooper()).idleFor(49, TimeUnit.MILLISECONDS);
+        verify(device, times(2)).execute(any(BluetoothGattCallback.class), anyInt());
+        shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.MILLISECONDS);
+        verify(device, times(3)).execute(any(BluetoothGattCallback.class), anyInt());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPeriod() {
+        new CharacteristicPollImpl(RuntimeEnvironment.application, bluetoothDevice, SERVICE_UUID, CHARACTERISTIC_UUID, 0);
+    }
+
+    private BluetoothGattCallback captureCallback(int executions) {
+        ArgumentCaptor<BluetoothGattCallback> captor = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        verify(device, times(executions)).execute(captor.capture(), anyInt());
+        return captor.getValue();
+    }
+
+    private void completeRead(BluetoothGattCallback callback) {
+        callback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+        shadowOf(Looper.getMainLooper()).idle();
+        callback.onCharacteristicRead(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
@@ -30,11 +30,13 @@ import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothManager;
 import android.content.Context;
 import android.os.Build;
+import android.os.Looper;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -49,12 +51,20 @@ import si.inova.neatle.Device;
 import si.inova.neatle.Neatle;
 import si.inova.neatle.util.DeviceManager;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = Build.VERSION_CODES.N_MR1)
@@ -124,7 +134,7 @@ public class CharacteristicSubscriptionTest {
 
                 return null;
             }
-        }).when(device).execute(Mockito.<BluetoothGattCallback>any());
+        }).when(device).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
 
         subscription.start();
 
@@ -133,4 +143,113 @@ public class CharacteristicSubscriptionTest {
 
         assertTrue(subscription.isStarted());
     }
+
+    @Test
+    public void testBatchesAreDeliveredPerInterval() {
+        final List<Long> timestamps = new ArrayList<>();
+        final List<byte[]> values = new ArrayList<>();
+        subscription.setOnCharacteristicsChangedListener(null);
+        subscription.setOnNotificationBatchListener(new NotificationBatchListener() {
+            @Override
+            public void onNotificationBatch(NotificationBatch batch) {
+                for (int i = 0; i < batch.size(); i++) {
+                    timestamps.add(batch.getTimestampNanos(i));
+                    values.add(batch.getValue(i));
+                }
+            }
+        }, 100, 2);
+        subscription.start();
+
+        verify(device, never()).addCharacteristicsChangedListener(Mockito.eq(CHARACTERISTIC_UUID), Mockito.<CharacteristicsChangedListener>any());
+        RawCharacteristicListener rawListener = captureRawListeners().get(0);
+
+        for (int i = 0; i < 3; i++) {
+            rawListener.onCharacteristicChanged(CHARACTERISTIC_UUID, new byte[]{(byte) i}, 1000 + i);
+        }
+        shadowOf(Looper.getMainLooper()).idleFor(50, TimeUnit.MILLISECONDS);
+        assertTrue(values.isEmpty());
+
+        shadowOf(Looper.getMainLooper()).idleFor(50, TimeUnit.MILLISECONDS);
+        assertEquals(3, values.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1000 + i, (long) timestamps.get(i));
+            assertArrayEquals(new byte[]{(byte) i}, values.get(i));
+        }
+
+        rawListener.onCharacteristicChanged(CHARACTERISTIC_UUID, new byte[]{9}, 2000);
+        shadowOf(Looper.getMainLooper()).idleFor(100, TimeUnit.MILLISECONDS);
+        assertEquals(4, values.size());
+        assertArrayEquals(new byte[]{9}, values.get(3));
+    }
+
+    @Test
+    public void testStopDropsPendingBatch() {
+        NotificationBatchListener batchListener = Mockito.mock(NotificationBatchListener.class);
+        subscription.setOnNotificationBatchListener(batchListener, 100, 2);
+        subscription.start();
+
+        RawCharacteristicListener rawListener = captureRawListeners().get(0);
+        rawListener.onCharacteristicChanged(CHARACTERISTIC_UUID, new byte[]{1}, 1000);
+
+        subscription.stop();
+        verify(device).removeRawCharacteristicListener(CHARACTERISTIC_UUID, rawListener);
+        shadowOf(Looper.getMainLooper()).idleFor(200, TimeUnit.MILLISECONDS);
+        verify(batchListener, never()).onNotificationBatch(Mockito.<NotificationBatch>any());
+    }
+
+    @Test
+    public void testBufferedChangesAreBounded() {
+        subscription.setBuffer(2, 4, CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+        subscription.start();
+
+        verify(device, never()).addCharacteristicsChangedListener(Mockito.eq(CHARACTERISTIC_UUID), Mockito.<CharacteristicsChangedListener>any());
+        RawCharacteristicListener rawListener = captureRawListeners().get(0);
+
+        for (int i = 0; i < 3; i++) {
+            rawListener.onCharacteristicChanged(CHARACTERISTIC_UUID, new byte[]{(byte) i}, 1000 + i);
+        }
+        rawListener.onCharacteristicChanged(CHARACTERISTIC_UUID, new byte[5], 2000);
+        assertEquals(2, subscription.getBufferedCount());
+        assertEquals(2, subscription.getPeakBufferedCount());
+        assertEquals(2, subscription.getDroppedCount());
+
+        shadowOf(Looper.getMainLooper()).idle();
+        ArgumentCaptor<CommandResult> changes = ArgumentCaptor.forClass(CommandResult.class);
+        verify(changedListener, Mockito.times(2)).onCharacteristicChanged(changes.capture());
+        assertArrayEquals(new byte[]{1}, changes.getAllValues().get(0).getValue());
+        assertEquals(1001, changes.getAllValues().get(0).getTimestampNanos());
+        assertArrayEquals(new byte[]{2}, changes.getAllValues().get(1).getValue());
+        assertEquals(0, subscription.getBufferedCount());
+    }
+
+    @Test
+    public void testArrivalStatistics() {
+        subscription.start();
+        List<RawCharacteristicListener> rawListeners = captureRawListeners();
+        assertEquals(1, rawListeners.size());
+
+        long[] timestamps = {0, 10000000, 20000000, 30000000, 40000000, 50000000, 60000000, 70000000, 80000000, 90000000, 110000000};
+        for (long timestamp : timestamps) {
+            rawListeners.get(0).onCharacteristicChanged(CHARACTERISTIC_UUID, new byte[]{1}, timestamp);
+        }
+
+        ArrivalStatistics statistics = subscription.getArrivalStatistics();
+        assertEquals(11, statistics.getCount());
+        assertEquals(110000000, statistics.getLastTimestampNanos());
+        assertEquals(11000000, statistics.getMeanIntervalNanos(), 1);
+        assertEquals(10000000, statistics.getMinIntervalNanos());
+        assertEquals(20000000, statistics.getMaxIntervalNanos());
+        assertEquals(1, statistics.getGapCount());
+        assertEquals(Math.sqrt(90e12 / 9), statistics.getJitterNanos(), 1);
+
+        subscription.stop();
+        subscription.start();
+        assertEquals(0, subscription.getArrivalStatistics().getCount());
+    }
+
+    private List<RawCharacteristicListener> captureRawListeners() {
+        ArgumentCaptor<RawCharacteristicListener> rawListener = ArgumentCaptor.forClass(RawCharacteristicListener.class);
+        verify(device, Mockito.atLeastOnce()).addRawCharacteristicListener(Mockito.eq(CHARACTERISTIC_UUID), rawListener.capture());
+        return rawListener.getAllValues();
+    }
 }
@@ -27,6 +27,7 @@ package si.inova.neatle.operation;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.os.Build;
+import android.os.SystemClock;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -34,6 +35,9 @@ import org.mockito.Mockito;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
 import java.nio.charset.Charset;
 
 import si.inova.neatle.BuildConfig;
@@ -42,6 +46,7 @@ import si.inova.neatle.Neatle;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static org.junit.Assert.assertArrayEquals;
@@ -140,4 +145,178 @@ public class CommandResultTest {
         assertEquals(3071, (int) result.getFormattedIntValue(CommandResult.FORMAT_SINT16, 0));
         assertEquals(202771455, (int) result.getFormattedIntValue(CommandResult.FORMAT_SINT32, 0));
     }
+
+    @Test
+    public void testFormattedIntValueOutOfRange() {
+        CommandResult result = new CommandResult(Neatle.createUUID(1), new byte[]{1, 2, 3}, BluetoothGatt.GATT_SUCCESS, 1);
+        assertEquals(0x0302, (int) result.getFormattedIntValue(CommandResult.FORMAT_UINT16, 1));
+        assertNull(result.getFormattedIntValue(CommandResult.FORMAT_UINT16, 2));
+        assertNull(result.getFormattedIntValue(CommandResult.FORMAT_UINT32, 0));
+    }
+
+    @Test
+    public void testPrimitiveIntValues() {
+        byte[] data = new byte[]{-1, -2, -3, -4, -5, -6, -7, -128};
+        CommandResult result = new CommandResult(Neatle.createUUID(1), data, BluetoothGatt.GATT_SUCCESS, 1);
+
+        assertEquals(0xFF, result.getIntValue(CommandResult.FORMAT_UINT8, 0));
+        assertEquals(-1, result.getIntValue(CommandResult.FORMAT_SINT8, 0));
+        assertEquals(0xFDFEFF, result.getIntValue(CommandResult.FORMAT_UINT24, 0));
+        assertEquals(0xFDFEFF - 0x1000000, result.getIntValue(CommandResult.FORMAT_SINT24, 0));
+        assertEquals(0xFCFDFEFF, result.getIntValue(CommandResult.FORMAT_UINT32, 0));
+
+        assertEquals(0xFCFDFEFFL, result.getLongValue(CommandResult.FORMAT_UINT32, 0));
+        assertEquals(0xFCFDFEFFL - 0x100000000L, result.getLongValue(CommandResult.FORMAT_SINT32, 0));
+        assertEquals(0xFAFBFCFDFEFFL, result.getLongValue(CommandResult.FORMAT_UINT48, 0));
+        assertEquals(0xFAFBFCFDFEFFL - 0x1000000000000L, result.getLongValue(CommandResult.FORMAT_SINT48, 0));
+        assertEquals(0x80F9FAFBFCFDFEFFL, result.getLongValue(CommandResult.FORMAT_UINT64, 0));
+        assertEquals(0x80F9FAFBFCFDFEFFL, result.getLongValue(CommandResult.FORMAT_SINT64, 0));
+        assertEquals(0x80F9, result.getLongValue(CommandResult.FORMAT_UINT16, 6));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIntValueTooWide() {
+        CommandResult result = new CommandResult(Neatle.createUUID(1), new byte[8], BluetoothGatt.GATT_SUCCESS, 1);
+        result.getIntValue(CommandResult.FORMAT_UINT48, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLongValueFromFloatFormat() {
+        CommandResult result = new CommandResult(Neatle.createUUID(1), new byte[8], BluetoothGatt.GATT_SUCCESS, 1);
+        result.getLongValue(CommandResult.FORMAT_FLOAT32, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testPrimitiveValueOutOfRange() {
+        CommandResult result = new CommandResult(Neatle.createUUID(1), new byte[]{1, 2, 3}, BluetoothGatt.GATT_SUCCESS, 1);
+        result.getIntValue(CommandResult.FORMAT_UINT16, 2);
+    }
+
+    @Test
+    public void testFloatValues() {
+        ByteBuffer buffer = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putFloat(36.6f);
+        buffer.putDouble(-1234.5678);
+        CommandResult result = new CommandResult(Neatle.createUUID(1), buffer.array(), BluetoothGatt.GATT_SUCCESS, 1);
+
+        assertEquals(36.6f, result.getFloatValue(CommandResult.FORMAT_FLOAT32, 0));
+        assertEquals(36.6f, (float) result.getDoubleValue(CommandResult.FORMAT_FLOAT32, 0));
+        assertEquals(-1234.5678, result.getDoubleValue(CommandResult.FORMAT_FLOAT64, 4));
+    }
+
+    @Test
+    public void testIeee11073Values() {
+        // SFLOAT 36.5 (exponent -1, mantissa 365), FLOAT -0.0125 (exponent -4, mantissa -125),
+        // SFLOAT 12000 (exponent 3, mantissa 12)
+        byte[] data = new byte[]{0x6D, (byte) 0xF1, (byte) 0x83, (byte) 0xFF, (byte) 0xFF, (byte) 0xFC, 0x0C, 0x30};
+        CommandResult result = new CommandResult(Neatle.createUUID(1), data, BluetoothGatt.GATT_SUCCESS, 1);
+
+        assertEquals(36.5, result.getDoubleValue(CommandResult.FORMAT_SFLOAT, 0));
+        assertEquals(36.5f, result.getFloatValue(CommandResult.FORMAT_SFLOAT, 0));
+        assertEquals(-0.0125, result.getDoubleValue(CommandResult.FORMAT_FLOAT, 2));
+        assertEquals(12000f, result.getFloatValue(CommandResult.FORMAT_SFLOAT, 6));
+    }
+
+    @Test
+    public void testIeee11073SpecialValues() {
+        byte[] data = new byte[]{
+                (byte) 0xFF, 0x07, 0x00, 0x08, (byte) 0xFE, 0x07, 0x02, 0x08,
+                (byte) 0xFF, (byte) 0xFF, 0x7F, 0x00, 0x02, 0x00, (byte) 0x80, 0x00};
+        CommandResult result = new CommandResult(Neatle.createUUID(1), data, BluetoothGatt.GATT_SUCCESS, 1);
+
+        assertTrue(Float.isNaN(result.getFloatValue(CommandResult.FORMAT_SFLOAT, 0)));
+        assertTrue(Float.isNaN(result.getFloatValue(CommandResult.FORMAT_SFLOAT, 2)));
+        assertEquals(Float.POSITIVE_INFINITY, result.getFloatValue(CommandResult.FORMAT_SFLOAT, 4));
+        assertEquals(Float.NEGATIVE_INFINITY, result.getFloatValue(CommandResult.FORMAT_SFLOAT, 6));
+        assertTrue(Double.isNaN(result.getDoubleValue(CommandResult.FORMAT_FLOAT, 8)));
+        assertEquals(Double.NEGATIVE_INFINITY, result.getDoubleValue(CommandResult.FORMAT_FLOAT, 12));
+    }
+
+    @Test
+    public void testBulkValues() {
+        byte[] data = new byte[]{1, 0, 2, 0, -1, -1, 0x6D, (byte) 0xF1};
+        CommandResult result = new CommandResult(Neatle.createUUID(1), data, BluetoothGatt.GATT_SUCCESS, 1);
+
+        int[] ints = new int[4];
+        result.getIntValues(CommandResult.FORMAT_SINT16, 0, ints, 1, 3);
+        assertArrayEquals(new int[]{0, 1, 2, -1}, ints);
+
+        long[] longs = new long[2];
+        result.getLongValues(CommandResult.FORMAT_UINT16, 2, longs, 0, 2);
+        assertArrayEquals(new long[]{2, 0xFFFF}, longs);
+
+        float[] floats = new float[1];
+        result.getFloatValues(CommandResult.FORMAT_SFLOAT, 6, floats, 0, 1);
+        assertEquals(36.5f, floats[0]);
+
+        double[] doubles = new double[2];
+        result.getDoubleValues(CommandResult.FORMAT_SFLOAT, 4, doubles, 0, 2);
+        assertEquals(-0.1, doubles[0]);
+        assertEquals(36.5, doubles[1]);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBulkValuesOutOfRange() {
+        CommandResult result = new CommandResult(Neatle.createUUID(1), new byte[6], BluetoothGatt.GATT_SUCCESS, 1);
+        result.getIntValues(CommandResult.FORMAT_UINT16, 0, new int[4], 0, 4);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBulkValuesDestinationTooSmall() {
+        CommandResult result = new CommandResult(Neatle.createUUID(1), new byte[6], BluetoothGatt.GATT_SUCCESS, 1);
+        result.getIntValues(CommandResult.FORMAT_UINT16, 0, new int[2], 0, 3);
+    }
+
+    @Test
+    public void testValueBuffer() {
+        CommandResult result = new CommandResult(Neatle.createUUID(1), new byte[]{1, 2, 3, 4}, BluetoothGatt.GATT_SUCCESS, 1);
+
+        ByteBuffer buffer = result.getValueBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        assertEquals(0x0201, buffer.getShort());
+
+        // every call gets its own position
+        ByteBuffer again = result.getValueBuffer();
+        assertNotSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(2, buffer.position());
+        assertEquals(4, again.remaining());
+
+        assertNull(new CommandResult(Neatle.createUUID(1), null, BluetoothGatt.GATT_SUCCESS, 1).getValueBuffer());
+    }
+
+    @Test
+    public void testValuesReadWithoutBuffer() {
+        CommandResult result = Mockito.spy(new CommandResult(Neatle.createUUID(1),
+                new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, BluetoothGatt.GATT_SUCCESS, 1));
+
+        result.getIntValue(CommandResult.FORMAT_UINT16, 0);
+        result.getLongValue(CommandResult.FORMAT_UINT64, 0);
+        result.getFloatValue(CommandResult.FORMAT_FLOAT32, 0);
+        result.getDoubleValue(CommandResult.FORMAT_FLOAT64, 0);
+        result.getIntValues(CommandResult.FORMAT_UINT16, 0, new int[4], 0, 4);
+        result.getLongValues(CommandResult.FORMAT_UINT32, 0, new long[2], 0, 2);
+        result.getFloatValues(CommandResult.FORMAT_SFLOAT, 0, new float[4], 0, 4);
+        result.getDoubleValues(CommandResult.FORMAT_FLOAT, 0, new double[2], 0, 2);
+
+        Mockito.verify(result, Mockito.never()).getValueBuffer();
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testValueBufferReadOnly() {
+        CommandResult result = new CommandResult(Neatle.createUUID(1), new byte[]{1, 2}, BluetoothGatt.GATT_SUCCESS, 1);
+        result.getValueBuffer().put((byte) 0);
+    }
+
+    @Test
+    public void testChangedTimestamps() {
+        long receivedAt = SystemClock.elapsedRealtimeNanos() - 5000000000L;
+        CommandResult result = CommandResult.createCharacteristicChanged(Neatle.createUUID(1), new byte[]{1}, receivedAt);
+
+        assertEquals(receivedAt, result.getTimestampNanos());
+        assertEquals(System.currentTimeMillis() - 5000, result.getTimestamp(), 1000);
+        assertArrayEquals(new byte[]{1}, result.getValue());
+        assertTrue(result.wasSuccessful());
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+import si.inova.neatle.Device;
+
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.refEq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class ConnectionPriorityCommandTest {
+
+    @Mock
+    private CommandObserver commandObserver;
+    @Mock
+    private CommandObserver operationCommandObserver;
+    @Mock
+    private BluetoothGatt gatt;
+    @Mock
+    private Device device;
+
+    private ConnectionPriorityCommand command;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        command = new ConnectionPriorityCommand(BluetoothGatt.CONNECTION_PRIORITY_HIGH, commandObserver);
+    }
+
+    @Test
+    public void testRequestSuccess() {
+        when(gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH)).thenReturn(true);
+
+        command.execute(device, operationCommandObserver, gatt);
+        verifyCommandFinished(CommandResult.createEmptySuccess(null));
+    }
+
+    @Test
+    public void testRestoreWaitsForUpdate() {
+        when(gatt.requestConnectionPriority(anyInt())).thenReturn(true);
+        command.execute(device, operationCommandObserver, gatt);
+
+        Command restore = command.createRestoreCommand();
+        restore.execute(device, operationCommandObserver, gatt);
+        verify(gatt).requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
+
+        // there is no callback, the next command runs once the update had time to happen
+        shadowOf(Looper.getMainLooper()).idleFor(ConnectionPriorityCommand.RESTORE_SETTLE_TIME - 1, TimeUnit.MILLISECONDS);
+        verify(operationCommandObserver, never()).finished(eq(restore), any(CommandResult.class));
+        shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.MILLISECONDS);
+        verify(operationCommandObserver).finished(eq(restore), refEq(CommandResult.createEmptySuccess(null), "timestamp"));
+    }
+
+    @Test
+    public void testRequestFailed() {
+        when(gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH)).thenReturn(false);
+
+        command.execute(device, operationCommandObserver, gatt);
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+    }
+
+    @Test
+    public void testBalancedNotRestored() {
+        command = new ConnectionPriorityCommand(BluetoothGatt.CONNECTION_PRIORITY_BALANCED, commandObserver);
+
+        assertNull(command.createRestoreCommand());
+    }
+
+    @Test
+    public void testToStringBecauseWhyNot() {
+        assertNotNull(command.toString());
+    }
+
+    private void verifyCommandFinished(CommandResult result) {
+        verify(commandObserver, times(1)).finished(eq(command), refEq(result, "timestamp"));
+        verify(operationCommandObserver, times(1)).finished(eq(command), refEq(result, "timestamp"));
+    }
+}
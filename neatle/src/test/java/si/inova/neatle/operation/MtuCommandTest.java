@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import si.inova.neatle.Device;
+
+import static junit.framework.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.refEq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class MtuCommandTest {
+
+    @Mock
+    private CommandObserver commandObserver;
+    @Mock
+    private CommandObserver operationCommandObserver;
+    @Mock
+    private BluetoothGatt gatt;
+    @Mock
+    private Device device;
+
+    private MtuCommand mtuCommand;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mtuCommand = new MtuCommand(247, commandObserver);
+    }
+
+    @Test
+    public void testRequestFailed() {
+        when(gatt.requestMtu(247)).thenReturn(false);
+
+        mtuCommand.execute(device, operationCommandObserver, gatt);
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+    }
+
+    @Test
+    public void testRequestSuccess() {
+        when(gatt.requestMtu(247)).thenReturn(true);
+
+        mtuCommand.execute(device, operationCommandObserver, gatt);
+        verify(gatt).requestMtu(247);
+        verify(commandObserver, times(0)).finished(any(Command.class), any(CommandResult.class));
+        verify(operationCommandObserver, times(0)).finished(any(Command.class), any(CommandResult.class));
+
+        mtuCommand.onMtuChanged(gatt, 247, BluetoothGatt.GATT_SUCCESS);
+        verifyCommandFinished(CommandResult.createEmptySuccess(null));
+    }
+
+    @Test
+    public void testMtuChangeRejected() {
+        when(gatt.requestMtu(247)).thenReturn(true);
+
+        mtuCommand.execute(device, operationCommandObserver, gatt);
+        mtuCommand.onMtuChanged(gatt, 23, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED);
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED));
+    }
+
+    @Test
+    public void testAlreadyNegotiated() {
+        when(device.getMtu()).thenReturn(247);
+
+        mtuCommand.execute(device, operationCommandObserver, gatt);
+        verify(gatt, never()).requestMtu(anyInt());
+        verifyCommandFinished(CommandResult.createEmptySuccess(null));
+    }
+
+    @Test
+    public void testOnError() {
+        when(gatt.requestMtu(247)).thenReturn(true);
+
+        mtuCommand.execute(device, operationCommandObserver, gatt);
+        mtuCommand.onError(BluetoothGatt.GATT_FAILURE);
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+    }
+
+    @Test
+    public void testToStringBecauseWhyNot() {
+        assertNotNull(mtuCommand.toString());
+    }
+
+    private void verifyCommandFinished(CommandResult result) {
+        verify(commandObserver, times(1)).finished(eq(mtuCommand), refEq(result, "timestamp"));
+        verify(operationCommandObserver, times(1)).finished(eq(mtuCommand), refEq(result, "timestamp"));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import si.inova.neatle.Neatle;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+public class NotificationBatchTest {
+
+    private static final UUID CHARACTERISTIC_UUID = Neatle.createUUID(2);
+
+    @Test
+    public void testAddAndRead() {
+        NotificationBatch batch = new NotificationBatch(CHARACTERISTIC_UUID, 2, 2);
+        batch.add(new byte[]{1, 2}, 10);
+        batch.add(new byte[]{3}, 20);
+
+        assertEquals(CHARACTERISTIC_UUID, batch.getUUID());
+        assertEquals(2, batch.size());
+        assertEquals(10, batch.getTimestampNanos(0));
+        assertEquals(20, batch.getTimestampNanos(1));
+        assertArrayEquals(new byte[]{1, 2}, batch.getValue(0));
+        assertArrayEquals(new byte[]{3}, batch.getValue(1));
+        assertEquals(2, batch.getOffset(1));
+        assertEquals(1, batch.getLength(1));
+
+        byte[] dst = new byte[3];
+        assertEquals(1, batch.getValue(1, dst, 2));
+        assertArrayEquals(new byte[]{0, 0, 3}, dst);
+    }
+
+    @Test
+    public void testGrowsWhenFull() {
+        NotificationBatch batch = new NotificationBatch(CHARACTERISTIC_UUID, 1, 1);
+        for (int i = 0; i < 5; i++) {
+            batch.add(new byte[]{(byte) i, (byte) i, (byte) i}, i);
+        }
+        assertEquals(5, batch.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, batch.getTimestampNanos(i));
+            assertArrayEquals(new byte[]{(byte) i, (byte) i, (byte) i}, batch.getValue(i));
+        }
+    }
+
+    @Test
+    public void testClear() {
+        NotificationBatch batch = new NotificationBatch(CHARACTERISTIC_UUID, 2, 2);
+        batch.add(new byte[]{1}, 10);
+        batch.clear();
+        assertEquals(0, batch.size());
+
+        batch.add(null, 20);
+        assertEquals(1, batch.size());
+        assertEquals(0, batch.getLength(0));
+        try {
+            batch.getTimestampNanos(1);
+            fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+}
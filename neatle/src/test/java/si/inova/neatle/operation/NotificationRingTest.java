@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import si.inova.neatle.Neatle;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+
+public class NotificationRingTest {
+
+    private static final UUID CHARACTERISTIC_UUID = Neatle.createUUID(2);
+
+    @Test
+    public void testDropOldest() {
+        NotificationRing ring = new NotificationRing(2, 2, CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+        assertTrue(ring.put(new byte[]{1}, 1));
+        assertTrue(ring.put(new byte[]{2, 2}, 2));
+        assertTrue(ring.put(new byte[]{3}, 3));
+
+        assertDrained(ring, new byte[][]{{2, 2}, {3}}, new long[]{2, 3});
+        assertEquals(1, ring.droppedCount());
+        assertEquals(2, ring.peakSize());
+    }
+
+    @Test
+    public void testDropNewest() {
+        NotificationRing ring = new NotificationRing(2, 2, CharacteristicSubscription.OverflowPolicy.DROP_NEWEST);
+        assertTrue(ring.put(new byte[]{1}, 1));
+        assertTrue(ring.put(new byte[]{2}, 2));
+        assertFalse(ring.put(new byte[]{3}, 3));
+
+        assertDrained(ring, new byte[][]{{1}, {2}}, new long[]{1, 2});
+        assertEquals(1, ring.droppedCount());
+    }
+
+    @Test
+    public void testConflate() {
+        NotificationRing ring = new NotificationRing(2, 2, CharacteristicSubscription.OverflowPolicy.CONFLATE);
+        ring.put(new byte[]{1}, 1);
+        ring.put(new byte[]{2}, 2);
+        ring.put(new byte[]{3}, 3);
+        ring.put(new byte[]{4}, 4);
+
+        assertDrained(ring, new byte[][]{{1}, {4}}, new long[]{1, 4});
+        assertEquals(2, ring.droppedCount());
+    }
+
+    @Test
+    public void testWrapsAround() {
+        NotificationRing ring = new NotificationRing(3, 1, CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            ring.put(new byte[]{(byte) i}, i);
+            if (i % 2 == 1) {
+                NotificationBatch batch = new NotificationBatch(CHARACTERISTIC_UUID, 3, 1);
+                ring.drainTo(batch);
+                assertEquals(2, batch.size());
+                assertArrayEquals(new byte[]{(byte) i}, batch.getValue(1));
+            }
+        }
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.droppedCount());
+    }
+
+    @Test
+    public void testTooLargeValueIsDropped() {
+        NotificationRing ring = new NotificationRing(2, 2, CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+        assertFalse(ring.put(new byte[]{1, 2, 3}, 1));
+        assertEquals(0, ring.size());
+        assertEquals(1, ring.droppedCount());
+    }
+
+    private static void assertDrained(NotificationRing ring, byte[][] values, long[] timestamps) {
+        NotificationBatch batch = new NotificationBatch(CHARACTERISTIC_UUID, 1, 1);
+        ring.drainTo(batch);
+        assertEquals(0, ring.size());
+        assertEquals(values.length, batch.size());
+        for (int i = 0; i < values.length; i++) {
+            assertArrayEquals(values[i], batch.getValue(i));
+            assertEquals(timestamps[i], batch.getTimestampNanos(i));
+        }
+    }
+}
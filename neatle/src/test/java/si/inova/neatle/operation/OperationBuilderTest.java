@@ -25,6 +25,7 @@
 package si.inova.neatle.operation;
 
 import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
 import android.os.Build;
 
 import org.junit.Before;
@@ -37,12 +38,14 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
 import java.util.LinkedList;
+import java.util.List;
 
 import si.inova.neatle.BuildConfig;
 import si.inova.neatle.Neatle;
 import si.inova.neatle.source.InputSource;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 
 @RunWith(RobolectricTestRunner.class)
@@ -74,6 +77,11 @@ public class OperationBuilderTest {
                 .read(Neatle.createUUID(10), Neatle.createUUID(11), commandObserver)
                 .subscribeNotification(Neatle.createUUID(12), Neatle.createUUID(13), commandObserver)
                 .unsubscribeNotification(Neatle.createUUID(14), Neatle.createUUID(15), commandObserver)
+                .requestMtu(247)
+                .reliableWrite(new ReliableWrite().add(Neatle.createUUID(16), Neatle.createUUID(17), new byte[]{1}))
+                .requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH)
+                .setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_OPTION_NO_PREFERRED)
+                .readBatch(null)
                 .retryCount(16)
                 .onFinished(operationObserver);
 
@@ -84,7 +92,7 @@ public class OperationBuilderTest {
         assertEquals(bluetoothDevice, operation.getDevice());
 
         LinkedList<Command> commands = operation.getCommands();
-        assertEquals(8, commands.size());
+        assertEquals(13, commands.size());
 
         assertWriteCommand(commands.get(0), 0, 1);
         assertWriteCommand(commands.get(1), 2, 3);
@@ -96,6 +104,25 @@ public class OperationBuilderTest {
 
         assertSubscribeCommand(commands.get(6), 12, 13);
         assertSubscribeCommand(commands.get(7), 14, 15);
+
+        assertTrue(commands.get(8) instanceof MtuCommand);
+        assertEquals(247, ((MtuCommand) commands.get(8)).getMtu());
+
+        assertTrue(commands.get(9) instanceof ReliableWriteCommand);
+        List<ReliableWrite.Entry> entries = ((ReliableWriteCommand) commands.get(9)).getEntries();
+        assertEquals(1, entries.size());
+        assertEquals(Neatle.createUUID(16), entries.get(0).serviceUUID);
+        assertEquals(Neatle.createUUID(17), entries.get(0).characteristicUUID);
+
+        assertTrue(commands.get(10) instanceof ConnectionPriorityCommand);
+        assertEquals(BluetoothGatt.CONNECTION_PRIORITY_HIGH, ((ConnectionPriorityCommand) commands.get(10)).getPriority());
+
+        assertTrue(commands.get(11) instanceof PhyCommand);
+        assertEquals(BluetoothDevice.PHY_LE_2M_MASK, ((PhyCommand) commands.get(11)).getTxPhyMask());
+        assertEquals(BluetoothDevice.PHY_LE_2M_MASK, ((PhyCommand) commands.get(11)).getRxPhyMask());
+
+        assertTrue(commands.get(12) instanceof BatchReadCommand);
+        assertNotNull(((BatchReadCommand) commands.get(12)).getFilter());
     }
 
     @SuppressWarnings("CheckResult")
@@ -104,6 +131,71 @@ public class OperationBuilderTest {
         new OperationBuilder(RuntimeEnvironment.application).build(null);
     }
 
+    @Test
+    public void testPriority() {
+        OperationImpl operation = (OperationImpl) new OperationBuilder(RuntimeEnvironment.application)
+                .build(bluetoothDevice);
+        assertEquals(Operation.Priority.NORMAL, operation.getPriority());
+
+        operation = (OperationImpl) new OperationBuilder(RuntimeEnvironment.application)
+                .priority(Operation.Priority.BULK)
+                .build(bluetoothDevice);
+        assertEquals(Operation.Priority.BULK, operation.getPriority());
+    }
+
+    @Test
+    public void testTimeouts() {
+        OperationImpl operation = (OperationImpl) new OperationBuilder(RuntimeEnvironment.application)
+                .build(bluetoothDevice);
+        assertEquals(0, operation.getCommandTimeout());
+        assertEquals(0, operation.getOperationTimeout());
+        assertEquals(0, operation.getMaxQueueAge());
+
+        operation = (OperationImpl) new OperationBuilder(RuntimeEnvironment.application)
+                .commandTimeout(5000)
+                .timeout(60000)
+                .maxQueueAge(2000)
+                .build(bluetoothDevice);
+        assertEquals(5000, operation.getCommandTimeout());
+        assertEquals(60000, operation.getOperationTimeout());
+        assertEquals(2000, operation.getMaxQueueAge());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTimeout() {
+        new OperationBuilder(RuntimeEnvironment.application).commandTimeout(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownPriority() {
+        new OperationBuilder(RuntimeEnvironment.application).priority(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequestMtuTooSmall() {
+        new OperationBuilder(RuntimeEnvironment.application).requestMtu(22);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequestMtuTooLarge() {
+        new OperationBuilder(RuntimeEnvironment.application).requestMtu(518);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownConnectionPriority() {
+        new OperationBuilder(RuntimeEnvironment.application).requestConnectionPriority(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPhyMask() {
+        new OperationBuilder(RuntimeEnvironment.application).setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyReliableWrite() {
+        new OperationBuilder(RuntimeEnvironment.application).reliableWrite(new ReliableWrite());
+    }
+
     private void assertSubscribeCommand(Command command, int serUuid, int chUuid) {
         assertTrue(command instanceof SubscribeCommand);
         assertUuids(command, serUuid, chUuid);
@@ -0,0 +1,387 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.os.Build;
+import android.os.Looper;
+import android.os.SystemClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import si.inova.neatle.Device;
+import si.inova.neatle.monitor.Connection;
+import si.inova.neatle.util.DeviceManager;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class OperationImplTest {
+
+    private static final String MAC = "00:11:22:33:44:55";
+
+    @Mock
+    private BluetoothDevice bluetoothDevice;
+    @Mock
+    private Device device;
+    @Mock
+    private BluetoothGatt gatt;
+    @Mock
+    private CommandObserver commandObserver;
+    @Mock
+    private OperationObserver operationObserver;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(bluetoothDevice.getAddress()).thenReturn(MAC);
+        DeviceManager.getInstance(RuntimeEnvironment.application).putDevice(device, MAC);
+    }
+
+    @After
+    public void tearDown() {
+        DeviceManager.getInstance(RuntimeEnvironment.application).clearDevices();
+    }
+
+    @Test
+    public void testCommandTimeout() {
+        runWhenExecuted();
+        StuckCommand command = new StuckCommand(commandObserver);
+        Operation operation = new OperationBuilder(RuntimeEnvironment.application)
+                .executeCommand(command)
+                .commandTimeout(1000)
+                .onFinished(operationObserver)
+                .build(bluetoothDevice);
+
+        operation.execute();
+        shadowOf(Looper.getMainLooper()).idleFor(999, TimeUnit.MILLISECONDS);
+        verify(commandObserver, never()).finished(Mockito.<Command>any(), Mockito.<CommandResult>any());
+
+        shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.MILLISECONDS);
+        ArgumentCaptor<CommandResult> result = ArgumentCaptor.forClass(CommandResult.class);
+        verify(commandObserver).finished(Mockito.eq(command), result.capture());
+        assertEquals(Command.TIMEOUT, result.getValue().getStatus());
+        assertEquals(1, command.errors);
+
+        shadowOf(Looper.getMainLooper()).idle();
+        verify(device).commandFinished(true);
+        verify(device).executeFinished(Mockito.<BluetoothGattCallback>any());
+        ArgumentCaptor<OperationResults> results = ArgumentCaptor.forClass(OperationResults.class);
+        verify(operationObserver).onOperationFinished(Mockito.eq(operation), results.capture());
+        assertFalse(results.getValue().wasSuccessful());
+    }
+
+    @Test
+    public void testOperationTimeoutWhileQueued() {
+        Operation operation = new OperationBuilder(RuntimeEnvironment.application)
+                .executeCommand(new StuckCommand(commandObserver))
+                .timeout(5000)
+                .retryCount(-1)
+                .onFinished(operationObserver)
+                .build(bluetoothDevice);
+
+        operation.execute();
+        shadowOf(Looper.getMainLooper()).idleFor(5000, TimeUnit.MILLISECONDS);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(device).executeFinished(Mockito.<BluetoothGattCallback>any());
+        ArgumentCaptor<OperationResults> results = ArgumentCaptor.forClass(OperationResults.class);
+        verify(operationObserver).onOperationFinished(Mockito.eq(operation), results.capture());
+        assertFalse(results.getValue().wasSuccessful());
+        verify(commandObserver, never()).finished(Mockito.<Command>any(), Mockito.<CommandResult>any());
+    }
+
+    @Test
+    public void testOperationTimeoutDoesNotRetry() {
+        runWhenExecuted();
+        Operation operation = new OperationBuilder(RuntimeEnvironment.application)
+                .executeCommand(new StuckCommand(commandObserver))
+                .timeout(5000)
+                .retryCount(-1)
+                .onFinished(operationObserver)
+                .build(bluetoothDevice);
+
+        operation.execute();
+        shadowOf(Looper.getMainLooper()).idleFor(5000, TimeUnit.MILLISECONDS);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(device).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+        verify(commandObserver).finished(Mockito.<Command>any(), Mockito.<CommandResult>any());
+        verify(operationObserver).onOperationFinished(Mockito.eq(operation), Mockito.<OperationResults>any());
+    }
+
+    @Test
+    public void testExpired() {
+        Operation operation = new OperationBuilder(RuntimeEnvironment.application)
+                .executeCommand(new StuckCommand(commandObserver))
+                .maxQueueAge(2000)
+                .retryCount(-1)
+                .onFinished(operationObserver)
+                .build(bluetoothDevice);
+
+        operation.execute();
+        ArgumentCaptor<BluetoothGattCallback> callback = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        verify(device).execute(callback.capture(), Mockito.anyInt());
+        ExpirableCallback expirable = (ExpirableCallback) callback.getValue();
+        assertEquals(SystemClock.elapsedRealtime() + 2000, expirable.getStartDeadline());
+
+        expirable.onExpired();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(device).executeFinished(callback.getValue());
+        ArgumentCaptor<OperationResults> results = ArgumentCaptor.forClass(OperationResults.class);
+        verify(operationObserver).onOperationFinished(Mockito.eq(operation), results.capture());
+        assertFalse(results.getValue().wasSuccessful());
+        verify(commandObserver, never()).finished(Mockito.<Command>any(), Mockito.<CommandResult>any());
+    }
+
+    @Test
+    public void testDisconnectWhileYielded() {
+        runWhenExecuted();
+        when(device.yieldToHigherPriority(Mockito.<BluetoothGattCallback>any())).thenReturn(true);
+        Operation operation = new OperationBuilder(RuntimeEnvironment.application)
+                .executeCommand(new FinishingCommand())
+                .executeCommand(new StuckCommand(commandObserver))
+                .priority(Operation.Priority.BULK)
+                .onFinished(operationObserver)
+                .build(bluetoothDevice);
+
+        operation.execute();
+        shadowOf(Looper.getMainLooper()).idle();
+        ArgumentCaptor<BluetoothGattCallback> callback = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        verify(device).yieldToHigherPriority(callback.capture());
+        verify(operationObserver, never()).onOperationFinished(Mockito.<Operation>any(), Mockito.<OperationResults>any());
+
+        callback.getValue().onConnectionStateChange(gatt, BluetoothGatt.GATT_FAILURE, BluetoothGatt.STATE_DISCONNECTED);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(device).executeFinished(callback.getValue());
+        ArgumentCaptor<OperationResults> results = ArgumentCaptor.forClass(OperationResults.class);
+        verify(operationObserver).onOperationFinished(Mockito.eq(operation), results.capture());
+        assertFalse(results.getValue().wasSuccessful());
+        verify(commandObserver, never()).finished(Mockito.<Command>any(), Mockito.<CommandResult>any());
+    }
+
+    @Test
+    public void testRestoredOnceWhenRetried() {
+        runWhenExecuted();
+        RestoringCommand restoring = new RestoringCommand();
+        Operation operation = new OperationBuilder(RuntimeEnvironment.application)
+                .executeCommand(restoring)
+                .executeCommand(new FinishingCommand(BluetoothGatt.GATT_FAILURE))
+                .retryCount(1)
+                .onFinished(operationObserver)
+                .build(bluetoothDevice);
+
+        operation.execute();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(device, Mockito.times(2)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+        verify(operationObserver).onOperationFinished(Mockito.eq(operation), Mockito.<OperationResults>any());
+        assertEquals(1, restoring.restores);
+    }
+
+    @Test
+    public void testNotRestoredAfterDisconnect() {
+        runWhenExecuted();
+        when(device.yieldToHigherPriority(Mockito.<BluetoothGattCallback>any())).thenReturn(true);
+        RestoringCommand restoring = new RestoringCommand();
+        Operation operation = new OperationBuilder(RuntimeEnvironment.application)
+                .executeCommand(restoring)
+                .executeCommand(new StuckCommand(commandObserver))
+                .onFinished(operationObserver)
+                .build(bluetoothDevice);
+
+        operation.execute();
+        shadowOf(Looper.getMainLooper()).idle();
+        ArgumentCaptor<BluetoothGattCallback> callback = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        verify(device).yieldToHigherPriority(callback.capture());
+
+        callback.getValue().onConnectionStateChange(gatt, BluetoothGatt.GATT_FAILURE, BluetoothGatt.STATE_DISCONNECTED);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(operationObserver).onOperationFinished(Mockito.eq(operation), Mockito.<OperationResults>any());
+        assertEquals(0, restoring.restores);
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.O)
+    public void testNextOperationWaitsForRestore() {
+        when(device.getTxPhy()).thenReturn(BluetoothDevice.PHY_LE_1M);
+        when(device.getRxPhy()).thenReturn(BluetoothDevice.PHY_LE_1M);
+        Operation first = new OperationBuilder(RuntimeEnvironment.application)
+                .setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK,
+                        BluetoothDevice.PHY_OPTION_NO_PREFERRED)
+                .onFinished(operationObserver)
+                .build(bluetoothDevice);
+        Operation second = new OperationBuilder(RuntimeEnvironment.application)
+                .setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK,
+                        BluetoothDevice.PHY_OPTION_NO_PREFERRED)
+                .build(bluetoothDevice);
+
+        first.execute();
+        ArgumentCaptor<BluetoothGattCallback> callbacks = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        verify(device).execute(callbacks.capture(), Mockito.anyInt());
+        BluetoothGattCallback firstCallback = callbacks.getValue();
+        firstCallback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        when(device.getTxPhy()).thenReturn(BluetoothDevice.PHY_LE_2M);
+        when(device.getRxPhy()).thenReturn(BluetoothDevice.PHY_LE_2M);
+        firstCallback.onPhyUpdate(gatt, BluetoothDevice.PHY_LE_2M, BluetoothDevice.PHY_LE_2M, BluetoothGatt.GATT_SUCCESS);
+        shadowOf(Looper.getMainLooper()).idle();
+        verify(gatt).setPreferredPhy(BluetoothDevice.PHY_LE_1M_MASK, BluetoothDevice.PHY_LE_1M_MASK,
+                BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+
+        // queued behind the restoring operation, which keeps the device until the restore is done
+        second.execute();
+        verify(device, never()).executeFinished(firstCallback);
+        verify(operationObserver, never()).onOperationFinished(Mockito.<Operation>any(), Mockito.<OperationResults>any());
+
+        when(device.getTxPhy()).thenReturn(BluetoothDevice.PHY_LE_1M);
+        when(device.getRxPhy()).thenReturn(BluetoothDevice.PHY_LE_1M);
+        firstCallback.onPhyUpdate(gatt, BluetoothDevice.PHY_LE_1M, BluetoothDevice.PHY_LE_1M, BluetoothGatt.GATT_SUCCESS);
+        shadowOf(Looper.getMainLooper()).idle();
+        verify(device).executeFinished(firstCallback);
+        ArgumentCaptor<OperationResults> results = ArgumentCaptor.forClass(OperationResults.class);
+        verify(operationObserver).onOperationFinished(Mockito.eq(first), results.capture());
+        assertTrue(results.getValue().wasSuccessful());
+
+        // the second operation makes its own change instead of finishing on the restore's update
+        verify(device, Mockito.times(2)).execute(callbacks.capture(), Mockito.anyInt());
+        callbacks.getValue().onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+        shadowOf(Looper.getMainLooper()).idle();
+        verify(gatt, Mockito.times(2)).setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK,
+                BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+    }
+
+    @Test
+    public void testRestoreTimesOut() {
+        runWhenExecuted();
+        Operation operation = new OperationBuilder(RuntimeEnvironment.application)
+                .executeCommand(new StuckRestoringCommand())
+                .onFinished(operationObserver)
+                .build(bluetoothDevice);
+
+        operation.execute();
+        shadowOf(Looper.getMainLooper()).idle();
+        verify(device, never()).executeFinished(Mockito.<BluetoothGattCallback>any());
+
+        shadowOf(Looper.getMainLooper()).idleFor(OperationImpl.RESTORE_TIMEOUT, TimeUnit.MILLISECONDS);
+        verify(device).executeFinished(Mockito.<BluetoothGattCallback>any());
+        verify(operationObserver).onOperationFinished(Mockito.eq(operation), Mockito.<OperationResults>any());
+    }
+
+    private void runWhenExecuted() {
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) {
+                BluetoothGattCallback callback = invocationOnMock.getArgument(0);
+                callback.onServicesDiscovered(gatt, BluetoothGatt.GATT_SUCCESS);
+                return null;
+            }
+        }).when(device).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+    }
+
+    private static class FinishingCommand extends Command {
+        private final int status;
+
+        FinishingCommand() {
+            this(BluetoothGatt.GATT_SUCCESS);
+        }
+
+        FinishingCommand(int status) {
+            super(null);
+            this.status = status;
+        }
+
+        @Override
+        protected void start(Connection connection, BluetoothGatt gatt) {
+            finish(new CommandResult(null, null, status, 0));
+        }
+
+        @Override
+        protected void onError(int error) {
+            finish(CommandResult.createErrorResult(null, error));
+        }
+    }
+
+    private static class RestoringCommand extends FinishingCommand implements RestorableCommand {
+        int restores;
+
+        @Override
+        public Command createRestoreCommand() {
+            restores++;
+            return new FinishingCommand();
+        }
+    }
+
+    private static class StuckRestoringCommand extends FinishingCommand implements RestorableCommand {
+        @Override
+        public Command createRestoreCommand() {
+            return new StuckCommand(null);
+        }
+    }
+
+    private static class StuckCommand extends Command {
+        int errors;
+
+        StuckCommand(CommandObserver observer) {
+            super(observer);
+        }
+
+        @Override
+        protected void start(Connection connection, BluetoothGatt gatt) {
+            // the Bluetooth stack never calls back
+        }
+
+        @Override
+        protected void onError(int error) {
+            errors++;
+        }
+    }
+}
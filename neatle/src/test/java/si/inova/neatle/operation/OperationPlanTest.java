@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.LinkedList;
+
+import si.inova.neatle.Device;
+import si.inova.neatle.Neatle;
+import si.inova.neatle.monitor.Connection;
+import si.inova.neatle.source.ByteArrayInputSource;
+import si.inova.neatle.source.InputSource;
+import si.inova.neatle.util.DeviceManager;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class OperationPlanTest {
+
+    @Mock
+    private BluetoothDevice bluetoothDevice1;
+    @Mock
+    private BluetoothDevice bluetoothDevice2;
+    @Mock
+    private Device device1;
+    @Mock
+    private Device device2;
+    @Mock
+    private CommandObserver commandObserver;
+    @Mock
+    private OperationObserver operationObserver;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(bluetoothDevice1.getAddress()).thenReturn("00:11:22:33:44:55");
+        when(bluetoothDevice2.getAddress()).thenReturn("00:11:22:33:44:66");
+        DeviceManager.getInstance(RuntimeEnvironment.application).putDevice(device1, "00:11:22:33:44:55");
+        DeviceManager.getInstance(RuntimeEnvironment.application).putDevice(device2, "00:11:22:33:44:66");
+    }
+
+    @After
+    public void tearDown() {
+        DeviceManager.getInstance(RuntimeEnvironment.application).clearDevices();
+    }
+
+    @Test
+    public void testCreateOperationDuplicatesCommands() {
+        OperationPlan plan = new OperationBuilder(RuntimeEnvironment.application)
+                .read(Neatle.createUUID(1), Neatle.createUUID(2), commandObserver)
+                .write(Neatle.createUUID(1), Neatle.createUUID(3), new ByteArrayInputSource(new byte[]{1, 2}))
+                .requestMtu(247)
+                .retryCount(3)
+                .onFinished(operationObserver)
+                .buildPlan();
+
+        OperationImpl operation1 = (OperationImpl) plan.createOperation(bluetoothDevice1);
+        OperationImpl operation2 = (OperationImpl) plan.createOperation(bluetoothDevice2);
+
+        assertEquals(bluetoothDevice1, operation1.getDevice());
+        assertEquals(bluetoothDevice2, operation2.getDevice());
+        assertEquals(3, operation1.getRetryCount());
+        assertEquals(operationObserver, operation2.getOperationObserver());
+
+        LinkedList<Command> commands1 = operation1.getCommands();
+        LinkedList<Command> commands2 = operation2.getCommands();
+        assertEquals(3, commands1.size());
+        for (int i = 0; i < commands1.size(); i++) {
+            assertNotSame(plan.getCommands()[i], commands1.get(i));
+            assertNotSame(commands1.get(i), commands2.get(i));
+            assertEquals(plan.getCommands()[i].toString(), commands1.get(i).toString());
+        }
+
+        ReadCommand read = (ReadCommand) commands1.get(0);
+        assertSame(commandObserver, read.getObserver());
+        assertEquals(Neatle.createUUID(2), read.getCharacteristicUUID());
+    }
+
+    @Test
+    public void testExecuteOnManyDevices() {
+        OperationPlan plan = new OperationBuilder(RuntimeEnvironment.application)
+                .read(Neatle.createUUID(1), Neatle.createUUID(2))
+                .buildPlan();
+
+        Operation operation1 = plan.execute(bluetoothDevice1);
+        Operation operation2 = plan.execute(bluetoothDevice2);
+
+        verify(device1).execute(any(BluetoothGattCallback.class), anyInt());
+        verify(device2).execute(any(BluetoothGattCallback.class), anyInt());
+
+        operation1.cancel();
+        assertTrue(operation1.isCanceled());
+        assertFalse(operation2.isCanceled());
+        verify(device1).executeFinished(any(BluetoothGattCallback.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCommandWithoutDuplicate() {
+        new OperationBuilder(RuntimeEnvironment.application)
+                .executeCommand(new Command(null) {
+                    @Override
+                    protected void start(Connection connection, BluetoothGatt gatt) {
+                    }
+
+                    @Override
+                    protected void onError(int error) {
+                    }
+                })
+                .buildPlan();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInputSourceWithoutCopy() {
+        InputSource source = new ByteArrayInputSource(new byte[]{1}) {
+        };
+        new OperationBuilder(RuntimeEnvironment.application)
+                .write(Neatle.createUUID(1), Neatle.createUUID(3), source)
+                .buildPlan();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullDevice() {
+        new OperationBuilder(RuntimeEnvironment.application)
+                .read(Neatle.createUUID(1), Neatle.createUUID(2))
+                .buildPlan()
+                .createOperation(null);
+    }
+}
@@ -33,6 +33,9 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.List;
+import java.util.UUID;
+
 import si.inova.neatle.BuildConfig;
 import si.inova.neatle.Neatle;
 
@@ -82,4 +85,58 @@ public class OperationResultsTest {
         assertFalse(operationResults.wasSuccessful());
     }
 
+    @Test
+    public void testOrderedResults() {
+        CommandResult result1 = new CommandResult(Neatle.createUUID(1), new byte[]{1}, BluetoothGatt.GATT_SUCCESS, 0);
+        CommandResult result2 = new CommandResult(Neatle.createUUID(2), null, BluetoothGatt.GATT_SUCCESS, 0);
+        CommandResult result3 = new CommandResult(Neatle.createUUID(1), new byte[]{2}, BluetoothGatt.GATT_SUCCESS, 0);
+
+        operationResults.addResult(result1);
+        operationResults.addResult(result2);
+        operationResults.addResult(result3);
+
+        assertEquals(3, operationResults.size());
+        assertEquals(result1, operationResults.getResult(0));
+        assertEquals(result2, operationResults.getResult(1));
+        assertEquals(result3, operationResults.getResult(2));
+
+        List<CommandResult> all = operationResults.getResults();
+        assertEquals(3, all.size());
+        assertEquals(result3, all.get(2));
+
+        List<CommandResult> reads = operationResults.getResults(Neatle.createUUID(1));
+        assertEquals(2, reads.size());
+        assertEquals(result1, reads.get(0));
+        assertEquals(result3, reads.get(1));
+        assertTrue(operationResults.getResults(Neatle.createUUID(4)).isEmpty());
+
+        // the lookup by uuid returns the latest result
+        assertEquals(result3, operationResults.getResult(Neatle.createUUID(1)));
+    }
+
+    @Test
+    public void testGrowsBeyondCapacity() {
+        OperationResults results = new OperationResults(1);
+        for (int i = 0; i < 5; i++) {
+            results.addResult(new CommandResult(Neatle.createUUID(i), null, BluetoothGatt.GATT_SUCCESS, 0));
+        }
+
+        assertEquals(5, results.size());
+        assertEquals(Neatle.createUUID(4), results.getResult(4).getUUID());
+    }
+
+    @Test
+    public void testNullUuid() {
+        CommandResult result = CommandResult.createEmptySuccess(null);
+        operationResults.addResult(result);
+
+        assertEquals(result, operationResults.getResult((UUID) null));
+        assertNull(operationResults.getResult(Neatle.createUUID(1)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOutOfBounds() {
+        operationResults.addResult(new CommandResult(Neatle.createUUID(1), null, BluetoothGatt.GATT_SUCCESS, 0));
+        operationResults.getResult(1);
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import si.inova.neatle.Device;
+
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.refEq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.O)
+public class PhyCommandTest {
+
+    @Mock
+    private CommandObserver commandObserver;
+    @Mock
+    private CommandObserver operationCommandObserver;
+    @Mock
+    private BluetoothGatt gatt;
+    @Mock
+    private Device device;
+
+    private PhyCommand phyCommand;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(device.getTxPhy()).thenReturn(BluetoothDevice.PHY_LE_1M);
+        when(device.getRxPhy()).thenReturn(BluetoothDevice.PHY_LE_1M);
+        phyCommand = new PhyCommand(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK,
+                BluetoothDevice.PHY_OPTION_NO_PREFERRED, commandObserver);
+    }
+
+    @Test
+    public void testPhyChangedAndRestored() {
+        phyCommand.execute(device, operationCommandObserver, gatt);
+        verify(gatt).setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK,
+                BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+
+        phyCommand.onPhyUpdate(gatt, BluetoothDevice.PHY_LE_2M, BluetoothDevice.PHY_LE_2M, BluetoothGatt.GATT_SUCCESS);
+        verifyCommandFinished(CommandResult.createEmptySuccess(null));
+
+        when(device.getTxPhy()).thenReturn(BluetoothDevice.PHY_LE_2M);
+        when(device.getRxPhy()).thenReturn(BluetoothDevice.PHY_LE_2M);
+        Command restore = phyCommand.createRestoreCommand();
+        restore.execute(device, operationCommandObserver, gatt);
+        verify(gatt).setPreferredPhy(BluetoothDevice.PHY_LE_1M_MASK, BluetoothDevice.PHY_LE_1M_MASK,
+                BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+
+        // the restore finishes on its own PHY update
+        restore.onPhyUpdate(gatt, BluetoothDevice.PHY_LE_1M, BluetoothDevice.PHY_LE_1M, BluetoothGatt.GATT_SUCCESS);
+        verify(operationCommandObserver).finished(eq(restore), refEq(CommandResult.createEmptySuccess(null), "timestamp"));
+
+        // only restored once
+        assertNull(phyCommand.createRestoreCommand());
+    }
+
+    @Test
+    public void testPhyAlreadySelected() {
+        when(device.getTxPhy()).thenReturn(BluetoothDevice.PHY_LE_2M);
+        when(device.getRxPhy()).thenReturn(BluetoothDevice.PHY_LE_2M);
+
+        phyCommand.execute(device, operationCommandObserver, gatt);
+        verifyCommandFinished(CommandResult.createEmptySuccess(null));
+
+        verify(gatt, never()).setPreferredPhy(anyInt(), anyInt(), anyInt());
+        assertNull(phyCommand.createRestoreCommand());
+    }
+
+    @Test
+    public void testRetryKeepsOriginalPhy() {
+        phyCommand.execute(device, operationCommandObserver, gatt);
+        phyCommand.onPhyUpdate(gatt, BluetoothDevice.PHY_LE_2M, BluetoothDevice.PHY_LE_2M, BluetoothGatt.GATT_SUCCESS);
+
+        // the operation is retried while the connection is still on the selected PHY
+        when(device.getTxPhy()).thenReturn(BluetoothDevice.PHY_LE_2M);
+        when(device.getRxPhy()).thenReturn(BluetoothDevice.PHY_LE_2M);
+        phyCommand.execute(device, operationCommandObserver, gatt);
+
+        phyCommand.createRestoreCommand().execute(device, operationCommandObserver, gatt);
+        verify(gatt).setPreferredPhy(BluetoothDevice.PHY_LE_1M_MASK, BluetoothDevice.PHY_LE_1M_MASK,
+                BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+    }
+
+    @Test
+    public void testPhyUpdateFailed() {
+        phyCommand.execute(device, operationCommandObserver, gatt);
+        phyCommand.onPhyUpdate(gatt, BluetoothDevice.PHY_LE_1M, BluetoothDevice.PHY_LE_1M, BluetoothGatt.GATT_FAILURE);
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+
+        assertNull(phyCommand.createRestoreCommand());
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.N_MR1)
+    public void testNotSupported() {
+        phyCommand.execute(device, operationCommandObserver, gatt);
+        verify(gatt, never()).setPreferredPhy(anyInt(), anyInt(), anyInt());
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_REQUEST_NOT_SUPPORTED));
+    }
+
+    @Test
+    public void testOnError() {
+        phyCommand.execute(device, operationCommandObserver, gatt);
+        phyCommand.onError(BluetoothGatt.GATT_FAILURE);
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+    }
+
+    @Test
+    public void testToStringBecauseWhyNot() {
+        assertNotNull(phyCommand.toString());
+    }
+
+    private void verifyCommandFinished(CommandResult result) {
+        verify(commandObserver, times(1)).finished(eq(phyCommand), refEq(result, "timestamp"));
+        verify(operationCommandObserver, times(1)).finished(eq(phyCommand), refEq(result, "timestamp"));
+    }
+}
@@ -28,6 +28,7 @@ import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.os.Build;
+import android.os.Looper;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -39,6 +40,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import si.inova.neatle.BuildConfig;
 import si.inova.neatle.Device;
@@ -47,10 +49,12 @@ import si.inova.neatle.Neatle;
 import static junit.framework.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.refEq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = Build.VERSION_CODES.N_MR1)
@@ -120,6 +124,35 @@ public class ReadCommandTest {
         verify(operationCommandObserver, times(0)).finished(any(Command.class), any(CommandResult.class));
     }
 
+    @Test
+    public void testReadFromCache() {
+        CharacteristicCache cache = new CharacteristicCache(10, 1000);
+        CommandResult cached = new CommandResult(characteristicUUID, new byte[]{21, 22}, BluetoothGatt.GATT_SUCCESS, 1);
+        cache.put(serviceUUID, cached);
+        when(device.getCharacteristicCache()).thenReturn(cache);
+
+        readCommand.execute(device, operationCommandObserver, gatt);
+        verify(gatt, never()).readCharacteristic(any(BluetoothGattCharacteristic.class));
+        verify(commandObserver, times(1)).finished(eq(readCommand), eq(cached));
+        verify(operationCommandObserver, times(1)).finished(eq(readCommand), eq(cached));
+    }
+
+    @Test
+    public void testStaleCacheReadsDevice() {
+        CharacteristicCache cache = new CharacteristicCache(10, 1000);
+        cache.put(serviceUUID, new CommandResult(characteristicUUID, new byte[]{21, 22}, BluetoothGatt.GATT_SUCCESS, 1));
+        when(device.getCharacteristicCache()).thenReturn(cache);
+        shadowOf(Looper.getMainLooper()).idleFor(1001, TimeUnit.MILLISECONDS);
+
+        when(gatt.getService(eq(serviceUUID))).thenReturn(gattService);
+        when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
+        when(gatt.readCharacteristic(eq(gattCharacteristic))).thenReturn(true);
+
+        readCommand.execute(device, operationCommandObserver, gatt);
+        verify(gatt).readCharacteristic(gattCharacteristic);
+        verify(commandObserver, times(0)).finished(any(Command.class), any(CommandResult.class));
+    }
+
     @Test
     public void testOnCharacteristicRead() {
         BluetoothGattCharacteristic otherCharacteristic = Mockito.mock(BluetoothGattCharacteristic.class);
@@ -158,6 +191,26 @@ public class ReadCommandTest {
         verifyCommandFail();
     }
 
+    @Test
+    public void testTimeoutIgnoresLateCallback() {
+        when(gatt.getService(eq(serviceUUID))).thenReturn(gattService);
+        when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
+        when(gatt.readCharacteristic(eq(gattCharacteristic))).thenReturn(true);
+        when(gattCharacteristic.getValue()).thenReturn(new byte[]{21, 22});
+        when(gattCharacteristic.getUuid()).thenReturn(characteristicUUID);
+
+        readCommand.execute(device, operationCommandObserver, gatt);
+        readCommand.timeout();
+
+        CommandResult result = CommandResult.createErrorResult(characteristicUUID, Command.TIMEOUT);
+        verify(commandObserver, times(1)).finished(eq(readCommand), refEq(result, "timestamp", "timestampNanos"));
+        verify(operationCommandObserver, times(1)).finished(eq(readCommand), refEq(result, "timestamp", "timestampNanos"));
+
+        readCommand.onCharacteristicRead(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        verify(commandObserver, times(1)).finished(any(Command.class), any(CommandResult.class));
+        verify(operationCommandObserver, times(1)).finished(any(Command.class), any(CommandResult.class));
+    }
+
     @Test
     public void testToStringBecauseWhyNot() {
         ReadCommand readCommand = new ReadCommand(
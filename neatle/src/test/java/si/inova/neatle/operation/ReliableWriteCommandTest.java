@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.UUID;
+
+import si.inova.neatle.Device;
+import si.inova.neatle.Neatle;
+
+import static junit.framework.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.refEq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class ReliableWriteCommandTest {
+
+    private UUID serviceUUID = Neatle.createUUID(1);
+    private UUID firstUUID = Neatle.createUUID(2);
+    private UUID secondUUID = Neatle.createUUID(3);
+
+    @Mock
+    private CommandObserver commandObserver;
+    @Mock
+    private CommandObserver operationCommandObserver;
+    @Mock
+    private BluetoothGatt gatt;
+    @Mock
+    private Device device;
+    @Mock
+    private BluetoothGattService gattService;
+    @Mock
+    private BluetoothGattCharacteristic firstCharacteristic;
+    @Mock
+    private BluetoothGattCharacteristic secondCharacteristic;
+
+    private ReliableWriteCommand command;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(gatt.getService(serviceUUID)).thenReturn(gattService);
+        when(gattService.getCharacteristic(firstUUID)).thenReturn(firstCharacteristic);
+        when(gattService.getCharacteristic(secondUUID)).thenReturn(secondCharacteristic);
+        when(gatt.beginReliableWrite()).thenReturn(true);
+        when(gatt.writeCharacteristic(any(BluetoothGattCharacteristic.class))).thenReturn(true);
+        when(gatt.executeReliableWrite()).thenReturn(true);
+
+        ReliableWrite write = new ReliableWrite()
+                .add(serviceUUID, firstUUID, new byte[]{1, 2})
+                .add(serviceUUID, secondUUID, new byte[]{3});
+        command = new ReliableWriteCommand(write, commandObserver);
+    }
+
+    @Test
+    public void testWriteSuccess() {
+        command.execute(device, operationCommandObserver, gatt);
+        verify(gatt).beginReliableWrite();
+        verify(firstCharacteristic).setValue(new byte[]{1, 2});
+        verify(gatt).writeCharacteristic(firstCharacteristic);
+
+        when(firstCharacteristic.getValue()).thenReturn(new byte[]{1, 2});
+        command.onCharacteristicWrite(gatt, firstCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        verify(secondCharacteristic).setValue(new byte[]{3});
+        verify(gatt).writeCharacteristic(secondCharacteristic);
+
+        when(secondCharacteristic.getValue()).thenReturn(new byte[]{3});
+        command.onCharacteristicWrite(gatt, secondCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        verify(gatt).executeReliableWrite();
+        verify(commandObserver, times(0)).finished(any(Command.class), any(CommandResult.class));
+
+        command.onReliableWriteCompleted(gatt, BluetoothGatt.GATT_SUCCESS);
+        verifyCommandFinished(CommandResult.createEmptySuccess(null));
+        verify(gatt, never()).abortReliableWrite();
+    }
+
+    @Test
+    public void testEchoMismatch() {
+        command.execute(device, operationCommandObserver, gatt);
+
+        when(firstCharacteristic.getValue()).thenReturn(new byte[]{1, 3});
+        command.onCharacteristicWrite(gatt, firstCharacteristic, BluetoothGatt.GATT_SUCCESS);
+
+        verify(gatt).abortReliableWrite();
+        verify(gatt, never()).writeCharacteristic(secondCharacteristic);
+        verify(gatt, never()).executeReliableWrite();
+        verifyCommandFinished(CommandResult.createErrorResult(firstUUID, Command.RELIABLE_WRITE_MISMATCH));
+    }
+
+    @Test
+    public void testPrepareFailed() {
+        command.execute(device, operationCommandObserver, gatt);
+        command.onCharacteristicWrite(gatt, firstCharacteristic, BluetoothGatt.GATT_WRITE_NOT_PERMITTED);
+
+        verify(gatt).abortReliableWrite();
+        verifyCommandFinished(CommandResult.createErrorResult(firstUUID, BluetoothGatt.GATT_WRITE_NOT_PERMITTED));
+    }
+
+    @Test
+    public void testBeginFailed() {
+        when(gatt.beginReliableWrite()).thenReturn(false);
+
+        command.execute(device, operationCommandObserver, gatt);
+        verify(gatt, never()).writeCharacteristic(any(BluetoothGattCharacteristic.class));
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+    }
+
+    @Test
+    public void testExecuteFailed() {
+        when(firstCharacteristic.getValue()).thenReturn(new byte[]{1, 2});
+        when(secondCharacteristic.getValue()).thenReturn(new byte[]{3});
+
+        command.execute(device, operationCommandObserver, gatt);
+        command.onCharacteristicWrite(gatt, firstCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        command.onCharacteristicWrite(gatt, secondCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        command.onReliableWriteCompleted(gatt, BluetoothGatt.GATT_FAILURE);
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+    }
+
+    @Test
+    public void testCharacteristicNotFound() {
+        when(gattService.getCharacteristic(secondUUID)).thenReturn(null);
+
+        command.execute(device, operationCommandObserver, gatt);
+        verify(gatt, never()).beginReliableWrite();
+        verifyCommandFinished(CommandResult.createErrorResult(secondUUID, Command.CHARACTERISTIC_NOT_FOUND));
+    }
+
+    @Test
+    public void testValueTooLong() {
+        command = new ReliableWriteCommand(new ReliableWrite().add(serviceUUID, firstUUID, new byte[19]), commandObserver);
+
+        command.execute(device, operationCommandObserver, gatt);
+        verify(gatt, never()).beginReliableWrite();
+        verifyCommandFinished(CommandResult.createErrorResult(firstUUID, BluetoothGatt.GATT_INVALID_ATTRIBUTE_LENGTH));
+    }
+
+    @Test
+    public void testOnError() {
+        command.execute(device, operationCommandObserver, gatt);
+        command.onError(BluetoothGatt.GATT_FAILURE);
+
+        verify(gatt).abortReliableWrite();
+        verifyCommandFinished(CommandResult.createErrorResult(null, BluetoothGatt.GATT_FAILURE));
+    }
+
+    @Test
+    public void testToStringBecauseWhyNot() {
+        assertNotNull(command.toString());
+    }
+
+    private void verifyCommandFinished(CommandResult result) {
+        verify(commandObserver, times(1)).finished(eq(command), refEq(result, "timestamp"));
+        verify(operationCommandObserver, times(1)).finished(eq(command), refEq(result, "timestamp"));
+    }
+}
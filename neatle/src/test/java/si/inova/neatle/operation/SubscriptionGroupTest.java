@@ -0,0 +1,188 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCallback;
+import android.os.Build;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import si.inova.neatle.Device;
+import si.inova.neatle.Neatle;
+import si.inova.neatle.ServicesDiscoveredListener;
+import si.inova.neatle.util.DeviceManager;
+
+import java.util.UUID;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class SubscriptionGroupTest {
+
+    private static final UUID SERVICE_UUID = Neatle.createUUID(1);
+    private static final UUID OTHER_SERVICE_UUID = Neatle.createUUID(6);
+    private static final UUID CHARACTERISTIC_UUID_1 = Neatle.createUUID(2);
+    private static final UUID CHARACTERISTIC_UUID_2 = Neatle.createUUID(3);
+    private static final UUID CHARACTERISTIC_UUID_3 = Neatle.createUUID(4);
+    private static final String MAC = "00:11:22:33:44:55";
+
+    @Mock
+    private BluetoothDevice bluetoothDevice;
+    @Mock
+    private Device device;
+    @Mock
+    private CharacteristicsChangedListener changedListener;
+
+    private SubscriptionGroup group;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(bluetoothDevice.getAddress()).thenReturn(MAC);
+        DeviceManager.getInstance(RuntimeEnvironment.application).putDevice(device, MAC);
+
+        group = Neatle.createSubscriptionGroup(RuntimeEnvironment.application, bluetoothDevice)
+                .addNotification(SERVICE_UUID, CHARACTERISTIC_UUID_1)
+                .addNotification(SERVICE_UUID, CHARACTERISTIC_UUID_2)
+                .addIndication(SERVICE_UUID, CHARACTERISTIC_UUID_3);
+        group.setOnCharacteristicsChangedListener(changedListener);
+    }
+
+    @After
+    public void tearDown() {
+        DeviceManager.getInstance(RuntimeEnvironment.application).clearDevices();
+    }
+
+    @Test
+    public void testSubscribesInOneOperation() {
+        when(device.isConnected()).thenReturn(true);
+
+        group.start();
+        assertTrue(group.isStarted());
+        assertEquals(3, group.size());
+        verify(device, times(1)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+
+        group.start();
+        verify(device, times(1)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+
+        group.stop();
+        assertFalse(group.isStarted());
+        verify(device, times(2)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void testDemultiplexesChanges() {
+        group.start();
+
+        ArgumentCaptor<CharacteristicsChangedListener> listeners = ArgumentCaptor.forClass(CharacteristicsChangedListener.class);
+        verify(device).addCharacteristicsChangedListener(Mockito.eq(CHARACTERISTIC_UUID_1), listeners.capture());
+        verify(device).addCharacteristicsChangedListener(Mockito.eq(CHARACTERISTIC_UUID_2), listeners.capture());
+        verify(device).addCharacteristicsChangedListener(Mockito.eq(CHARACTERISTIC_UUID_3), listeners.capture());
+        assertSame(listeners.getAllValues().get(0), listeners.getAllValues().get(1));
+        assertSame(listeners.getAllValues().get(0), listeners.getAllValues().get(2));
+
+        CommandResult change = CommandResult.createCharacteristicChanged(CHARACTERISTIC_UUID_2, new byte[]{1}, 0);
+        listeners.getValue().onCharacteristicChanged(change);
+        verify(changedListener).onCharacteristicChanged(change);
+
+        group.stop();
+        verify(device).removeCharacteristicsChangedListener(CHARACTERISTIC_UUID_1, listeners.getValue());
+        verify(device).removeCharacteristicsChangedListener(CHARACTERISTIC_UUID_2, listeners.getValue());
+        verify(device).removeCharacteristicsChangedListener(CHARACTERISTIC_UUID_3, listeners.getValue());
+    }
+
+    @Test
+    public void testRestoresInOneOperation() {
+        group.start();
+        verify(device).connect();
+        verify(device, never()).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+
+        ArgumentCaptor<ServicesDiscoveredListener> listener = ArgumentCaptor.forClass(ServicesDiscoveredListener.class);
+        verify(device).addServicesDiscoveredListener(listener.capture());
+
+        when(device.isConnected()).thenReturn(true);
+        listener.getValue().onServicesDiscovered(device);
+        verify(device, times(1)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void testSharedWithSubscription() {
+        when(device.isConnected()).thenReturn(true);
+        CharacteristicSubscription subscription = Neatle.createSubscription(RuntimeEnvironment.application,
+                bluetoothDevice, SERVICE_UUID, CHARACTERISTIC_UUID_1);
+        subscription.start();
+        group.start();
+
+        SubscriptionManager manager = DeviceManager.getInstance(RuntimeEnvironment.application)
+                .getSubscriptionManager(bluetoothDevice);
+        assertEquals(2, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID_1));
+        assertEquals(1, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID_3));
+
+        group.stop();
+        assertEquals(1, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID_1));
+        assertEquals(0, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID_2));
+        subscription.stop();
+    }
+
+    @Test
+    public void testSameCharacteristicInTwoServices() {
+        group.addNotification(OTHER_SERVICE_UUID, CHARACTERISTIC_UUID_1);
+        assertEquals(4, group.size());
+
+        try {
+            group.addNotification(SERVICE_UUID, CHARACTERISTIC_UUID_1);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testAddWhileStarted() {
+        group.start();
+        try {
+            group.addNotification(SERVICE_UUID, Neatle.createUUID(5));
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+}
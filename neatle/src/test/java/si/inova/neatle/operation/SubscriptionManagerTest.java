@@ -0,0 +1,203 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.operation;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCallback;
+import android.os.Build;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import si.inova.neatle.Device;
+import si.inova.neatle.Neatle;
+import si.inova.neatle.ServicesDiscoveredListener;
+import si.inova.neatle.util.DeviceManager;
+
+import java.util.UUID;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class SubscriptionManagerTest {
+
+    private static final UUID SERVICE_UUID = Neatle.createUUID(1);
+    private static final UUID OTHER_SERVICE_UUID = Neatle.createUUID(4);
+    private static final UUID CHARACTERISTIC_UUID = Neatle.createUUID(2);
+    private static final UUID OTHER_CHARACTERISTIC_UUID = Neatle.createUUID(3);
+    private static final String MAC = "00:11:22:33:44:55";
+
+    @Mock
+    private BluetoothDevice bluetoothDevice;
+    @Mock
+    private Device device;
+
+    private SubscriptionManager manager;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(bluetoothDevice.getAddress()).thenReturn(MAC);
+        DeviceManager.getInstance(RuntimeEnvironment.application).putDevice(device, MAC);
+
+        manager = DeviceManager.getInstance(RuntimeEnvironment.application).getSubscriptionManager(bluetoothDevice);
+    }
+
+    @After
+    public void tearDown() {
+        DeviceManager.getInstance(RuntimeEnvironment.application).clearDevices();
+    }
+
+    @Test
+    public void testSameManagerPerDevice() {
+        assertEquals(manager, DeviceManager.getInstance(RuntimeEnvironment.application).getSubscriptionManager(bluetoothDevice));
+    }
+
+    @Test
+    public void testSubscribesOnlyForFirstSubscriber() {
+        when(device.isConnected()).thenReturn(true);
+
+        manager.acquire(SERVICE_UUID, CHARACTERISTIC_UUID, false);
+        manager.acquire(SERVICE_UUID, CHARACTERISTIC_UUID, false);
+
+        assertEquals(2, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID));
+        verify(device, times(1)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void testUnsubscribesOnlyForLastSubscriber() {
+        when(device.isConnected()).thenReturn(true);
+
+        manager.acquire(SERVICE_UUID, CHARACTERISTIC_UUID, false);
+        manager.acquire(SERVICE_UUID, CHARACTERISTIC_UUID, false);
+
+        manager.release(SERVICE_UUID, CHARACTERISTIC_UUID);
+        assertEquals(1, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID));
+        verify(device, times(1)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+
+        manager.release(SERVICE_UUID, CHARACTERISTIC_UUID);
+        assertEquals(0, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID));
+        verify(device, times(2)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+        verify(device).removeServicesDiscoveredListener(Mockito.<ServicesDiscoveredListener>any());
+
+        manager.release(SERVICE_UUID, CHARACTERISTIC_UUID);
+        assertEquals(0, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID));
+    }
+
+    @Test
+    public void testReacquireCancelsPendingUnsubscribe() {
+        when(device.isConnected()).thenReturn(true);
+
+        manager.acquire(SERVICE_UUID, CHARACTERISTIC_UUID, false);
+        manager.release(SERVICE_UUID, CHARACTERISTIC_UUID);
+        manager.acquire(SERVICE_UUID, CHARACTERISTIC_UUID, false);
+
+        ArgumentCaptor<BluetoothGattCallback> callbacks = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        verify(device, times(3)).execute(callbacks.capture(), Mockito.anyInt());
+        // the pending subscribe and the pending unsubscribe
+        verify(device).executeFinished(callbacks.getAllValues().get(0));
+        verify(device).executeFinished(callbacks.getAllValues().get(1));
+        assertEquals(1, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID));
+    }
+
+    @Test
+    public void testBatchedSubscribeCanceledWhenAllReleased() {
+        when(device.isConnected()).thenReturn(true);
+
+        manager.acquire(new UUID[]{SERVICE_UUID, SERVICE_UUID},
+                new UUID[]{CHARACTERISTIC_UUID, OTHER_CHARACTERISTIC_UUID}, new boolean[]{false, false});
+        ArgumentCaptor<BluetoothGattCallback> subscribe = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        verify(device).execute(subscribe.capture(), Mockito.anyInt());
+
+        manager.release(SERVICE_UUID, CHARACTERISTIC_UUID);
+        verify(device, never()).executeFinished(subscribe.getValue());
+
+        manager.release(SERVICE_UUID, OTHER_CHARACTERISTIC_UUID);
+        verify(device).executeFinished(subscribe.getValue());
+    }
+
+    @Test
+    public void testSameCharacteristicInTwoServices() {
+        when(device.isConnected()).thenReturn(true);
+
+        manager.acquire(SERVICE_UUID, CHARACTERISTIC_UUID, false);
+        manager.acquire(OTHER_SERVICE_UUID, CHARACTERISTIC_UUID, false);
+        assertEquals(1, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID));
+        assertEquals(1, manager.getSubscriberCount(OTHER_SERVICE_UUID, CHARACTERISTIC_UUID));
+        verify(device, times(2)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+
+        manager.release(SERVICE_UUID, CHARACTERISTIC_UUID);
+        assertEquals(0, manager.getSubscriberCount(SERVICE_UUID, CHARACTERISTIC_UUID));
+        assertEquals(1, manager.getSubscriberCount(OTHER_SERVICE_UUID, CHARACTERISTIC_UUID));
+        verify(device, times(3)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+        verify(device, never()).removeServicesDiscoveredListener(Mockito.<ServicesDiscoveredListener>any());
+    }
+
+    @Test
+    public void testResubscribeCancelsReplacedSubscribe() {
+        when(device.isConnected()).thenReturn(true);
+
+        manager.acquire(new UUID[]{SERVICE_UUID, SERVICE_UUID},
+                new UUID[]{CHARACTERISTIC_UUID, OTHER_CHARACTERISTIC_UUID}, new boolean[]{false, false});
+        ArgumentCaptor<BluetoothGattCallback> subscribe = ArgumentCaptor.forClass(BluetoothGattCallback.class);
+        verify(device).execute(subscribe.capture(), Mockito.anyInt());
+
+        ArgumentCaptor<ServicesDiscoveredListener> listener = ArgumentCaptor.forClass(ServicesDiscoveredListener.class);
+        verify(device).addServicesDiscoveredListener(listener.capture());
+        listener.getValue().onServicesDiscovered(device);
+
+        verify(device, times(2)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+        verify(device).executeFinished(subscribe.getValue());
+    }
+
+    @Test
+    public void testResubscribesInOneOperation() {
+        manager.acquire(SERVICE_UUID, CHARACTERISTIC_UUID, false);
+        manager.acquire(SERVICE_UUID, OTHER_CHARACTERISTIC_UUID, true);
+
+        verify(device, times(2)).connect();
+        verify(device, never()).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+
+        ArgumentCaptor<ServicesDiscoveredListener> listener = ArgumentCaptor.forClass(ServicesDiscoveredListener.class);
+        verify(device).addServicesDiscoveredListener(listener.capture());
+
+        when(device.isConnected()).thenReturn(true);
+        listener.getValue().onServicesDiscovered(device);
+
+        verify(device, times(1)).execute(Mockito.<BluetoothGattCallback>any(), Mockito.anyInt());
+    }
+}
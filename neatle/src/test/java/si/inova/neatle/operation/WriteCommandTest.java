@@ -28,31 +28,39 @@ import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.os.Build;
+import android.os.Looper;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
-import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import si.inova.neatle.BuildConfig;
 import si.inova.neatle.Device;
 import si.inova.neatle.Neatle;
 import si.inova.neatle.source.AsyncInputSource;
+import si.inova.neatle.source.ByteArrayInputSource;
 import si.inova.neatle.source.InputSource;
 import si.inova.neatle.source.StringInputSource;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.refEq;
@@ -62,11 +70,19 @@ import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = Build.VERSION_CODES.N_MR1)
 public class WriteCommandTest {
 
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     private UUID serviceUUID = Neatle.createUUID(1);
     private UUID characteristicUUID = Neatle.createUUID(2);
 
@@ -260,7 +276,7 @@ public class WriteCommandTest {
         when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
         when(gatt.writeCharacteristic(eq(gattCharacteristic))).thenReturn(true);
         AsyncInputSource inputSource = Mockito.mock(AsyncInputSource.class);
-        when(inputSource.nextChunk()).thenReturn(new byte[]{12, 21});
+        when(inputSource.nextChunk()).thenReturn(new byte[]{12, 21}, (byte[]) null);
 
         writeCommand = new WriteCommand(
                 serviceUUID,
@@ -268,19 +284,11 @@ public class WriteCommandTest {
                 BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT,
                 inputSource,
                 commandObserver);
+        writeCommand.readerExecutor = DIRECT_EXECUTOR;
 
         writeCommand.execute(device, operationCommandObserver, gatt);
-
-        when(inputSource.nextChunk()).thenReturn(null);
         writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
 
-        while (writeCommand.readerThread.isAlive()) {
-            Robolectric.getForegroundThreadScheduler().advanceBy(0, TimeUnit.MILLISECONDS);
-            Thread.yield();
-        }
-
-        Robolectric.getForegroundThreadScheduler().advanceBy(0, TimeUnit.MILLISECONDS);
-
         CommandResult result = CommandResult.createEmptySuccess(characteristicUUID);
         verify(commandObserver, only()).finished(eq(writeCommand), refEq(result, "timestamp"));
         verify(operationCommandObserver, only()).finished(eq(writeCommand), refEq(result, "timestamp"));
@@ -322,16 +330,41 @@ public class WriteCommandTest {
                 BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT,
                 inputSource,
                 commandObserver);
+        writeCommand.readerExecutor = DIRECT_EXECUTOR;
 
         writeCommand.execute(device, operationCommandObserver, gatt);
-        writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        shadowOf(Looper.getMainLooper()).idle();
 
-        while (writeCommand.readerThread.isAlive()) {
-            Robolectric.getForegroundThreadScheduler().advanceBy(0, TimeUnit.MILLISECONDS);
-            Thread.yield();
-        }
-        Robolectric.getForegroundThreadScheduler().advanceBy(0, TimeUnit.MILLISECONDS);
+        verifyCommandFail();
+        verify(inputSource).close();
+    }
+
+    @Test
+    public void testAsyncInputSourcePrefetched() throws IOException {
+        when(gatt.getService(eq(serviceUUID))).thenReturn(gattService);
+        when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
+        when(gatt.writeCharacteristic(eq(gattCharacteristic))).thenReturn(true);
+        AsyncInputSource inputSource = Mockito.mock(AsyncInputSource.class);
+        when(inputSource.nextChunk()).thenReturn(new byte[]{12, 21});
 
+        writeCommand = new WriteCommand(
+                serviceUUID,
+                characteristicUUID,
+                BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT,
+                inputSource,
+                commandObserver);
+        writeCommand.readerExecutor = DIRECT_EXECUTOR;
+
+        // the chunk being written and four more, read ahead
+        writeCommand.execute(device, operationCommandObserver, gatt);
+        verify(gatt, times(1)).writeCharacteristic(gattCharacteristic);
+        verify(inputSource, times(5)).nextChunk();
+
+        writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        verify(gatt, times(2)).writeCharacteristic(gattCharacteristic);
+        verify(inputSource, times(6)).nextChunk();
+
+        writeCommand.onError(BluetoothGatt.GATT_FAILURE);
         verify(inputSource).close();
     }
 
@@ -357,6 +390,170 @@ public class WriteCommandTest {
         verify(operationCommandObserver, times(0)).finished(any(Command.class), any(CommandResult.class));
     }
 
+    @Test
+    public void testChunkSizeFollowsMtu() throws IOException {
+        when(gatt.getService(eq(serviceUUID))).thenReturn(gattService);
+        when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
+        when(gatt.writeCharacteristic(eq(gattCharacteristic))).thenReturn(true);
+        when(device.getMtu()).thenReturn(50);
+
+        writeCommand = new WriteCommand(
+                serviceUUID,
+                characteristicUUID,
+                BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT,
+                new ByteArrayInputSource(new byte[100]),
+                commandObserver);
+
+        writeCommand.execute(device, operationCommandObserver, gatt);
+        writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+
+        ArgumentCaptor<byte[]> chunks = ArgumentCaptor.forClass(byte[].class);
+        verify(gattCharacteristic, times(3)).setValue(chunks.capture());
+        assertEquals(47, chunks.getAllValues().get(0).length);
+        assertEquals(47, chunks.getAllValues().get(1).length);
+        assertEquals(6, chunks.getAllValues().get(2).length);
+    }
+
+    @Test
+    public void testChunkSizeLimitedToMaxAttributeLength() throws IOException {
+        when(gatt.getService(eq(serviceUUID))).thenReturn(gattService);
+        when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
+        when(gatt.writeCharacteristic(eq(gattCharacteristic))).thenReturn(true);
+        when(device.getMtu()).thenReturn(MtuCommand.MAX_MTU);
+
+        writeCommand = new WriteCommand(
+                serviceUUID,
+                characteristicUUID,
+                BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT,
+                new ByteArrayInputSource(new byte[1100]),
+                commandObserver);
+
+        writeCommand.execute(device, operationCommandObserver, gatt);
+        writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+
+        ArgumentCaptor<byte[]> chunks = ArgumentCaptor.forClass(byte[].class);
+        verify(gattCharacteristic, times(3)).setValue(chunks.capture());
+        assertEquals(512, chunks.getAllValues().get(0).length);
+        assertEquals(512, chunks.getAllValues().get(1).length);
+        assertEquals(76, chunks.getAllValues().get(2).length);
+    }
+
+    @Test
+    public void testSubclassChunksAreUsed() throws IOException {
+        when(gatt.getService(eq(serviceUUID))).thenReturn(gattService);
+        when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
+        when(gatt.writeCharacteristic(eq(gattCharacteristic))).thenReturn(true);
+
+        final byte[] overridden = new byte[]{1, 2, 3};
+        writeCommand = new WriteCommand(
+                serviceUUID,
+                characteristicUUID,
+                BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT,
+                new ByteArrayInputSource(new byte[100]) {
+                    private boolean read;
+
+                    @Override
+                    public byte[] nextChunk() {
+                        if (read) {
+                            return null;
+                        }
+                        read = true;
+                        return overridden;
+                    }
+
+                    @Override
+                    public int nextChunk(ByteBuffer target) {
+                        if (read) {
+                            return -1;
+                        }
+                        read = true;
+                        target.put(overridden);
+                        return overridden.length;
+                    }
+                },
+                commandObserver);
+
+        writeCommand.execute(device, operationCommandObserver, gatt);
+        writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+
+        verify(gattCharacteristic, times(1)).setValue(aryEq(overridden));
+        verify(commandObserver, times(1)).finished(any(Command.class), any(CommandResult.class));
+    }
+
+    @Test
+    public void testChunkBuffersReused() throws IOException {
+        when(gatt.getService(eq(serviceUUID))).thenReturn(gattService);
+        when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
+        when(gatt.writeCharacteristic(eq(gattCharacteristic))).thenReturn(true);
+
+        writeCommand = new WriteCommand(
+                serviceUUID,
+                characteristicUUID,
+                BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT,
+                new ByteArrayInputSource(new byte[70]),
+                commandObserver);
+
+        writeCommand.execute(device, operationCommandObserver, gatt);
+        for (int i = 0; i < 3; i++) {
+            writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        }
+
+        ArgumentCaptor<byte[]> chunks = ArgumentCaptor.forClass(byte[].class);
+        verify(gattCharacteristic, times(4)).setValue(chunks.capture());
+        assertSame(chunks.getAllValues().get(0), chunks.getAllValues().get(2));
+        assertNotSame(chunks.getAllValues().get(0), chunks.getAllValues().get(1));
+        assertEquals(10, chunks.getAllValues().get(3).length);
+    }
+
+    @Test
+    public void testNoResponseWriteRetriedWhenBusy() throws IOException {
+        when(gatt.getService(eq(serviceUUID))).thenReturn(gattService);
+        when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
+        when(gatt.writeCharacteristic(eq(gattCharacteristic))).thenReturn(false, false, true);
+
+        writeCommand = new WriteCommand(
+                serviceUUID,
+                characteristicUUID,
+                BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE,
+                new ByteArrayInputSource(new byte[]{1, 2}),
+                commandObserver);
+
+        writeCommand.execute(device, operationCommandObserver, gatt);
+        verify(gatt, times(1)).writeCharacteristic(gattCharacteristic);
+
+        shadowOf(Looper.getMainLooper()).idleFor(100, TimeUnit.MILLISECONDS);
+        verify(gatt, times(3)).writeCharacteristic(gattCharacteristic);
+        verify(commandObserver, times(0)).finished(any(Command.class), any(CommandResult.class));
+
+        writeCommand.onCharacteristicWrite(gatt, gattCharacteristic, BluetoothGatt.GATT_SUCCESS);
+        CommandResult result = CommandResult.createEmptySuccess(characteristicUUID);
+        verify(commandObserver, times(1)).finished(eq(writeCommand), refEq(result, "timestamp"));
+        verify(operationCommandObserver, times(1)).finished(eq(writeCommand), refEq(result, "timestamp"));
+    }
+
+    @Test
+    public void testNoResponseWriteFailsWhenBusyTooLong() throws IOException {
+        when(gatt.getService(eq(serviceUUID))).thenReturn(gattService);
+        when(gattService.getCharacteristic(characteristicUUID)).thenReturn(gattCharacteristic);
+        when(gatt.writeCharacteristic(eq(gattCharacteristic))).thenReturn(false);
+
+        writeCommand = new WriteCommand(
+                serviceUUID,
+                characteristicUUID,
+                BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE,
+                new ByteArrayInputSource(new byte[]{1, 2}),
+                commandObserver);
+
+        writeCommand.execute(device, operationCommandObserver, gatt);
+        shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.SECONDS);
+        verify(commandObserver, times(0)).finished(any(Command.class), any(CommandResult.class));
+
+        shadowOf(Looper.getMainLooper()).idleFor(2, TimeUnit.SECONDS);
+        verifyCommandFail();
+    }
+
     @Test
     public void testOnError() {
         writeCommand.execute(device, operationCommandObserver, gatt);
@@ -387,14 +584,10 @@ public class WriteCommandTest {
                 BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT,
                 inputSource,
                 commandObserver);
+        writeCommand.readerExecutor = DIRECT_EXECUTOR;
 
         writeCommand.execute(device, operationCommandObserver, gatt);
-
-        while (writeCommand.readerThread.isAlive()) {
-            Robolectric.getForegroundThreadScheduler().advanceBy(0, TimeUnit.MILLISECONDS);
-            Thread.yield();
-        }
-        Robolectric.getForegroundThreadScheduler().advanceBy(0, TimeUnit.MILLISECONDS);
+        shadowOf(Looper.getMainLooper()).idle();
 
         verifyCommandFail();
         verify(inputSource).close();
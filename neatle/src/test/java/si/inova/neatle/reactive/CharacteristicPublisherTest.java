@@ -0,0 +1,199 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.reactive;
+
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import si.inova.neatle.Neatle;
+import si.inova.neatle.operation.CharacteristicSubscription;
+import si.inova.neatle.operation.CharacteristicsChangedListener;
+import si.inova.neatle.operation.CommandResult;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class CharacteristicPublisherTest {
+
+    @Mock
+    private CharacteristicSubscription subscription;
+
+    private CharacteristicsChangedListener source;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testSubscribersShareSubscription() {
+        CharacteristicPublisher publisher = createPublisher(4, CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+        TestSubscriber first = new TestSubscriber();
+        TestSubscriber second = new TestSubscriber();
+
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        verify(subscription, times(1)).start();
+        assertEquals(2, publisher.getSubscriberCount());
+
+        first.subscription.cancel();
+        verify(subscription, never()).stop();
+        second.subscription.cancel();
+        verify(subscription, times(1)).stop();
+        assertEquals(0, publisher.getSubscriberCount());
+
+        publisher.subscribe(new TestSubscriber());
+        verify(subscription, times(2)).start();
+    }
+
+    @Test
+    public void testDemandDrivesDelivery() {
+        CharacteristicPublisher publisher = createPublisher(4, CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        emit(1);
+        emit(2);
+        emit(3);
+        assertTrue(subscriber.values.isEmpty());
+
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.values.size());
+        assertEquals(1, (int) subscriber.values.get(0));
+        assertEquals(2, (int) subscriber.values.get(1));
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        emit(4);
+        assertEquals(4, subscriber.values.size());
+        assertEquals(4, (int) subscriber.values.get(3));
+    }
+
+    @Test
+    public void testOverflowPolicies() {
+        assertDelivered(CharacteristicSubscription.OverflowPolicy.DROP_OLDEST, 3, 4);
+        assertDelivered(CharacteristicSubscription.OverflowPolicy.DROP_NEWEST, 1, 2);
+        assertDelivered(CharacteristicSubscription.OverflowPolicy.CONFLATE, 1, 4);
+    }
+
+    @Test
+    public void testInvalidRequest() {
+        CharacteristicPublisher publisher = createPublisher(4, CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        verify(subscription).stop();
+    }
+
+    @Test
+    public void testCancelInOnSubscribe() {
+        CharacteristicPublisher publisher = createPublisher(4, CharacteristicSubscription.OverflowPolicy.DROP_OLDEST);
+        TestSubscriber subscriber = new TestSubscriber() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.cancel();
+            }
+        };
+        publisher.subscribe(subscriber);
+
+        verify(subscription, never()).start();
+        assertNull(subscriber.error);
+    }
+
+    private void assertDelivered(int policy, int... expected) {
+        CharacteristicPublisher publisher = createPublisher(2, policy);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+        for (int i = 1; i <= 4; i++) {
+            emit(i);
+        }
+        subscriber.subscription.request(10);
+
+        assertEquals(expected.length, subscriber.values.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], (int) subscriber.values.get(i));
+        }
+    }
+
+    private CharacteristicPublisher createPublisher(int bufferSize, int policy) {
+        reset(subscription);
+        CharacteristicPublisher publisher = new CharacteristicPublisher(subscription, bufferSize, policy);
+        ArgumentCaptor<CharacteristicsChangedListener> listener = ArgumentCaptor.forClass(CharacteristicsChangedListener.class);
+        verify(subscription).setOnCharacteristicsChangedListener(listener.capture());
+        source = listener.getValue();
+        return publisher;
+    }
+
+    private void emit(int value) {
+        source.onCharacteristicChanged(CommandResult.createCharacteristicChanged(Neatle.createUUID(1),
+                new byte[]{(byte) value}, 0));
+    }
+
+    private static class TestSubscriber implements Subscriber<CommandResult> {
+        final List<Integer> values = new ArrayList<>();
+        Subscription subscription;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(CommandResult result) {
+            values.add(result.getValue()[0] & 0xFF);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -56,6 +56,27 @@ public class CalllableInputSourceTest {
         assertNull(thirdChunk);
     }
 
+    @Test
+    public void testBufferChunks() throws IOException {
+        byte[] data = "01234567890123456789-second".getBytes();
+
+        SimpleCallable callable = new SimpleCallable(ByteBuffer.wrap(data));
+        CalllableInputSource source = new CalllableInputSource(callable);
+        source.open();
+
+        ByteBuffer target = ByteBuffer.allocate(20);
+        assertEquals(20, source.nextChunk(target));
+        assertEquals("01234567890123456789", new String(target.array(), 0, target.position()));
+
+        target.clear();
+        assertEquals(7, source.nextChunk(target));
+        assertEquals("-second", new String(target.array(), 0, target.position()));
+
+        target.clear();
+        assertEquals(-1, source.nextChunk(target));
+        assertEquals(1, callable.calledTimes);
+    }
+
     private static class SimpleCallable implements Callable<ByteBuffer> {
         private int calledTimes = 0;
         private ByteBuffer bb;
@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017 Inova IT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package si.inova.neatle.source;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.junit.Assert.assertArrayEquals;
+
+public class FileInputSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChunks() throws IOException {
+        byte[] data = createData(50);
+        FileInputSource source = new FileInputSource(createFile(data));
+
+        source.open();
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 20), source.nextChunk());
+        assertArrayEquals(Arrays.copyOfRange(data, 20, 40), source.nextChunk());
+        assertArrayEquals(Arrays.copyOfRange(data, 40, 50), source.nextChunk());
+        assertNull(source.nextChunk());
+        assertEquals(50, source.getPosition());
+        source.close();
+        assertNull(source.nextChunk());
+    }
+
+    @Test
+    public void testBufferChunks() throws IOException {
+        byte[] data = createData(50);
+        FileInputSource source = new FileInputSource(createFile(data));
+        source.setChunkSize(30);
+
+        source.open();
+        ByteBuffer target = ByteBuffer.allocate(30);
+        assertEquals(30, source.nextChunk(target));
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 30), target.array());
+
+        target.clear();
+        assertEquals(20, source.nextChunk(target));
+        assertArrayEquals(Arrays.copyOfRange(data, 30, 50), Arrays.copyOf(target.array(), 20));
+
+        target.clear();
+        assertEquals(-1, source.nextChunk(target));
+        source.close();
+    }
+
+    @Test
+    public void testResumeAtOffset() throws IOException {
+        byte[] data = createData(50);
+        FileInputSource source = new FileInputSource(createFile(data), 45);
+
+        source.open();
+        assertEquals(45, source.getPosition());
+        assertArrayEquals(Arrays.copyOfRange(data, 45, 50), source.nextChunk());
+        assertNull(source.nextChunk());
+        source.close();
+
+        // reopening starts at the same offset again
+        source.open();
+        assertArrayEquals(Arrays.copyOfRange(data, 45, 50), source.nextChunk());
+        source.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testOffsetPastEnd() throws IOException {
+        new FileInputSource(createFile(createData(10)), 11).open();
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingFile() throws IOException {
+        new FileInputSource(new File(folder.getRoot(), "missing.bin")).open();
+    }
+
+    private File createFile(byte[] data) throws IOException {
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
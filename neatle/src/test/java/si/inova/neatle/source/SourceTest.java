@@ -27,7 +27,11 @@ package si.inova.neatle.source;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
+import si.inova.neatle.framing.LengthPrefixFraming;
+
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNull;
 import static org.junit.Assert.assertArrayEquals;
 
@@ -86,4 +90,83 @@ public class SourceTest {
         byteArrayInputSource.close();
         assertNull(byteArrayInputSource.nextChunk());
     }
+
+    @Test
+    public void chunkSizeTest() throws IOException {
+        ByteArrayInputSource byteArrayInputSource = new ByteArrayInputSource("Lorem ipsum dolor sit amet".getBytes("UTF8"));
+        byteArrayInputSource.setChunkSize(10);
+        byteArrayInputSource.open();
+        assertArrayEquals("Lorem ipsu".getBytes("UTF8"), byteArrayInputSource.nextChunk());
+        assertArrayEquals("m dolor si".getBytes("UTF8"), byteArrayInputSource.nextChunk());
+        assertArrayEquals("t amet".getBytes("UTF8"), byteArrayInputSource.nextChunk());
+        assertNull(byteArrayInputSource.nextChunk());
+        byteArrayInputSource.close();
+    }
+
+    @Test
+    public void byteBufferChunkTest() throws IOException {
+        ByteArrayInputSource byteArrayInputSource = new ByteArrayInputSource("Lorem ipsum dolor sit amet".getBytes("UTF8"));
+        byteArrayInputSource.setChunkSize(10);
+        byteArrayInputSource.open();
+
+        // the chunk is limited by the remaining space in the buffer as well as the chunk size
+        ByteBuffer target = ByteBuffer.allocate(8);
+        assertEquals(8, byteArrayInputSource.nextChunk(target));
+        assertArrayEquals("Lorem ip".getBytes("UTF8"), target.array());
+
+        target = ByteBuffer.allocate(20);
+        assertEquals(10, byteArrayInputSource.nextChunk(target));
+        assertEquals(10, target.position());
+
+        target.clear();
+        assertEquals(8, byteArrayInputSource.nextChunk(target));
+        assertEquals(-1, byteArrayInputSource.nextChunk(target));
+        byteArrayInputSource.close();
+        assertEquals(-1, byteArrayInputSource.nextChunk(target));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidChunkSizeTest() {
+        new StringInputSource("Lorem ipsum").setChunkSize(0);
+    }
+
+    @Test
+    public void copyTest() throws IOException {
+        ByteArrayInputSource source = new ByteArrayInputSource(new byte[]{1, 2, 3});
+        source.open();
+        source.nextChunk();
+
+        InputSource copy = source.copy();
+        copy.open();
+        assertArrayEquals(new byte[]{1, 2, 3}, copy.nextChunk());
+
+        InputSource stringCopy = new StringInputSource("Lorem").copy();
+        stringCopy.open();
+        assertArrayEquals("Lorem".getBytes("UTF8"), stringCopy.nextChunk());
+    }
+
+    @Test
+    public void framedInputSourceTest() throws IOException {
+        FramedInputSource source = new FramedInputSource(new LengthPrefixFraming(1),
+                new byte[]{1, 2}, new byte[]{3}, new byte[]{4, 5, 6});
+        source.setChunkSize(4);
+
+        // small messages are packed into full chunks
+        source.open();
+        assertArrayEquals(new byte[]{2, 1, 2, 1}, source.nextChunk());
+        assertArrayEquals(new byte[]{3, 3, 4, 5}, source.nextChunk());
+        assertArrayEquals(new byte[]{6}, source.nextChunk());
+        assertNull(source.nextChunk());
+        source.close();
+
+        source.open();
+        ByteBuffer target = ByteBuffer.allocate(10);
+        assertEquals(4, source.nextChunk(target));
+        assertEquals(4, source.nextChunk(target));
+        assertEquals(1, source.nextChunk(target));
+        assertEquals(-1, source.nextChunk(target));
+        assertArrayEquals(new byte[]{2, 1, 2, 1, 3, 3, 4, 5, 6, 0}, target.array());
+        source.close();
+        assertNull(source.nextChunk());
+    }
 }
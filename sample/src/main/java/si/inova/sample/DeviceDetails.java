@@ -26,7 +26,6 @@ import si.inova.neatle.operation.Operation;
 import si.inova.neatle.operation.OperationResults;
 import si.inova.neatle.operation.SimpleOperationObserver;
 import si.inova.neatle.sample.R;
-import si.inova.neatle.sample.ReadAllCommand;
 
 public class DeviceDetails extends AppCompatActivity implements ConnectionStateListener, ServicesDiscoveredListener {
     private BluetoothDevice device;
@@ -56,7 +55,7 @@ public class DeviceDetails extends AppCompatActivity implements ConnectionStateL
         monitor.setOnServiceDiscoveredListener(this);
 
         readAll = Neatle.createOperationBuilder(this)
-                .executeCommand(new ReadAllCommand(null))
+                .readBatch(null)
                 .onFinished(new SimpleOperationObserver() {
                     @Override
                     public void onOperationFinished(Operation op, OperationResults results) {